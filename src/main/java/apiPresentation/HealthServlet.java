@@ -0,0 +1,57 @@
+package apiPresentation;
+
+import apiPresentation.dto.out.SkierOutDto;
+import com.google.gson.Gson;
+import infrastructure.mongoDB.DbRepositoryFactory;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * GET/health/live: the process serves HTTP, never checks the DB so a slow Mongo doesn't get the server restarted
+ * GET/health/ready: the DB answered and its connection pool is warm, 503 until then so the load balancer holds traffic back
+ */
+public class HealthServlet extends HttpServlet {
+
+    private static final Gson gson = new Gson();
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse res) throws IOException {
+        res.setContentType("application/json");
+        res.setCharacterEncoding("UTF-8");
+        String urlPath = req.getPathInfo();
+        if ("/live".equals(urlPath)) {
+            writeStatus(res, true);
+        } else if ("/ready".equals(urlPath)) {
+            writeStatus(res, isReady());
+        } else {
+            res.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            res.getWriter().write(gson.toJson(new SkierOutDto<>("Invalid inputs: url", null)));
+        }
+    }
+
+    private boolean isReady() {
+        try {
+            // Same singletons the other servlets use, created here first if a probe arrives before them
+            return DbRepositoryFactory.isAsyncReads()
+                    ? DbRepositoryFactory.createAsyncDbRepository().isReady()
+                    : DbRepositoryFactory.createDbRepository().isReady();
+        } catch (Exception e) {
+            System.err.println("Error: readiness check failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void writeStatus(HttpServletResponse res, boolean up) throws IOException {
+        res.setStatus(up ? HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        res.getWriter().write(gson.toJson(new SkierOutDto<>(up ? "UP" : "DOWN", null)));
+    }
+
+}
@@ -0,0 +1,32 @@
+package apiPresentation;
+
+import com.google.gson.Gson;
+import infrastructure.metrics.Metrics;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * GET/metrics
+ * Point-in-time snapshot of all counters and gauges, e.g. cache hit/miss
+ */
+public class MetricsServlet extends HttpServlet {
+
+    private static final Gson gson = new Gson();
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse res) throws IOException {
+        res.setContentType("application/json");
+        res.setCharacterEncoding("UTF-8");
+        res.setStatus(HttpServletResponse.SC_OK);
+        res.getWriter().write(gson.toJson(Metrics.snapshot()));
+    }
+
+}
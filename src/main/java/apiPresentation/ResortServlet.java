@@ -4,26 +4,45 @@ package apiPresentation;/**
  */
 
 
+import apiPresentation.dto.out.LeaderboardAdapter;
 import apiPresentation.dto.out.SkierOutDto;
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import domain.AsyncDbRepository;
 import domain.DbRepository;
+import domain.Leaderboard;
+import domain.RepositoryUnavailableException;
+import domain.UniqueSkierEstimate;
+import infrastructure.leaderboard.LeaderboardDbRepository;
 import infrastructure.mongoDB.DbRepositoryFactory;
+import infrastructure.sketch.HyperLogLog;
+import infrastructure.sketch.UniqueSkierSketchDbRepository;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.concurrent.CompletionStage;
 import java.util.regex.Pattern;
 
 
 public class ResortServlet extends HttpServlet {
 
-    private static final Gson gson = new Gson();
+    private static final Gson gson = new GsonBuilder().registerTypeAdapter(Leaderboard.class, new LeaderboardAdapter()).create();
+
+    private static final int DEFAULT_LEADERBOARD_SIZE = 10;
 
     private static final Pattern pattern = Pattern.compile("[0-9]*");
 
+    // Exactly one of the two is set, depending on skier.db.async
     private DbRepository dbRepository;
+    private AsyncDbRepository asyncDbRepository;
+    // Null with async reads or -Dskier.hll.enabled=false, approx=true is rejected then
+    private UniqueSkierSketchDbRepository uniqueSkierSketches;
+    // Null with async reads or -Dskier.leaderboard.enabled=false, leaderboard requests get 501 then
+    private LeaderboardDbRepository leaderboards;
 
     /**
      * @throws ServletException ServletException is handled by the Web container
@@ -34,7 +53,13 @@ public class ResortServlet extends HttpServlet {
         System.out.println("init ResortServlet");
         super.init();
         try {
-            this.dbRepository = DbRepositoryFactory.createDbRepository();
+            if (DbRepositoryFactory.isAsyncReads()) {
+                this.asyncDbRepository = DbRepositoryFactory.createAsyncDbRepository();
+            } else {
+                this.dbRepository = DbRepositoryFactory.createDbRepository();
+                this.uniqueSkierSketches = DbRepositoryFactory.getUniqueSkierSketches();
+                this.leaderboards = DbRepositoryFactory.getLeaderboards();
+            }
         } catch (Exception e) {
             String errorMessage = "Error: failed to initialize ResortServlet!";
             System.err.println(errorMessage);
@@ -46,7 +71,12 @@ public class ResortServlet extends HttpServlet {
     public void destroy() {
         System.out.println("destroy ResortServlet");
         try {
-            dbRepository.close();
+            if (dbRepository != null) {
+                dbRepository.close();
+            }
+            if (asyncDbRepository != null) {
+                asyncDbRepository.close();
+            }
         } catch (Exception e) {
             String errorMessage = "Error: failed to close ResortServlet!";
             System.err.println(errorMessage);
@@ -61,12 +91,16 @@ public class ResortServlet extends HttpServlet {
         String urlPath = req.getPathInfo();
         // GET/resorts/{resortID}/seasons/{seasonID}/day/{dayID}/skiers
         // getNumberOfUniqueSkiersAtResortSeasonDay
+        // ?approx=true: HyperLogLog estimate with error bound, ?sketch=true: this node's sketch for a peer to merge
+        // GET/resorts/{resortID}/seasons/{seasonID}/day/{dayID}/leaderboard?k=N
+        // top N skiers by vertical that day
         if (urlPath == null || urlPath.isEmpty()) {
             handleInvalidInput(res, "url");
             return;
         }
         String[] urlParts = urlPath.split("/");
-        if (urlParts.length != 7 || !urlParts[2].equals("seasons") || !urlParts[4].equals("day") || !urlParts[6].equals("skiers")) {
+        if (urlParts.length != 7 || !urlParts[2].equals("seasons") || !urlParts[4].equals("day")
+                || (!urlParts[6].equals("skiers") && !urlParts[6].equals("leaderboard"))) {
             handleInvalidInput(res, "url");
             return;
         }
@@ -81,9 +115,54 @@ public class ResortServlet extends HttpServlet {
         }
         int resortId = Integer.parseInt(urlParts[1]);
         int seasonId = Integer.parseInt(urlParts[3]);
+        if (urlParts[6].equals("leaderboard")) {
+            handleLeaderboard(req, res, resortId, seasonId, dayId);
+            return;
+        }
+        boolean approx = "true".equals(req.getParameter("approx"));
+        boolean sketch = "true".equals(req.getParameter("sketch"));
+        if (approx || sketch) {
+            if (uniqueSkierSketches == null) {
+                handleInvalidInput(res, approx ? "approx" : "sketch");
+                return;
+            }
+            if (sketch) {
+                HyperLogLog localSketch;
+                try {
+                    localSketch = uniqueSkierSketches.getLocalSketch(resortId, seasonId, dayId);
+                } catch (RepositoryUnavailableException e) {
+                    handleServiceUnavailable(res);
+                    return;
+                } catch (Exception e) {
+                    handleInternalError(res, "failed to get data from DB");
+                    return;
+                }
+                writeSketch(res, localSketch);
+                return;
+            }
+            UniqueSkierEstimate estimate;
+            try {
+                estimate = uniqueSkierSketches.estimateUniqueSkiers(resortId, seasonId, dayId);
+            } catch (RepositoryUnavailableException e) {
+                handleServiceUnavailable(res);
+                return;
+            } catch (Exception e) {
+                handleInternalError(res, "failed to get data from DB");
+                return;
+            }
+            writeEstimate(res, estimate);
+            return;
+        }
+        if (asyncDbRepository != null) {
+            respondAsync(req, res, asyncDbRepository.getNumberOfUniqueSkiersAtResortSeasonDay(resortId, seasonId, dayId));
+            return;
+        }
         int getResult = 0;
         try {
             getResult = dbRepository.getNumberOfUniqueSkiersAtResortSeasonDay(resortId, seasonId, dayId);
+        } catch (RepositoryUnavailableException e) {
+            handleServiceUnavailable(res);
+            return;
         } catch (Exception e) {
             handleInternalError(res, "failed to get data from DB");
             return;
@@ -97,6 +176,91 @@ public class ResortServlet extends HttpServlet {
         res.getWriter().write(gson.toJson(skierOutDto));
     }
 
+    private void handleLeaderboard(HttpServletRequest req, HttpServletResponse res, int resortId, int seasonId, int dayId)
+            throws IOException {
+        if (leaderboards == null) {
+            res.setStatus(HttpServletResponse.SC_NOT_IMPLEMENTED);
+            res.getWriter().write(gson.toJson(new SkierOutDto<>("Not enabled: skier.leaderboard.enabled", null)));
+            return;
+        }
+        String kParam = req.getParameter("k");
+        int k = DEFAULT_LEADERBOARD_SIZE;
+        if (kParam != null) {
+            if (kParam.isEmpty() || kParam.length() > 9 || !pattern.matcher(kParam).matches()) {
+                handleInvalidInput(res, "k");
+                return;
+            }
+            k = Integer.parseInt(kParam);
+        }
+        if (k < 1 || k > leaderboards.getCapacity()) {
+            handleInvalidInput(res, "k");
+            return;
+        }
+        Leaderboard leaderboard = leaderboards.getLeaderboard(resortId, seasonId, dayId, k);
+        if (leaderboard == null) {
+            handleDataNotFound(res);
+            return;
+        }
+        res.setStatus(HttpServletResponse.SC_OK);
+        SkierOutDto<Leaderboard> skierOutDto = new SkierOutDto<>("Successful Operation", leaderboard);
+        res.getWriter().write(gson.toJson(skierOutDto));
+    }
+
+    private void writeEstimate(HttpServletResponse res, UniqueSkierEstimate estimate) throws IOException {
+        if (estimate.getEstimate() == 0) {
+            handleDataNotFound(res);
+            return;
+        }
+        res.setStatus(HttpServletResponse.SC_OK);
+        SkierOutDto<UniqueSkierEstimate> skierOutDto = new SkierOutDto<>("Successful Operation", estimate);
+        res.getWriter().write(gson.toJson(skierOutDto));
+    }
+
+    /**
+     * @param res
+     * @param sketch null if the resort-day can't hold rides
+     * @Description binary HyperLogLog.toBytes(), peers treat 404 as an empty sketch. Complete: seeded from the DB before
+     */
+    private void writeSketch(HttpServletResponse res, HyperLogLog sketch) throws IOException {
+        res.setHeader(UniqueSkierSketchDbRepository.COMPLETE_HEADER, "true");
+        if (sketch == null) {
+            handleDataNotFound(res);
+            return;
+        }
+        byte[] bytes = sketch.toBytes();
+        res.setStatus(HttpServletResponse.SC_OK);
+        res.setContentType("application/octet-stream");
+        res.setContentLength(bytes.length);
+        res.getOutputStream().write(bytes);
+    }
+
+    /**
+     * @param req
+     * @param res
+     * @param result 0 means data not found
+     * @Description the Tomcat thread returns right away, the driver's callback writes the response and completes the request
+     */
+    private void respondAsync(HttpServletRequest req, HttpServletResponse res, CompletionStage<Integer> result) {
+        AsyncContext asyncContext = req.startAsync();
+        result.whenComplete((getResult, e) -> {
+            try {
+                if (e != null) {
+                    handleInternalError(res, "failed to get data from DB");
+                } else if (getResult == 0) {
+                    handleDataNotFound(res);
+                } else {
+                    res.setStatus(HttpServletResponse.SC_OK);
+                    SkierOutDto<Integer> skierOutDto = new SkierOutDto<>("Successful Operation", getResult);
+                    res.getWriter().write(gson.toJson(skierOutDto));
+                }
+            } catch (IOException ioException) {
+                System.err.println("Error: failed to write async response: " + ioException.getMessage());
+            } finally {
+                asyncContext.complete();
+            }
+        });
+    }
+
     private void handleInvalidInput(HttpServletResponse res, String invalidType) throws IOException {
         res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
         SkierOutDto<Object> skierOutDto = new SkierOutDto<>("Invalid inputs: " + invalidType, null);
@@ -109,6 +273,13 @@ public class ResortServlet extends HttpServlet {
         res.getWriter().write(gson.toJson(skierOutDto));
     }
 
+    private void handleServiceUnavailable(HttpServletResponse res) throws IOException {
+        res.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        res.setHeader("Retry-After", "1");
+        SkierOutDto<Object> skierOutDto = new SkierOutDto<>("Service unavailable: DB", null);
+        res.getWriter().write(gson.toJson(skierOutDto));
+    }
+
     private void handleInternalError(HttpServletResponse res, String errorType) throws IOException {
         res.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
         SkierOutDto<Object> skierOutDto = new SkierOutDto<>("Internal error: " + errorType, null);
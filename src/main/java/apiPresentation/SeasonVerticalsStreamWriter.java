@@ -0,0 +1,55 @@
+package apiPresentation;
+
+import com.google.gson.stream.JsonWriter;
+import domain.SeasonVerticalSink;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Writes {"message": "Successful Operation", "data": {"resorts": [...]}} to the ServletOutputStream season by season
+ * Status and opening bytes go out with the first season, so a skier without rides can still get a 404
+ */
+class SeasonVerticalsStreamWriter implements SeasonVerticalSink {
+
+    private final HttpServletResponse res;
+    private JsonWriter jsonWriter;
+
+    SeasonVerticalsStreamWriter(HttpServletResponse res) {
+        this.res = res;
+    }
+
+    @Override
+    public void onSeason(int seasonID, int totalVert) throws IOException {
+        if (jsonWriter == null) {
+            res.setStatus(HttpServletResponse.SC_OK);
+            jsonWriter = new JsonWriter(new OutputStreamWriter(res.getOutputStream(), StandardCharsets.UTF_8));
+            jsonWriter.beginObject()
+                    .name("message").value("Successful Operation")
+                    .name("data").beginObject()
+                    .name("resorts").beginArray();
+        }
+        jsonWriter.beginObject()
+                .name("seasonID").value(seasonID)
+                .name("totalVert").value(totalVert)
+                .endObject();
+    }
+
+    // true once the status and a part of the body may have been sent, an error can no longer be reported as a status
+    boolean isStarted() {
+        return jsonWriter != null;
+    }
+
+    void finish() throws IOException {
+        jsonWriter.endArray().endObject().endObject();
+        jsonWriter.flush();
+    }
+
+}
@@ -1,20 +1,27 @@
 package apiPresentation;
 
 import apiPresentation.dto.in.SkierInDto;
+import apiPresentation.dto.out.SeasonVerticalsAdapter;
 import apiPresentation.dto.out.SkierOutDto;
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSyntaxException;
+import domain.AsyncDbRepository;
 import domain.DbRepository;
 import domain.LifeRide;
 import domain.MqRepository;
+import domain.RepositoryUnavailableException;
+import domain.SeasonVerticals;
 import infrastructure.mongoDB.DbRepositoryFactory;
 import infrastructure.rabbitMq.MqRepositoryFactory;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.concurrent.CompletionStage;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -30,10 +37,13 @@ import java.util.stream.Collectors;
  */
 public class SkierServlet extends HttpServlet {
 
-    private static final Gson gson = new Gson();
+    // SeasonVerticals is encoded from its int arrays, no intermediate Document or JSON string
+    private static final Gson gson = new GsonBuilder().registerTypeAdapter(SeasonVerticals.class, new SeasonVerticalsAdapter()).create();
     private static final Pattern pattern = Pattern.compile("[0-9]*");
     private MqRepository mqRepository;
+    // Exactly one of the two is set, depending on skier.db.async
     private DbRepository dbRepository;
+    private AsyncDbRepository asyncDbRepository;
 
     /**
      * @throws ServletException ServletException is handled by the Web container
@@ -46,7 +56,11 @@ public class SkierServlet extends HttpServlet {
         super.init();
         try {
             this.mqRepository = MqRepositoryFactory.createMqRepository();
-            this.dbRepository = DbRepositoryFactory.createDbRepository();
+            if (DbRepositoryFactory.isAsyncReads()) {
+                this.asyncDbRepository = DbRepositoryFactory.createAsyncDbRepository();
+            } else {
+                this.dbRepository = DbRepositoryFactory.createDbRepository();
+            }
         } catch (Exception e) {
             String errorMessage = "Error: failed to initialize SkierServlet!";
             System.err.println(errorMessage);
@@ -59,7 +73,12 @@ public class SkierServlet extends HttpServlet {
         System.out.println("destroy SkierServlet");
         try {
             mqRepository.close();
-            dbRepository.close();
+            if (dbRepository != null) {
+                dbRepository.close();
+            }
+            if (asyncDbRepository != null) {
+                asyncDbRepository.close();
+            }
         } catch (Exception e) {
             String errorMessage = "Error: failed to close SkierServlet!";
             System.err.println(errorMessage);
@@ -99,9 +118,16 @@ public class SkierServlet extends HttpServlet {
             int seasonId = Integer.parseInt(urlParts[3]);
             int skierId = Integer.parseInt(urlParts[7]);
             // 3. Call according service
+            if (asyncDbRepository != null) {
+                respondAsync(req, res, asyncDbRepository.getTotalVerticalForSkierAtDay(resortId, seasonId, dayId, skierId));
+                return;
+            }
             int getResult = 0;
             try {
                 getResult = dbRepository.getTotalVerticalForSkierAtDay(resortId, seasonId, dayId, skierId);
+            } catch (RepositoryUnavailableException e) {
+                handleServiceUnavailable(res);
+                return;
             } catch (Exception e) {
                 handleInternalError(res, "failed to get data from DB");
                 return;
@@ -133,43 +159,92 @@ public class SkierServlet extends HttpServlet {
             // Optimal
             String season = req.getParameter("season");
             // 3. Call according service
-            String getResult;
             if (season != null) {
                 if (!pattern.matcher(season).matches()) {
                     handleInvalidInput(res, "query");
                     return;
                 }
                 int seasonId = Integer.parseInt(season);
+                if (asyncDbRepository != null) {
+                    respondAsync(req, res, asyncDbRepository.getTotalVerticalForSkierAtResort(skierId, resortId, seasonId));
+                    return;
+                }
+                SeasonVerticals getResult;
                 try {
                     getResult = dbRepository.getTotalVerticalForSkierAtResort(skierId, resortId, seasonId);
                     if (getResult == null) {
                         handleDataNotFound(res);
                         return;
                     }
+                } catch (RepositoryUnavailableException e) {
+                    handleServiceUnavailable(res);
+                    return;
                 } catch (Exception e) {
                     handleInternalError(res, "failed to get data from DB");
                     return;
                 }
+                res.setStatus(HttpServletResponse.SC_OK);
+                SkierOutDto<SeasonVerticals> skierOutDto = new SkierOutDto<>("Successful Operation", getResult);
+                // Single pass straight into the response writer
+                gson.toJson(skierOutDto, res.getWriter());
+            } else if (asyncDbRepository != null) {
+                // The rollup holds all seasons in one document, nothing to stream
+                respondAsync(req, res, asyncDbRepository.getTotalVerticalForSkierAtResort(skierId, resortId));
             } else {
+                // All seasons: stream from the DB cursor to the client instead of materializing the whole history
+                SeasonVerticalsStreamWriter streamWriter = new SeasonVerticalsStreamWriter(res);
+                boolean found;
                 try {
-                    getResult = dbRepository.getTotalVerticalForSkierAtResort(skierId, resortId);
-                    if (getResult == null) {
-                        handleDataNotFound(res);
-                        return;
-                    }
+                    found = dbRepository.streamTotalVerticalForSkierAtResort(skierId, resortId, streamWriter);
+                } catch (RepositoryUnavailableException e) {
+                    handleServiceUnavailable(res);
+                    return;
                 } catch (Exception e) {
+                    if (streamWriter.isStarted()) {
+                        // 200 is already on the wire, let the container drop the connection so the client sees a broken response
+                        throw new IOException("Error: season vertical stream failed for skier " + skierId, e);
+                    }
                     handleInternalError(res, "failed to get data from DB");
                     return;
                 }
+                if (!found) {
+                    handleDataNotFound(res);
+                    return;
+                }
+                streamWriter.finish();
             }
-            res.setStatus(HttpServletResponse.SC_OK);
-            SkierOutDto<String> skierOutDto = new SkierOutDto<>("Successful Operation", getResult);
-            res.getWriter().write(gson.toJson(skierOutDto));
         } else {
             handleInvalidInput(res, "url");
         }
     }
 
+    /**
+     * @param req
+     * @param res
+     * @param result 0 or null means data not found
+     * @Description the Tomcat thread returns right away, the driver's callback writes the response and completes the request
+     */
+    private void respondAsync(HttpServletRequest req, HttpServletResponse res, CompletionStage<?> result) {
+        AsyncContext asyncContext = req.startAsync();
+        result.whenComplete((getResult, e) -> {
+            try {
+                if (e != null) {
+                    handleInternalError(res, "failed to get data from DB");
+                } else if (getResult == null || Integer.valueOf(0).equals(getResult)) {
+                    handleDataNotFound(res);
+                } else {
+                    res.setStatus(HttpServletResponse.SC_OK);
+                    SkierOutDto<Object> skierOutDto = new SkierOutDto<>("Successful Operation", getResult);
+                    gson.toJson(skierOutDto, res.getWriter());
+                }
+            } catch (IOException ioException) {
+                System.err.println("Error: failed to write async response: " + ioException.getMessage());
+            } finally {
+                asyncContext.complete();
+            }
+        });
+    }
+
     private void handleInvalidInput(HttpServletResponse res, String invalidType) throws IOException {
         res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
         SkierOutDto<Object> skierOutDto = new SkierOutDto<>("Invalid inputs: " + invalidType, null);
@@ -182,6 +257,13 @@ public class SkierServlet extends HttpServlet {
         res.getWriter().write(gson.toJson(skierOutDto));
     }
 
+    private void handleServiceUnavailable(HttpServletResponse res) throws IOException {
+        res.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        res.setHeader("Retry-After", "1");
+        SkierOutDto<Object> skierOutDto = new SkierOutDto<>("Service unavailable: DB", null);
+        res.getWriter().write(gson.toJson(skierOutDto));
+    }
+
     private void handleInternalError(HttpServletResponse res, String errorType) throws IOException {
         res.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
         SkierOutDto<Object> skierOutDto = new SkierOutDto<>("Internal error: " + errorType, null);
@@ -209,7 +291,10 @@ public class SkierServlet extends HttpServlet {
         try {
             lifeRide = toLifeRide(urlPath, requestBody);
             String message = gson.toJson(lifeRide);
-            mqRepository.sendMessageToMQ(message);
+            mqRepository.sendMessageToMQ(message, lifeRide.getSkierID());
+            if (dbRepository != null) {
+                dbRepository.onLifeRidePublished(lifeRide);
+            }
         } catch (Exception e) {
             handleInternalError(res, "failed to send message to MQ");
             return;
@@ -236,7 +321,7 @@ public class SkierServlet extends HttpServlet {
         if (!urlParts[2].equals("seasons") || !urlParts[4].equals("days") || !urlParts[6].equals("skiers")) {
             return false;
         }
-        if (!pattern.matcher(urlParts[1]).matches() || !pattern.matcher(urlParts[5]).matches() || !pattern.matcher(urlParts[7]).matches()) {
+        if (!pattern.matcher(urlParts[1]).matches() || !pattern.matcher(urlParts[3]).matches() || !pattern.matcher(urlParts[5]).matches() || !pattern.matcher(urlParts[7]).matches()) {
             return false;
         }
         int days = Integer.parseInt(urlParts[5]);
@@ -260,8 +345,8 @@ public class SkierServlet extends HttpServlet {
         } catch (JsonSyntaxException e) {
             return false;
         }
-        // 3) Check if fields and attributes match
-        return skierInDto.getTime() != null && skierInDto.getLiftID() != null;
+        // 3) Check if fields and attributes match, a lift's vertical is liftID * 10 and never negative
+        return skierInDto.getTime() != null && skierInDto.getLiftID() != null && skierInDto.getLiftID() >= 1;
     }
 
     /**
@@ -275,8 +360,8 @@ public class SkierServlet extends HttpServlet {
         SkierInDto skierInDto = gson.fromJson(requestBody, SkierInDto.class);
         return new LifeRide(
                 Integer.parseInt(urlParts[1]),
-                urlParts[3],
-                urlParts[5],
+                Integer.parseInt(urlParts[3]),
+                Integer.parseInt(urlParts[5]),
                 Integer.parseInt(urlParts[7]),
                 skierInDto.getTime(),
                 skierInDto.getLiftID()
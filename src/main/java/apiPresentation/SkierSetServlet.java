@@ -0,0 +1,216 @@
+package apiPresentation;
+
+import apiPresentation.dto.out.SkierOutDto;
+import apiPresentation.dto.out.SkierSetOutDto;
+import com.google.gson.Gson;
+import domain.DbRepository;
+import domain.RepositoryUnavailableException;
+import infrastructure.bitmap.RoaringBitmap;
+import infrastructure.bitmap.SkierBitmapDbRepository;
+import infrastructure.mongoDB.DbRepositoryFactory;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * GET/resorts/sets/{intersection|union|difference}?set=...&set=...[&ids=true&offset=0&limit=1000]
+ * A set is resortID:seasonID:dayID (skiers of the day) or resortID:seasonID:dayID:liftID (skiers who rode the lift that day)
+ * e.g. ?set=1:2024:5:5&set=1:2024:5:12 with intersection -> skiers who rode lift 5 and lift 12 on day 5
+ * difference is the first set minus all others
+ * Answered in memory from the bitmaps of SkierBitmapDbRepository, 501 while -Dskier.bitmap.enabled is off
+ * A set whose day is not complete on this node (started before it booted, or a past season) is read from the DB instead,
+ * as far as the consumer has stored it. The bitmaps are only enabled on a single node, see DbRepositoryFactory
+ */
+public class SkierSetServlet extends HttpServlet {
+
+    private static final Gson gson = new Gson();
+
+    private static final Pattern setPattern = Pattern.compile("[0-9]+:[0-9]+:[0-9]+(:[0-9]+)?");
+    private static final Pattern numberPattern = Pattern.compile("[0-9]+");
+    private static final int MAX_SETS = 16;
+    private static final int DEFAULT_LIMIT = 1000;
+    private static final int MAX_LIMIT = 10000;
+
+    private DbRepository dbRepository;
+    // Null with async reads or -Dskier.bitmap.enabled=false
+    private SkierBitmapDbRepository skierBitmaps;
+
+    @Override
+    public void init() throws ServletException {
+        System.out.println("init SkierSetServlet");
+        super.init();
+        try {
+            if (!DbRepositoryFactory.isAsyncReads()) {
+                this.dbRepository = DbRepositoryFactory.createDbRepository();
+                this.skierBitmaps = DbRepositoryFactory.getSkierBitmaps();
+            }
+        } catch (Exception e) {
+            String errorMessage = "Error: failed to initialize SkierSetServlet!";
+            System.err.println(errorMessage);
+            throw new ServletException(errorMessage, e);
+        }
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse res) throws IOException {
+        res.setContentType("application/json");
+        res.setCharacterEncoding("UTF-8");
+        if (skierBitmaps == null) {
+            res.setStatus(HttpServletResponse.SC_NOT_IMPLEMENTED);
+            res.getWriter().write(gson.toJson(new SkierOutDto<>("Not enabled: skier.bitmap.enabled", null)));
+            return;
+        }
+        String urlPath = req.getPathInfo();
+        String operation = urlPath == null ? "" : urlPath.substring(1);
+        if (!operation.equals("intersection") && !operation.equals("union") && !operation.equals("difference")) {
+            handleInvalidInput(res, "url");
+            return;
+        }
+        String[] setParams = req.getParameterValues("set");
+        if (setParams == null || setParams.length < 2 || setParams.length > MAX_SETS) {
+            handleInvalidInput(res, "set");
+            return;
+        }
+        List<RoaringBitmap> sets = new ArrayList<>(setParams.length);
+        for (String setParam : setParams) {
+            RoaringBitmap set;
+            try {
+                set = toSet(setParam);
+            } catch (UnsupportedOperationException e) {
+                res.setStatus(HttpServletResponse.SC_NOT_IMPLEMENTED);
+                res.getWriter().write(gson.toJson(new SkierOutDto<>("Not supported: " + setParam
+                        + ", this node missed rides of that day and the DB model has no skiers per lift", null)));
+                return;
+            } catch (RepositoryUnavailableException e) {
+                handleServiceUnavailable(res);
+                return;
+            } catch (Exception e) {
+                handleInternalError(res, "failed to get data from DB");
+                return;
+            }
+            if (set == null) {
+                handleInvalidInput(res, "set");
+                return;
+            }
+            sets.add(set);
+        }
+        boolean ids = "true".equals(req.getParameter("ids"));
+        String offsetParam = req.getParameter("offset");
+        String limitParam = req.getParameter("limit");
+        if ((offsetParam != null && !isNumber(offsetParam)) || (limitParam != null && !isNumber(limitParam))) {
+            handleInvalidInput(res, "paging");
+            return;
+        }
+        long offset = offsetParam == null ? 0 : Long.parseLong(offsetParam);
+        int limit = limitParam == null ? DEFAULT_LIMIT : Integer.parseInt(limitParam);
+        if (limit < 1 || limit > MAX_LIMIT) {
+            handleInvalidInput(res, "limit");
+            return;
+        }
+
+        RoaringBitmap result = sets.get(0);
+        for (int i = 1; i < sets.size(); i++) {
+            switch (operation) {
+                case "intersection":
+                    result = RoaringBitmap.and(result, sets.get(i));
+                    break;
+                case "union":
+                    result = RoaringBitmap.or(result, sets.get(i));
+                    break;
+                default:
+                    result = RoaringBitmap.andNot(result, sets.get(i));
+            }
+        }
+        res.setStatus(HttpServletResponse.SC_OK);
+        SkierSetOutDto skierSetOutDto = ids
+                ? new SkierSetOutDto(result.getCardinality(), offset, result.toArray(offset, limit))
+                : new SkierSetOutDto(result.getCardinality(), null, null);
+        res.getWriter().write(gson.toJson(new SkierOutDto<>("Successful Operation", skierSetOutDto)));
+    }
+
+    /**
+     * @param setParam resortID:seasonID:dayID[:liftID]
+     * @return RoaringBitmap copy of the set, empty if nobody is in it, null if the parameter is invalid
+     * @throws Exception if the bitmaps of the day may be missing rides and reading the set from the DB failed
+     */
+    private RoaringBitmap toSet(String setParam) throws Exception {
+        if (!setPattern.matcher(setParam).matches() || setParam.length() > 40) {
+            return null;
+        }
+        String[] parts = setParam.split(":");
+        if (!fitsInt(parts)) {
+            return null;
+        }
+        int resortId = Integer.parseInt(parts[0]);
+        int seasonId = Integer.parseInt(parts[1]);
+        int dayId = Integer.parseInt(parts[2]);
+        if (dayId < 1 || dayId > 366) {
+            return null;
+        }
+        if (!skierBitmaps.isComplete(resortId, seasonId, dayId)) {
+            // One DB read per set, the operations then run on the bitmap built from it
+            int[] skierIds = parts.length == 3
+                    ? dbRepository.getSkierIdsAtResortSeasonDay(resortId, seasonId, dayId)
+                    : dbRepository.getSkierIdsAtResortSeasonDayLift(resortId, seasonId, dayId, Integer.parseInt(parts[3]));
+            return toBitmap(skierIds);
+        }
+        return parts.length == 3
+                ? skierBitmaps.getResortDaySkiers(resortId, seasonId, dayId)
+                : skierBitmaps.getLiftSkiers(resortId, seasonId, dayId, Integer.parseInt(parts[3]));
+    }
+
+    private static RoaringBitmap toBitmap(int[] skierIds) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (int skierId : skierIds) {
+            // Like SkierBitmapDbRepository, a negative ID can't be in a bitmap
+            if (skierId >= 0) {
+                bitmap.add(skierId);
+            }
+        }
+        return bitmap;
+    }
+
+    private static boolean fitsInt(String[] parts) {
+        for (String part : parts) {
+            if (part.length() > 9) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNumber(String param) {
+        return param.length() <= 9 && numberPattern.matcher(param).matches();
+    }
+
+    private void handleInvalidInput(HttpServletResponse res, String invalidType) throws IOException {
+        res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        SkierOutDto<Object> skierOutDto = new SkierOutDto<>("Invalid inputs: " + invalidType, null);
+        res.getWriter().write(gson.toJson(skierOutDto));
+    }
+
+    private void handleServiceUnavailable(HttpServletResponse res) throws IOException {
+        res.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        res.setHeader("Retry-After", "1");
+        SkierOutDto<Object> skierOutDto = new SkierOutDto<>("Service unavailable: DB", null);
+        res.getWriter().write(gson.toJson(skierOutDto));
+    }
+
+    private void handleInternalError(HttpServletResponse res, String errorType) throws IOException {
+        res.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        SkierOutDto<Object> skierOutDto = new SkierOutDto<>("Internal error: " + errorType, null);
+        res.getWriter().write(gson.toJson(skierOutDto));
+    }
+
+}
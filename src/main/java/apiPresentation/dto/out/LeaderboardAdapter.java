@@ -0,0 +1,83 @@
+package apiPresentation.dto.out;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import domain.Leaderboard;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Writes Leaderboard as {"skiers": [{"rank": 1, "skierID": 7, "totalVert": 1200}]} straight from the int arrays
+ * and reads it back, e.g. in clients; rank is implied by the order
+ */
+public class LeaderboardAdapter extends TypeAdapter<Leaderboard> {
+
+    @Override
+    public void write(JsonWriter out, Leaderboard leaderboard) throws IOException {
+        if (leaderboard == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject().name("skiers").beginArray();
+        for (int i = 0; i < leaderboard.size(); i++) {
+            out.beginObject()
+                    .name("rank").value(i + 1)
+                    .name("skierID").value(leaderboard.getSkierID(i))
+                    .name("totalVert").value(leaderboard.getTotalVert(i))
+                    .endObject();
+        }
+        out.endArray().endObject();
+    }
+
+    @Override
+    public Leaderboard read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        int[] skierIDs = new int[16];
+        int[] totalVerts = new int[16];
+        int size = 0;
+        in.beginObject();
+        while (in.hasNext()) {
+            if (!"skiers".equals(in.nextName())) {
+                in.skipValue();
+                continue;
+            }
+            in.beginArray();
+            while (in.hasNext()) {
+                if (size == skierIDs.length) {
+                    skierIDs = Arrays.copyOf(skierIDs, size * 2);
+                    totalVerts = Arrays.copyOf(totalVerts, size * 2);
+                }
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "skierID":
+                            skierIDs[size] = in.nextInt();
+                            break;
+                        case "totalVert":
+                            totalVerts[size] = in.nextInt();
+                            break;
+                        default:
+                            in.skipValue();
+                    }
+                }
+                in.endObject();
+                size++;
+            }
+            in.endArray();
+        }
+        in.endObject();
+        return new Leaderboard(Arrays.copyOf(skierIDs, size), Arrays.copyOf(totalVerts, size));
+    }
+
+}
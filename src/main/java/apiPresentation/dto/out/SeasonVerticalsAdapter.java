@@ -0,0 +1,82 @@
+package apiPresentation.dto.out;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import domain.SeasonVerticals;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Writes SeasonVerticals as {"resorts": [{"seasonID": 2024, "totalVert": 100}]} straight from the int arrays
+ * and reads the same shape back into them, e.g. for clients of the API
+ */
+public class SeasonVerticalsAdapter extends TypeAdapter<SeasonVerticals> {
+
+    @Override
+    public void write(JsonWriter out, SeasonVerticals seasonVerticals) throws IOException {
+        if (seasonVerticals == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject().name("resorts").beginArray();
+        for (int i = 0; i < seasonVerticals.size(); i++) {
+            out.beginObject()
+                    .name("seasonID").value(seasonVerticals.getSeasonID(i))
+                    .name("totalVert").value(seasonVerticals.getTotalVert(i))
+                    .endObject();
+        }
+        out.endArray().endObject();
+    }
+
+    @Override
+    public SeasonVerticals read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        int[] seasonIDs = new int[4];
+        int[] totalVerts = new int[4];
+        int size = 0;
+        in.beginObject();
+        while (in.hasNext()) {
+            if (!"resorts".equals(in.nextName())) {
+                in.skipValue();
+                continue;
+            }
+            in.beginArray();
+            while (in.hasNext()) {
+                if (size == seasonIDs.length) {
+                    seasonIDs = Arrays.copyOf(seasonIDs, size * 2);
+                    totalVerts = Arrays.copyOf(totalVerts, size * 2);
+                }
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "seasonID":
+                            seasonIDs[size] = in.nextInt();
+                            break;
+                        case "totalVert":
+                            totalVerts[size] = in.nextInt();
+                            break;
+                        default:
+                            in.skipValue();
+                    }
+                }
+                in.endObject();
+                size++;
+            }
+            in.endArray();
+        }
+        in.endObject();
+        return new SeasonVerticals(Arrays.copyOf(seasonIDs, size), Arrays.copyOf(totalVerts, size));
+    }
+
+}
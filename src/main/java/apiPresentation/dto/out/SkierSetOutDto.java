@@ -0,0 +1,23 @@
+package apiPresentation.dto.out;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Result of a skier set operation, skierIDs only when requested (ascending, one page)
+ */
+public class SkierSetOutDto {
+
+    private long count;
+    private Long offset;
+    private int[] skierIDs;
+
+    public SkierSetOutDto(long count, Long offset, int[] skierIDs) {
+        this.count = count;
+        this.offset = offset;
+        this.skierIDs = skierIDs;
+    }
+
+}
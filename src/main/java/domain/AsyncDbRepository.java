@@ -0,0 +1,33 @@
+package domain;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Non-blocking counterpart of DbRepository's GETs, results complete on the driver's threads
+ */
+public interface AsyncDbRepository extends AutoCloseable {
+
+    // GET/resorts/{resortID}/seasons/{seasonID}/day/{dayID}/skiers
+    CompletionStage<Integer> getNumberOfUniqueSkiersAtResortSeasonDay(int resortId, int seasonId, int dayId);
+
+    // GET/skiers/{resortID}/seasons/{seasonID}/days/{dayID}/skiers/{skierID}
+    CompletionStage<Integer> getTotalVerticalForSkierAtDay(int resortId, int seasonId, int dayId, int skierId);
+
+    // GET/skiers/{skierID}/vertical
+    // query: ?resort=1
+    // null if the skier has no rides at the resort
+    CompletionStage<SeasonVerticals> getTotalVerticalForSkierAtResort(int skierID, int resortId);
+    // query: ?resort=1&season=2024
+    CompletionStage<SeasonVerticals> getTotalVerticalForSkierAtResort(int skierID, int resortId, int seasonId);
+
+    // Readiness for traffic, see DbRepository.isReady
+    default boolean isReady() {
+        return true;
+    }
+
+}
@@ -1,5 +1,7 @@
 package domain;
 
+import java.util.List;
+
 /**
  * @author Rebecca Zhang
  * Created on 2024-08-02
@@ -14,8 +16,43 @@ public interface DbRepository extends AutoCloseable {
 
     // GET/skiers/{skierID}/vertical
     // query: ?resort=1
-    String getTotalVerticalForSkierAtResort(int skierID, int resortId) throws Exception;
+    // null if the skier has no rides at the resort
+    SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId) throws Exception;
     // query: ?resort=1&season=2024
-    String getTotalVerticalForSkierAtResort(int skierID, int resortId, int seasonId) throws Exception;
+    SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId, int seasonId) throws Exception;
+
+    // Same as ?resort=1 but hands each season to the sink instead of materializing the result
+    // false if the skier has no rides at the resort. Implementations that can't stream materialize first
+    default boolean streamTotalVerticalForSkierAtResort(int skierID, int resortId, SeasonVerticalSink sink) throws Exception {
+        SeasonVerticals seasonVerticals = getTotalVerticalForSkierAtResort(skierID, resortId);
+        if (seasonVerticals == null) {
+            return false;
+        }
+        for (int i = 0; i < seasonVerticals.size(); i++) {
+            sink.onSeason(seasonVerticals.getSeasonID(i), seasonVerticals.getTotalVert(i));
+        }
+        return true;
+    }
+
+    // All skiers with at least one ride at the resort-day, used to build in-memory indexes
+    int[] getSkierIdsAtResortSeasonDay(int resortId, int seasonId, int dayId) throws Exception;
+
+    // All skiers who rode the lift at the resort-day, for set queries on days the in-memory indexes don't fully cover
+    // Models that don't keep lifts per skier throw UnsupportedOperationException
+    default int[] getSkierIdsAtResortSeasonDayLift(int resortId, int seasonId, int dayId, int liftId) throws Exception {
+        throw new UnsupportedOperationException("Error: skier IDs per lift are not supported by this model");
+    }
+
+    // Write path used by the MQ consumer
+    void saveLifeRides(List<LifeRide> lifeRides) throws Exception;
+
+    // Readiness for traffic, e.g. DB reachable and connection pool warm. Liveness doesn't depend on it
+    default boolean isReady() {
+        return true;
+    }
+
+    // Called by the server for every ride it has published to the MQ, before the consumer has written it
+    default void onLifeRidePublished(LifeRide lifeRide) {
+    }
 
 }
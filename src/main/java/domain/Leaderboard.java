@@ -0,0 +1,37 @@
+package domain;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Skiers with the highest total vertical of a resort-day, highest first, ties by lower skierID
+ * Parallel int arrays like SeasonVerticals
+ */
+public class Leaderboard {
+
+    private final int[] skierIDs;
+    private final int[] totalVerts;
+
+    public Leaderboard(int[] skierIDs, int[] totalVerts) {
+        if (skierIDs.length != totalVerts.length) {
+            throw new IllegalArgumentException("Error: " + skierIDs.length + " skiers but " + totalVerts.length + " verticals");
+        }
+        this.skierIDs = skierIDs;
+        this.totalVerts = totalVerts;
+    }
+
+    public int size() {
+        return skierIDs.length;
+    }
+
+    public int getSkierID(int index) {
+        return skierIDs[index];
+    }
+
+    public int getTotalVert(int index) {
+        return totalVerts[index];
+    }
+
+}
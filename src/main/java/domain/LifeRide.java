@@ -8,9 +8,10 @@ public class LifeRide {
 
     Integer resortID;
 
-    String seasonID;
+    // Numeric since schema version 2, messages with the old quoted form still deserialize into these fields
+    Integer seasonID;
 
-    String dayID;
+    Integer dayID;
 
     Integer skierID;
 
@@ -22,11 +23,11 @@ public class LifeRide {
         return resortID;
     }
 
-    public String getSeasonID() {
+    public Integer getSeasonID() {
         return seasonID;
     }
 
-    public String getDayID() {
+    public Integer getDayID() {
         return dayID;
     }
 
@@ -42,7 +43,7 @@ public class LifeRide {
         return liftID;
     }
 
-    public LifeRide(Integer resortID, String seasonID, String dayID, Integer skierID, Integer time, Integer liftID) {
+    public LifeRide(Integer resortID, Integer seasonID, Integer dayID, Integer skierID, Integer time, Integer liftID) {
         this.resortID = resortID;
         this.seasonID = seasonID;
         this.dayID = dayID;
@@ -8,6 +8,7 @@ import java.io.IOException;
  */
 public interface MqRepository extends AutoCloseable {
 
-    void sendMessageToMQ(String message) throws IOException;
+    // partitionKey: messages with the same key are routed to the same queue and keep their order
+    void sendMessageToMQ(String message, int partitionKey) throws IOException;
 
 }
@@ -0,0 +1,18 @@
+package domain;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * The repository refused the call without trying, e.g. an open circuit breaker
+ * Servlets answer it with 503 so clients back off instead of retrying into a struggling DB
+ */
+public class RepositoryUnavailableException extends Exception {
+
+    public RepositoryUnavailableException(String message) {
+        super(message);
+    }
+
+}
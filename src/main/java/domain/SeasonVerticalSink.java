@@ -0,0 +1,17 @@
+package domain;
+
+import java.io.IOException;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Receives the seasons of a season vertical query one by one, as they come off the DB cursor
+ */
+public interface SeasonVerticalSink {
+
+    void onSeason(int seasonID, int totalVert) throws IOException;
+
+}
@@ -0,0 +1,37 @@
+package domain;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Total vertical of one skier at one resort, per season
+ * Parallel int arrays instead of a list of objects: no boxing, and cached results stay small
+ */
+public class SeasonVerticals {
+
+    private final int[] seasonIDs;
+    private final int[] totalVerts;
+
+    public SeasonVerticals(int[] seasonIDs, int[] totalVerts) {
+        if (seasonIDs.length != totalVerts.length) {
+            throw new IllegalArgumentException("Error: " + seasonIDs.length + " seasons but " + totalVerts.length + " verticals");
+        }
+        this.seasonIDs = seasonIDs;
+        this.totalVerts = totalVerts;
+    }
+
+    public int size() {
+        return seasonIDs.length;
+    }
+
+    public int getSeasonID(int index) {
+        return seasonIDs[index];
+    }
+
+    public int getTotalVert(int index) {
+        return totalVerts[index];
+    }
+
+}
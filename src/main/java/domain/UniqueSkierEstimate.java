@@ -0,0 +1,49 @@
+package domain;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Approximate number of unique skiers at a resort-day
+ * The true count lies within estimate +- errorBound with probability ~confidence
+ */
+public class UniqueSkierEstimate {
+
+    private final long estimate;
+    private final long errorBound;
+    private final double confidence;
+    // Server nodes whose rides are included, out of those asked; a missing node's rides are missing from the estimate
+    private final int nodes;
+    private final int nodesQueried;
+
+    public UniqueSkierEstimate(long estimate, long errorBound, double confidence, int nodes, int nodesQueried) {
+        this.estimate = estimate;
+        this.errorBound = errorBound;
+        this.confidence = confidence;
+        this.nodes = nodes;
+        this.nodesQueried = nodesQueried;
+    }
+
+    public long getEstimate() {
+        return estimate;
+    }
+
+    public long getErrorBound() {
+        return errorBound;
+    }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    public int getNodesQueried() {
+        return nodesQueried;
+    }
+
+}
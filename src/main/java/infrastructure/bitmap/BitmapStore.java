@@ -0,0 +1,432 @@
+package infrastructure.bitmap;
+
+import infrastructure.metrics.Metrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * RoaringBitmaps by long key, grouped (e.g. a resort-day and its lifts) into one file and one LRU slot per group
+ * Groups are kept in memory up to maxBytes, least recently used ones are written out and dropped first, and read back on their next use
+ * Changed groups are written every flushMs and on close; files are read and written outside the store's lock, so adds and reads
+ * of resident bitmaps never wait for the disk
+ * A group is complete if its bitmaps hold every value added since the group's first one. That survives a restart only after a clean
+ * close, a crash may have lost the last flushMs of adds
+ */
+public class BitmapStore implements AutoCloseable {
+
+    private static final String FILE_SUFFIX = ".rbg";
+    // One file per key, before bitmaps were grouped
+    private static final String LEGACY_SUFFIX = ".rbm";
+    // Created by close() once everything is written, deleted on open
+    private static final String CLEAN_SHUTDOWN_FILE = "clean-shutdown";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final LongUnaryOperator groupOf;
+    // Access order: the eldest entry is the least recently used
+    private final LinkedHashMap<Long, Group> resident = new LinkedHashMap<>(16, 0.75f, true);
+    // Evicted groups whose file is being written, found here until it is in place
+    private final Map<Long, Group> writing = new HashMap<>();
+    private final Set<Long> dirty = new HashSet<>();
+    private final Set<Long> onDisk = new HashSet<>();
+    // Groups that can't claim completeness: files left by a crash, or unreadable ones
+    private final Set<Long> untrusted = new HashSet<>();
+    private long residentBytes;
+    // Bumped whenever a file is replaced, a load that overlapped a write reads the file again
+    private long writeEpoch;
+    // Writers snapshot and write in the same order, so an older snapshot never overwrites a newer file; add and read never take it
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final LongAdder loads = Metrics.counter("bitmap.loaded");
+    private final LongAdder evictions = Metrics.counter("bitmap.evicted");
+    private final LongAdder writeFailures = Metrics.counter("bitmap.writeFailure");
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "bitmap-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Bitmaps sharing one file
+     */
+    private static class Group {
+
+        private final Map<Long, RoaringBitmap> bitmaps = new HashMap<>();
+        private boolean complete;
+        private long bytes;
+    }
+
+    /**
+     * @param directory created if missing, bitmaps found there are served as if they had never been dropped
+     * @param maxBytes
+     * @param flushMs
+     * @param groupOf key -> key of its group
+     */
+    public BitmapStore(Path directory, long maxBytes, long flushMs, LongUnaryOperator groupOf) throws IOException {
+        System.out.println("init BitmapStore in " + directory.toAbsolutePath());
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.groupOf = groupOf;
+        Files.createDirectories(directory);
+        int legacy = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*{" + FILE_SUFFIX + "," + LEGACY_SUFFIX + "}")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(LEGACY_SUFFIX)) {
+                    legacy++;
+                    continue;
+                }
+                try {
+                    onDisk.add(Long.parseUnsignedLong(name.substring(0, name.length() - FILE_SUFFIX.length()), 16));
+                } catch (NumberFormatException e) {
+                    System.err.println("Warning: ignoring unexpected file " + file);
+                }
+            }
+        }
+        if (legacy > 0) {
+            System.err.println("Warning: ignoring " + legacy + " bitmaps in the old one-file-per-key format, their days are answered by the DB");
+        }
+        if (!Files.deleteIfExists(directory.resolve(CLEAN_SHUTDOWN_FILE))) {
+            untrusted.addAll(onDisk);
+        }
+        System.out.println("found " + onDisk.size() + " persisted bitmap groups, " + untrusted.size() + " of them from an unclean shutdown");
+        Metrics.gauge("bitmap.residentBytes", this::getResidentBytes);
+        Metrics.gauge("bitmap.resident", this::getResidentCount);
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushMs, flushMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public synchronized long getResidentCount() {
+        return resident.size();
+    }
+
+    /**
+     * @param key
+     * @param value
+     * @param completeIfNew whether a group created by this add will see every value of the group
+     * @return boolean true if the value was new to the key's bitmap, which is created if missing
+     */
+    public boolean add(long key, int value, boolean completeIfNew) {
+        long groupKey = groupOf.applyAsLong(key);
+        boolean added = withGroup(groupKey, true, group -> {
+            if (group.bitmaps.isEmpty()) {
+                group.complete = completeIfNew && !untrusted.contains(groupKey);
+            }
+            RoaringBitmap bitmap = group.bitmaps.get(key);
+            long before = 0;
+            if (bitmap == null) {
+                bitmap = new RoaringBitmap();
+                group.bitmaps.put(key, bitmap);
+            } else {
+                before = bitmap.sizeInBytes();
+            }
+            if (!bitmap.add(value)) {
+                return false;
+            }
+            long grown = bitmap.sizeInBytes() - before;
+            group.bytes += grown;
+            residentBytes += grown;
+            dirty.add(groupKey);
+            return true;
+        });
+        if (added) {
+            evictOverBudget();
+        }
+        return added;
+    }
+
+    /**
+     * @param key
+     * @param reader runs under the store's lock, must not keep a reference to the bitmap
+     * @return T result of the reader, or null if the key has no bitmap
+     */
+    public <T> T read(long key, Function<RoaringBitmap, T> reader) {
+        T result = withGroup(groupOf.applyAsLong(key), false, group -> {
+            RoaringBitmap bitmap = group.bitmaps.get(key);
+            return bitmap != null ? reader.apply(bitmap) : null;
+        });
+        // A load may have gone over budget
+        evictOverBudget();
+        return result;
+    }
+
+    /**
+     * @param key
+     * @return Boolean whether the key's group is complete, or null if nothing was ever added to it
+     */
+    public Boolean isComplete(long key) {
+        long groupKey = groupOf.applyAsLong(key);
+        Boolean complete = withGroup(groupKey, false, group -> group.complete);
+        if (complete == null) {
+            synchronized (this) {
+                return untrusted.contains(groupKey) ? Boolean.FALSE : null;
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * @Description runs the action under the lock on the resident group, loading it first if it was written out
+     * The file is read without the lock and installed only if no write overlapped, otherwise it is read again
+     */
+    private <T> T withGroup(long groupKey, boolean create, Function<Group, T> action) {
+        while (true) {
+            long epoch;
+            synchronized (this) {
+                Group group = inMemory(groupKey);
+                if (group != null || !onDisk.contains(groupKey)) {
+                    if (group == null) {
+                        if (!create) {
+                            return null;
+                        }
+                        group = new Group();
+                        resident.put(groupKey, group);
+                    }
+                    return action.apply(group);
+                }
+                epoch = writeEpoch;
+            }
+            Group loaded = load(groupKey);
+            synchronized (this) {
+                if (epoch != writeEpoch || inMemory(groupKey) != null || !onDisk.contains(groupKey)) {
+                    continue;
+                }
+                if (loaded == null) {
+                    // Unreadable file: serve what the DB has instead of a wrong answer
+                    onDisk.remove(groupKey);
+                    untrusted.add(groupKey);
+                    continue;
+                }
+                loaded.complete &= !untrusted.contains(groupKey);
+                loads.increment();
+                resident.put(groupKey, loaded);
+                residentBytes += loaded.bytes;
+            }
+        }
+    }
+
+    // Caller holds the lock; a group still being written goes back to the resident ones
+    private Group inMemory(long groupKey) {
+        Group group = resident.get(groupKey);
+        if (group == null) {
+            group = writing.get(groupKey);
+            if (group != null) {
+                resident.put(groupKey, group);
+                residentBytes += group.bytes;
+            }
+        }
+        return group;
+    }
+
+    private Group load(long groupKey) {
+        Path file = fileOf(groupKey);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            return deserialize(in);
+        } catch (IOException e) {
+            System.err.println("Warning: failed to load bitmap " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @Description writes out and drops least recently used groups until the resident ones fit into maxBytes
+     * The most recently used group always stays. One thread evicts at a time, the others don't wait for it
+     */
+    private void evictOverBudget() {
+        if (!writeLock.tryLock()) {
+            return;
+        }
+        try {
+            while (true) {
+                long groupKey;
+                Group group;
+                byte[] bytes = null;
+                synchronized (this) {
+                    if (residentBytes <= maxBytes || resident.size() <= 1) {
+                        return;
+                    }
+                    Iterator<Map.Entry<Long, Group>> eldest = resident.entrySet().iterator();
+                    Map.Entry<Long, Group> entry = eldest.next();
+                    groupKey = entry.getKey();
+                    group = entry.getValue();
+                    eldest.remove();
+                    residentBytes -= group.bytes;
+                    evictions.increment();
+                    if (dirty.remove(groupKey)) {
+                        bytes = serialize(group);
+                        writing.put(groupKey, group);
+                    }
+                }
+                if (bytes != null && !written(groupKey, group, write(groupKey, bytes))) {
+                    // Can't drop what isn't persisted, stay over budget until the disk is back
+                    return;
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Back under the lock after an eviction's write; a group that failed to write is resident and dirty again
+    private synchronized boolean written(long groupKey, Group group, boolean success) {
+        writing.remove(groupKey, group);
+        if (success) {
+            onDisk.add(groupKey);
+            writeEpoch++;
+            return true;
+        }
+        dirty.add(groupKey);
+        if (!resident.containsKey(groupKey)) {
+            resident.put(groupKey, group);
+            residentBytes += group.bytes;
+        }
+        return false;
+    }
+
+    // complete flag, bitmap count, then key and bitmap per bitmap
+    private static byte[] serialize(Group group) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8, group.bytes + 16L * (group.bitmaps.size() + 1)));
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeBoolean(group.complete);
+            out.writeInt(group.bitmaps.size());
+            for (Map.Entry<Long, RoaringBitmap> entry : group.bitmaps.entrySet()) {
+                out.writeLong(entry.getKey());
+                entry.getValue().serialize(out);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Error: in-memory serialization failed", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Group deserialize(DataInputStream in) throws IOException {
+        Group group = new Group();
+        group.complete = in.readBoolean();
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Error: corrupt bitmap group of " + count + " bitmaps");
+        }
+        for (int i = 0; i < count; i++) {
+            long key = in.readLong();
+            RoaringBitmap bitmap = RoaringBitmap.deserialize(in);
+            group.bitmaps.put(key, bitmap);
+            group.bytes += bitmap.sizeInBytes();
+        }
+        return group;
+    }
+
+    // Temp file and atomic rename, a crash mid-write leaves the previous version intact; callers hold writeLock, not the store's lock
+    private boolean write(long groupKey, byte[] bytes) {
+        Path file = fileOf(groupKey);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (BufferedOutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                out.write(bytes);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            writeFailures.increment();
+            System.err.println("Warning: failed to write bitmap " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private Path fileOf(long groupKey) {
+        return directory.resolve(Long.toHexString(groupKey) + FILE_SUFFIX);
+    }
+
+    /**
+     * @Description writes every changed group, each snapshot taken under the lock and written without it
+     * Holds writeLock, so no eviction runs meanwhile and every dirty group stays resident
+     */
+    public void flush() {
+        writeLock.lock();
+        try {
+            List<Long> groupKeys;
+            synchronized (this) {
+                groupKeys = new ArrayList<>(dirty);
+            }
+            for (long groupKey : groupKeys) {
+                byte[] bytes;
+                synchronized (this) {
+                    if (!dirty.remove(groupKey)) {
+                        continue;
+                    }
+                    bytes = serialize(resident.get(groupKey));
+                }
+                boolean success = write(groupKey, bytes);
+                synchronized (this) {
+                    if (success) {
+                        onDisk.add(groupKey);
+                        writeEpoch++;
+                    } else {
+                        dirty.add(groupKey);
+                    }
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            System.err.println("Warning: bitmap flush failed: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        System.out.println("destroy BitmapStore");
+        flusher.shutdownNow();
+        flush();
+        synchronized (this) {
+            if (!dirty.isEmpty()) {
+                System.err.println("Warning: " + dirty.size() + " bitmap groups not written, their days are answered by the DB after a restart");
+                return;
+            }
+        }
+        try {
+            Files.createFile(directory.resolve(CLEAN_SHUTDOWN_FILE));
+        } catch (IOException e) {
+            System.err.println("Warning: failed to mark the bitmaps as cleanly written: " + e.getMessage());
+        }
+    }
+
+}
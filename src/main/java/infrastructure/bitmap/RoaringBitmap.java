@@ -0,0 +1,514 @@
+package infrastructure.bitmap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Compressed bitmap of non-negative int keys in the Roaring layout: keys are split by their high 16 bits into containers,
+ * a container holds its low 16 bits either as a sorted char[] (up to ARRAY_MAX_SIZE keys) or as a 2^16-bit long[]
+ * Sparse skier IDs cost 2 bytes each, dense ranges at most 1 bit each
+ * Not thread-safe, callers lock around it
+ */
+public class RoaringBitmap {
+
+    // Above 4096 keys an array container (2 bytes per key) gets bigger than the 8KB bitmap container
+    static final int ARRAY_MAX_SIZE = 4096;
+    private static final int BITMAP_WORDS = 1 << 10;
+    // Per-container bookkeeping, so sizeInBytes() tracks what the JVM holds rather than just the payload
+    private static final int CONTAINER_OVERHEAD = 32;
+    private static final int FORMAT_MAGIC = 0x52424d31; // "RBM1"
+
+    // Sorted high 16 bits, parallel to containers
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int size;
+    private long sizeInBytes;
+
+    /**
+     * Low 16 bits of the keys sharing one high 16 bits, either sorted array or bitmap
+     */
+    static final class Container {
+
+        // Array form while bitmap == null
+        char[] array;
+        long[] bitmap;
+        int cardinality;
+
+        boolean contains(char low) {
+            if (bitmap != null) {
+                return (bitmap[low >>> 6] & (1L << low)) != 0;
+            }
+            return Arrays.binarySearch(array, 0, cardinality, low) >= 0;
+        }
+
+        /**
+         * @return long change of the container's size in bytes, or -1 if the key was already present
+         */
+        long add(char low) {
+            if (bitmap != null) {
+                long bit = 1L << low;
+                if ((bitmap[low >>> 6] & bit) != 0) {
+                    return -1;
+                }
+                bitmap[low >>> 6] |= bit;
+                cardinality++;
+                return 0;
+            }
+            int index = Arrays.binarySearch(array, 0, cardinality, low);
+            if (index >= 0) {
+                return -1;
+            }
+            index = -index - 1;
+            if (cardinality == ARRAY_MAX_SIZE) {
+                long before = sizeInBytes();
+                toBitmap();
+                add(low);
+                return sizeInBytes() - before;
+            }
+            long before = sizeInBytes();
+            if (cardinality == array.length) {
+                array = Arrays.copyOf(array, Math.min(ARRAY_MAX_SIZE, Math.max(4, cardinality * 2)));
+            }
+            System.arraycopy(array, index, array, index + 1, cardinality - index);
+            array[index] = low;
+            cardinality++;
+            return sizeInBytes() - before;
+        }
+
+        private void toBitmap() {
+            bitmap = new long[BITMAP_WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                bitmap[array[i] >>> 6] |= 1L << array[i];
+            }
+            array = null;
+        }
+
+        long sizeInBytes() {
+            return bitmap != null ? 8L * BITMAP_WORDS : 2L * array.length;
+        }
+
+        Container copy() {
+            Container copy = new Container();
+            copy.cardinality = cardinality;
+            if (bitmap != null) {
+                copy.bitmap = bitmap.clone();
+            } else {
+                copy.array = Arrays.copyOf(array, cardinality);
+            }
+            return copy;
+        }
+
+        private long[] asBitmap() {
+            if (bitmap != null) {
+                return bitmap;
+            }
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                words[array[i] >>> 6] |= 1L << array[i];
+            }
+            return words;
+        }
+
+        private static Container ofArray(char[] array, int cardinality) {
+            Container container = new Container();
+            container.array = array;
+            container.cardinality = cardinality;
+            return container;
+        }
+
+        // Back to the array form at ARRAY_MAX_SIZE or less, like add() would have built it; null if empty
+        private static Container ofBitmap(long[] words) {
+            int cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            if (cardinality == 0) {
+                return null;
+            }
+            Container container = new Container();
+            container.cardinality = cardinality;
+            if (cardinality > ARRAY_MAX_SIZE) {
+                container.bitmap = words;
+                return container;
+            }
+            container.array = new char[cardinality];
+            int i = 0;
+            for (int word = 0; word < BITMAP_WORDS; word++) {
+                long bits = words[word];
+                while (bits != 0) {
+                    container.array[i++] = (char) ((word << 6) + Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+            return container;
+        }
+
+        static Container and(Container a, Container b) {
+            if (a.bitmap != null && b.bitmap != null) {
+                long[] words = new long[BITMAP_WORDS];
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    words[i] = a.bitmap[i] & b.bitmap[i];
+                }
+                return ofBitmap(words);
+            }
+            // At least one array: keep its values the other contains
+            Container small = a.bitmap == null ? a : b;
+            Container other = small == a ? b : a;
+            char[] out = new char[small.cardinality];
+            int n = 0;
+            for (int i = 0; i < small.cardinality; i++) {
+                if (other.contains(small.array[i])) {
+                    out[n++] = small.array[i];
+                }
+            }
+            return n == 0 ? null : ofArray(n == out.length ? out : Arrays.copyOf(out, n), n);
+        }
+
+        static Container or(Container a, Container b) {
+            if (a.bitmap == null && b.bitmap == null && a.cardinality + b.cardinality <= ARRAY_MAX_SIZE) {
+                char[] out = new char[a.cardinality + b.cardinality];
+                int i = 0;
+                int j = 0;
+                int n = 0;
+                while (i < a.cardinality && j < b.cardinality) {
+                    char x = a.array[i];
+                    char y = b.array[j];
+                    if (x < y) {
+                        out[n++] = x;
+                        i++;
+                    } else if (y < x) {
+                        out[n++] = y;
+                        j++;
+                    } else {
+                        out[n++] = x;
+                        i++;
+                        j++;
+                    }
+                }
+                while (i < a.cardinality) {
+                    out[n++] = a.array[i++];
+                }
+                while (j < b.cardinality) {
+                    out[n++] = b.array[j++];
+                }
+                return ofArray(Arrays.copyOf(out, n), n);
+            }
+            long[] words = a.asBitmap().clone();
+            if (b.bitmap != null) {
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    words[i] |= b.bitmap[i];
+                }
+            } else {
+                for (int i = 0; i < b.cardinality; i++) {
+                    words[b.array[i] >>> 6] |= 1L << b.array[i];
+                }
+            }
+            return ofBitmap(words);
+        }
+
+        static Container andNot(Container a, Container b) {
+            if (a.bitmap == null) {
+                char[] out = new char[a.cardinality];
+                int n = 0;
+                for (int i = 0; i < a.cardinality; i++) {
+                    if (!b.contains(a.array[i])) {
+                        out[n++] = a.array[i];
+                    }
+                }
+                return n == 0 ? null : ofArray(n == out.length ? out : Arrays.copyOf(out, n), n);
+            }
+            long[] words = a.bitmap.clone();
+            if (b.bitmap != null) {
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    words[i] &= ~b.bitmap[i];
+                }
+            } else {
+                for (int i = 0; i < b.cardinality; i++) {
+                    words[b.array[i] >>> 6] &= ~(1L << b.array[i]);
+                }
+            }
+            return ofBitmap(words);
+        }
+
+        /**
+         * @param out
+         * @param high high 16 bits of the container
+         * @param offset keys to skip
+         * @param limit
+         * @return int keys written
+         */
+        int copyTo(int[] out, int outIndex, char high, int offset, int limit) {
+            int written = 0;
+            int base = high << 16;
+            if (bitmap == null) {
+                for (int i = offset; i < cardinality && written < limit; i++) {
+                    out[outIndex + written++] = base | array[i];
+                }
+                return written;
+            }
+            int skipped = 0;
+            for (int word = 0; word < BITMAP_WORDS && written < limit; word++) {
+                long bits = bitmap[word];
+                while (bits != 0 && written < limit) {
+                    int low = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    if (skipped < offset) {
+                        skipped++;
+                    } else {
+                        out[outIndex + written++] = base | low;
+                    }
+                }
+            }
+            return written;
+        }
+    }
+
+    /**
+     * @param value non-negative
+     * @return boolean true if the value was not in the bitmap yet
+     */
+    public boolean add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Error: negative bitmap value " + value);
+        }
+        char high = (char) (value >>> 16);
+        int index = indexOf(high);
+        Container container;
+        if (index < 0) {
+            index = -index - 1;
+            container = new Container();
+            container.array = new char[4];
+            insertContainer(index, high, container);
+            sizeInBytes += CONTAINER_OVERHEAD + container.sizeInBytes();
+        } else {
+            container = containers[index];
+        }
+        long delta = container.add((char) value);
+        if (delta < 0) {
+            return false;
+        }
+        sizeInBytes += delta;
+        return true;
+    }
+
+    public boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int index = indexOf((char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    public long getCardinality() {
+        long cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality;
+        }
+        return cardinality;
+    }
+
+    /**
+     * @return long approximate heap size, what memory bounds are enforced against
+     */
+    public long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /**
+     * @param offset values to skip in ascending order
+     * @param limit
+     * @return int[] up to limit values in ascending order, starting at the offset-th
+     */
+    public int[] toArray(long offset, int limit) {
+        int[] out = new int[(int) Math.max(0, Math.min(limit, getCardinality() - offset))];
+        int written = 0;
+        long skip = offset;
+        for (int i = 0; i < size && written < out.length; i++) {
+            Container container = containers[i];
+            if (skip >= container.cardinality) {
+                skip -= container.cardinality;
+                continue;
+            }
+            written += container.copyTo(out, written, keys[i], (int) skip, out.length - written);
+            skip = 0;
+        }
+        return out;
+    }
+
+    public int[] toArray() {
+        return toArray(0, Integer.MAX_VALUE);
+    }
+
+    public RoaringBitmap copy() {
+        RoaringBitmap copy = new RoaringBitmap();
+        for (int i = 0; i < size; i++) {
+            copy.appendContainer(keys[i], containers[i].copy());
+        }
+        return copy;
+    }
+
+    /**
+     * @param a
+     * @param b
+     * @return RoaringBitmap values in both, only containers present in both are touched
+     */
+    public static RoaringBitmap and(RoaringBitmap a, RoaringBitmap b) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size && j < b.size) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (b.keys[j] < a.keys[i]) {
+                j++;
+            } else {
+                result.appendContainer(a.keys[i], Container.and(a.containers[i], b.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public static RoaringBitmap or(RoaringBitmap a, RoaringBitmap b) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size || j < b.size) {
+            if (j == b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+                result.appendContainer(a.keys[i], a.containers[i].copy());
+                i++;
+            } else if (i == a.size || b.keys[j] < a.keys[i]) {
+                result.appendContainer(b.keys[j], b.containers[j].copy());
+                j++;
+            } else {
+                result.appendContainer(a.keys[i], Container.or(a.containers[i], b.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param a
+     * @param b
+     * @return RoaringBitmap values in a but not in b
+     */
+    public static RoaringBitmap andNot(RoaringBitmap a, RoaringBitmap b) {
+        RoaringBitmap result = new RoaringBitmap();
+        int j = 0;
+        for (int i = 0; i < a.size; i++) {
+            while (j < b.size && b.keys[j] < a.keys[i]) {
+                j++;
+            }
+            if (j < b.size && b.keys[j] == a.keys[i]) {
+                result.appendContainer(a.keys[i], Container.andNot(a.containers[i], b.containers[j]));
+            } else {
+                result.appendContainer(a.keys[i], a.containers[i].copy());
+            }
+        }
+        return result;
+    }
+
+    // Containers are appended in key order by the set operations, empty results are skipped
+    private void appendContainer(char high, Container container) {
+        if (container == null) {
+            return;
+        }
+        insertContainer(size, high, container);
+        sizeInBytes += CONTAINER_OVERHEAD + container.sizeInBytes();
+    }
+
+    private int indexOf(char high) {
+        return Arrays.binarySearch(keys, 0, size, high);
+    }
+
+    private void insertContainer(int index, char high, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = high;
+        containers[index] = container;
+        size++;
+    }
+
+    /**
+     * @param out
+     * @Description magic, container count, then per container: high bits, cardinality, sorted lows or 1024 bitmap words
+     */
+    public void serialize(DataOutput out) throws IOException {
+        out.writeInt(FORMAT_MAGIC);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            Container container = containers[i];
+            out.writeChar(keys[i]);
+            out.writeInt(container.cardinality);
+            if (container.bitmap == null) {
+                for (int j = 0; j < container.cardinality; j++) {
+                    out.writeChar(container.array[j]);
+                }
+            } else {
+                for (long word : container.bitmap) {
+                    out.writeLong(word);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param in output of serialize()
+     * @return RoaringBitmap
+     * @throws IOException also if the data is not a serialized bitmap
+     */
+    public static RoaringBitmap deserialize(DataInput in) throws IOException {
+        if (in.readInt() != FORMAT_MAGIC) {
+            throw new IOException("Error: not a serialized RoaringBitmap");
+        }
+        int containerCount = in.readInt();
+        if (containerCount < 0 || containerCount > (1 << 15)) {
+            throw new IOException("Error: corrupt RoaringBitmap with " + containerCount + " containers");
+        }
+        RoaringBitmap bitmap = new RoaringBitmap();
+        bitmap.keys = new char[Math.max(4, containerCount)];
+        bitmap.containers = new Container[Math.max(4, containerCount)];
+        for (int i = 0; i < containerCount; i++) {
+            char high = in.readChar();
+            if (i > 0 && high <= bitmap.keys[i - 1]) {
+                throw new IOException("Error: corrupt RoaringBitmap, containers out of order");
+            }
+            Container container = new Container();
+            container.cardinality = in.readInt();
+            if (container.cardinality <= 0 || container.cardinality > (1 << 16)) {
+                throw new IOException("Error: corrupt RoaringBitmap container of " + container.cardinality + " values");
+            }
+            if (container.cardinality <= ARRAY_MAX_SIZE) {
+                container.array = new char[container.cardinality];
+                for (int j = 0; j < container.cardinality; j++) {
+                    container.array[j] = in.readChar();
+                }
+            } else {
+                container.bitmap = new long[BITMAP_WORDS];
+                for (int j = 0; j < BITMAP_WORDS; j++) {
+                    container.bitmap[j] = in.readLong();
+                }
+            }
+            bitmap.keys[i] = high;
+            bitmap.containers[i] = container;
+            bitmap.size++;
+            bitmap.sizeInBytes += CONTAINER_OVERHEAD + container.sizeInBytes();
+        }
+        return bitmap;
+    }
+
+}
@@ -0,0 +1,185 @@
+package infrastructure.bitmap;
+
+import domain.DbRepository;
+import domain.LifeRide;
+import domain.SeasonVerticalSink;
+import domain.SeasonVerticals;
+import infrastructure.cache.QueryKeys;
+import infrastructure.metrics.Metrics;
+import infrastructure.mongoDB.TimeSeriesConnector;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Decorator keeping a RoaringBitmap of skier IDs per resort-day and per resort-day-lift, fed with every ride POSTed to this node
+ * Unique-skier counts and skier ID lists of a complete resort-day come from the bitmap, exact and without a Mongo $group
+ * A resort-day is complete if its bitmap was started after the day began on a node that was already up, so it saw every ride;
+ * days started mid-way (e.g. after a restart or before the index was enabled) still go to the DB
+ * Exact as long as all rides are POSTed through this node, DbRepositoryFactory doesn't create it when skier.hll.peers lists
+ * other nodes. The bitmaps of a day share one file in a BitmapStore across restarts
+ */
+public class SkierBitmapDbRepository implements DbRepository {
+
+    // Lift keys are 55 bits, the flag keeps them apart from resort-day keys in the shared store
+    private static final long LIFT_KEY_FLAG = 1L << 62;
+
+    private final DbRepository dbRepository;
+    private final BitmapStore bitmapStore;
+    private final LongAdder hits = Metrics.counter("bitmap.uniqueSkiers.hit");
+    private final LongAdder misses = Metrics.counter("bitmap.uniqueSkiers.miss");
+    private final LongAdder unpackable = Metrics.counter("bitmap.unpackableRide");
+    private final long bootMillis = System.currentTimeMillis();
+
+    public SkierBitmapDbRepository(DbRepository dbRepository, BitmapStore bitmapStore) {
+        System.out.println("init SkierBitmapDbRepository");
+        this.dbRepository = dbRepository;
+        this.bitmapStore = bitmapStore;
+    }
+
+    static long resortDayKey(int resortId, int seasonId, int dayId) {
+        return QueryKeys.resortDay(resortId, seasonId, dayId);
+    }
+
+    static long liftKey(int resortId, int seasonId, int dayId, int liftId) {
+        long key = QueryKeys.resortDayLift(resortId, seasonId, dayId, liftId);
+        return key == QueryKeys.NO_KEY ? QueryKeys.NO_KEY : key | LIFT_KEY_FLAG;
+    }
+
+    // A resort-day and its lifts share a BitmapStore group: one file per day instead of one per lift
+    public static long groupOf(long key) {
+        return (key & LIFT_KEY_FLAG) != 0 ? QueryKeys.resortDayOfLift(key & ~LIFT_KEY_FLAG) : key;
+    }
+
+    /**
+     * @param resortId
+     * @param seasonId
+     * @param dayId
+     * @return boolean true if the bitmaps of the resort-day and its lifts hold every ride POSTed to this node that day
+     */
+    public boolean isComplete(int resortId, int seasonId, int dayId) {
+        long key = resortDayKey(resortId, seasonId, dayId);
+        if (key == QueryKeys.NO_KEY) {
+            return false;
+        }
+        Boolean complete = bitmapStore.isComplete(key);
+        // No ride yet: complete if this node has been up since the day began
+        return complete != null ? complete : startedBeforeDay(seasonId, dayId);
+    }
+
+    private boolean startedBeforeDay(int seasonId, int dayId) {
+        return TimeSeriesConnector.isSupportedSeason(seasonId) && bootMillis <= TimeSeriesConnector.dayStartMillis(seasonId, dayId);
+    }
+
+    /**
+     * @param resortId
+     * @param seasonId
+     * @param dayId
+     * @return RoaringBitmap copy of the skiers of the resort-day, empty if none or the key doesn't pack
+     */
+    public RoaringBitmap getResortDaySkiers(int resortId, int seasonId, int dayId) {
+        return copyOf(resortDayKey(resortId, seasonId, dayId));
+    }
+
+    /**
+     * @return RoaringBitmap copy of the skiers who rode the lift that day, empty if none or the key doesn't pack
+     */
+    public RoaringBitmap getLiftSkiers(int resortId, int seasonId, int dayId, int liftId) {
+        return copyOf(liftKey(resortId, seasonId, dayId, liftId));
+    }
+
+    // A copy, so set operations run outside the store's lock while rides keep being added
+    private RoaringBitmap copyOf(long key) {
+        RoaringBitmap bitmap = key == QueryKeys.NO_KEY ? null : bitmapStore.read(key, RoaringBitmap::copy);
+        return bitmap != null ? bitmap : new RoaringBitmap();
+    }
+
+    @Override
+    public int getNumberOfUniqueSkiersAtResortSeasonDay(int resortId, int seasonId, int dayId) throws Exception {
+        long key = resortDayKey(resortId, seasonId, dayId);
+        Long cardinality = isComplete(resortId, seasonId, dayId) ? bitmapStore.read(key, RoaringBitmap::getCardinality) : null;
+        if (cardinality == null) {
+            misses.increment();
+            return dbRepository.getNumberOfUniqueSkiersAtResortSeasonDay(resortId, seasonId, dayId);
+        }
+        hits.increment();
+        return (int) (long) cardinality;
+    }
+
+    @Override
+    public int[] getSkierIdsAtResortSeasonDay(int resortId, int seasonId, int dayId) throws Exception {
+        long key = resortDayKey(resortId, seasonId, dayId);
+        int[] skierIds = isComplete(resortId, seasonId, dayId) ? bitmapStore.read(key, RoaringBitmap::toArray) : null;
+        return skierIds != null ? skierIds : dbRepository.getSkierIdsAtResortSeasonDay(resortId, seasonId, dayId);
+    }
+
+    @Override
+    public int[] getSkierIdsAtResortSeasonDayLift(int resortId, int seasonId, int dayId, int liftId) throws Exception {
+        if (liftKey(resortId, seasonId, dayId, liftId) != QueryKeys.NO_KEY && isComplete(resortId, seasonId, dayId)) {
+            return getLiftSkiers(resortId, seasonId, dayId, liftId).toArray();
+        }
+        return dbRepository.getSkierIdsAtResortSeasonDayLift(resortId, seasonId, dayId, liftId);
+    }
+
+    private void addRide(LifeRide lifeRide) {
+        long dayKey = resortDayKey(lifeRide.getResortID(), lifeRide.getSeasonID(), lifeRide.getDayID());
+        long liftKey = liftKey(lifeRide.getResortID(), lifeRide.getSeasonID(), lifeRide.getDayID(), lifeRide.getLiftID());
+        if (dayKey == QueryKeys.NO_KEY || liftKey == QueryKeys.NO_KEY || lifeRide.getSkierID() < 0) {
+            unpackable.increment();
+            return;
+        }
+        boolean completeIfNew = startedBeforeDay(lifeRide.getSeasonID(), lifeRide.getDayID());
+        bitmapStore.add(dayKey, lifeRide.getSkierID(), completeIfNew);
+        bitmapStore.add(liftKey, lifeRide.getSkierID(), completeIfNew);
+    }
+
+    @Override
+    public int getTotalVerticalForSkierAtDay(int resortId, int seasonId, int dayId, int skierId) throws Exception {
+        return dbRepository.getTotalVerticalForSkierAtDay(resortId, seasonId, dayId, skierId);
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId) throws Exception {
+        return dbRepository.getTotalVerticalForSkierAtResort(skierID, resortId);
+    }
+
+    @Override
+    public boolean streamTotalVerticalForSkierAtResort(int skierID, int resortId, SeasonVerticalSink sink) throws Exception {
+        return dbRepository.streamTotalVerticalForSkierAtResort(skierID, resortId, sink);
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId, int seasonId) throws Exception {
+        return dbRepository.getTotalVerticalForSkierAtResort(skierID, resortId, seasonId);
+    }
+
+    // Consumed rides are not indexed: the consumer runs in another process, the servers index what they publish
+    @Override
+    public void saveLifeRides(List<LifeRide> lifeRides) throws Exception {
+        dbRepository.saveLifeRides(lifeRides);
+    }
+
+    @Override
+    public boolean isReady() {
+        return dbRepository.isReady();
+    }
+
+    @Override
+    public void onLifeRidePublished(LifeRide lifeRide) {
+        addRide(lifeRide);
+        dbRepository.onLifeRidePublished(lifeRide);
+    }
+
+    @Override
+    public void close() throws Exception {
+        System.out.println("destroy SkierBitmapDbRepository");
+        bitmapStore.close();
+        dbRepository.close();
+    }
+
+}
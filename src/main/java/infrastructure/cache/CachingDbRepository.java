@@ -0,0 +1,235 @@
+package infrastructure.cache;
+
+import domain.DbRepository;
+import domain.LifeRide;
+import domain.SeasonVerticalSink;
+import domain.SeasonVerticals;
+import infrastructure.metrics.Metrics;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Read-through cache decorator in front of any DbRepository
+ * "Data not found" results are cached as well, they are a large share of GETs
+ * A cached answer is at most its TTL behind the DB, the same order as the MQ -> consumer lag a POST already has
+ * When the DB call fails (e.g. open circuit breaker), an expired entry is served instead of the error
+ */
+public class CachingDbRepository implements DbRepository {
+
+    private final DbRepository dbRepository;
+    private final TtlCache<Integer> skierDayVerticals;
+    private final TtlCache<Integer> uniqueSkiers;
+    private final TtlCache<SeasonVerticals> skierResortVerticals;
+    private final TtlCache<SeasonVerticals> skierResortSeasonVerticals;
+    private final LongAdder staleServed = Metrics.counter("cache.staleServed");
+
+    public CachingDbRepository(DbRepository dbRepository, long skierDayTtlMs, long uniqueSkiersTtlMs, long seasonVerticalTtlMs,
+                               int maxEntries) {
+        System.out.println("init CachingDbRepository");
+        this.dbRepository = dbRepository;
+        this.skierDayVerticals = new TtlCache<>("skierDayVertical", skierDayTtlMs, maxEntries);
+        this.uniqueSkiers = new TtlCache<>("uniqueSkiers", uniqueSkiersTtlMs, maxEntries);
+        this.skierResortVerticals = new TtlCache<>("skierResortVertical", seasonVerticalTtlMs, maxEntries);
+        this.skierResortSeasonVerticals = new TtlCache<>("skierResortSeasonVertical", seasonVerticalTtlMs, maxEntries);
+    }
+
+    @Override
+    public int getNumberOfUniqueSkiersAtResortSeasonDay(int resortId, int seasonId, int dayId) throws Exception {
+        long key = QueryKeys.resortDay(resortId, seasonId, dayId);
+        TtlCache.CacheEntry<Integer> entry = key == QueryKeys.NO_KEY ? null : uniqueSkiers.get(key);
+        if (entry != null && entry.isFresh()) {
+            return entry.getValue();
+        }
+        int result;
+        try {
+            result = dbRepository.getNumberOfUniqueSkiersAtResortSeasonDay(resortId, seasonId, dayId);
+        } catch (Exception e) {
+            if (entry == null) {
+                throw e;
+            }
+            // DB failing or circuit open: an expired answer beats an error
+            staleServed.increment();
+            return entry.getValue();
+        }
+        if (key != QueryKeys.NO_KEY) {
+            uniqueSkiers.put(key, result);
+        }
+        return result;
+    }
+
+    @Override
+    public int getTotalVerticalForSkierAtDay(int resortId, int seasonId, int dayId, int skierId) throws Exception {
+        long key = QueryKeys.skierDay(resortId, seasonId, dayId, skierId);
+        TtlCache.CacheEntry<Integer> entry = key == QueryKeys.NO_KEY ? null : skierDayVerticals.get(key);
+        if (entry != null && entry.isFresh()) {
+            return entry.getValue();
+        }
+        int result;
+        try {
+            result = dbRepository.getTotalVerticalForSkierAtDay(resortId, seasonId, dayId, skierId);
+        } catch (Exception e) {
+            if (entry == null) {
+                throw e;
+            }
+            // DB failing or circuit open: an expired answer beats an error
+            staleServed.increment();
+            return entry.getValue();
+        }
+        if (key != QueryKeys.NO_KEY) {
+            skierDayVerticals.put(key, result);
+        }
+        return result;
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId) throws Exception {
+        long key = QueryKeys.skierResort(skierID, resortId);
+        TtlCache.CacheEntry<SeasonVerticals> entry = key == QueryKeys.NO_KEY ? null : skierResortVerticals.get(key);
+        if (entry != null && entry.isFresh()) {
+            return entry.getValue();
+        }
+        SeasonVerticals result;
+        try {
+            result = dbRepository.getTotalVerticalForSkierAtResort(skierID, resortId);
+        } catch (Exception e) {
+            if (entry == null) {
+                throw e;
+            }
+            // DB failing or circuit open: an expired answer beats an error
+            staleServed.increment();
+            return entry.getValue();
+        }
+        if (key != QueryKeys.NO_KEY) {
+            skierResortVerticals.put(key, result);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean streamTotalVerticalForSkierAtResort(int skierID, int resortId, SeasonVerticalSink sink) throws Exception {
+        long key = QueryKeys.skierResort(skierID, resortId);
+        TtlCache.CacheEntry<SeasonVerticals> entry = key == QueryKeys.NO_KEY ? null : skierResortVerticals.get(key);
+        if (entry != null && entry.isFresh()) {
+            return emit(entry.getValue(), sink);
+        }
+        // Stream through to the caller and record the two ints per season on the way to fill the cache
+        RecordingSink recordingSink = new RecordingSink(sink);
+        boolean found;
+        try {
+            found = dbRepository.streamTotalVerticalForSkierAtResort(skierID, resortId, recordingSink);
+        } catch (Exception e) {
+            // Fall back to the expired answer only if nothing has been sent yet
+            if (entry == null || recordingSink.size > 0) {
+                throw e;
+            }
+            staleServed.increment();
+            return emit(entry.getValue(), sink);
+        }
+        if (key != QueryKeys.NO_KEY) {
+            skierResortVerticals.put(key, found ? recordingSink.toSeasonVerticals() : null);
+        }
+        return found;
+    }
+
+    private static boolean emit(SeasonVerticals seasonVerticals, SeasonVerticalSink sink) throws IOException {
+        if (seasonVerticals == null) {
+            return false;
+        }
+        for (int i = 0; i < seasonVerticals.size(); i++) {
+            sink.onSeason(seasonVerticals.getSeasonID(i), seasonVerticals.getTotalVert(i));
+        }
+        return true;
+    }
+
+    private static class RecordingSink implements SeasonVerticalSink {
+
+        private final SeasonVerticalSink sink;
+        private int[] seasonIDs = new int[8];
+        private int[] totalVerts = new int[8];
+        private int size;
+
+        RecordingSink(SeasonVerticalSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void onSeason(int seasonID, int totalVert) throws IOException {
+            if (size == seasonIDs.length) {
+                seasonIDs = Arrays.copyOf(seasonIDs, size * 2);
+                totalVerts = Arrays.copyOf(totalVerts, size * 2);
+            }
+            seasonIDs[size] = seasonID;
+            totalVerts[size] = totalVert;
+            size++;
+            sink.onSeason(seasonID, totalVert);
+        }
+
+        SeasonVerticals toSeasonVerticals() {
+            return new SeasonVerticals(Arrays.copyOf(seasonIDs, size), Arrays.copyOf(totalVerts, size));
+        }
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId, int seasonId) throws Exception {
+        long key = QueryKeys.skierResortSeason(skierID, resortId, seasonId);
+        TtlCache.CacheEntry<SeasonVerticals> entry = key == QueryKeys.NO_KEY ? null : skierResortSeasonVerticals.get(key);
+        if (entry != null && entry.isFresh()) {
+            return entry.getValue();
+        }
+        SeasonVerticals result;
+        try {
+            result = dbRepository.getTotalVerticalForSkierAtResort(skierID, resortId, seasonId);
+        } catch (Exception e) {
+            if (entry == null) {
+                throw e;
+            }
+            // DB failing or circuit open: an expired answer beats an error
+            staleServed.increment();
+            return entry.getValue();
+        }
+        if (key != QueryKeys.NO_KEY) {
+            skierResortSeasonVerticals.put(key, result);
+        }
+        return result;
+    }
+
+    @Override
+    public int[] getSkierIdsAtResortSeasonDay(int resortId, int seasonId, int dayId) throws Exception {
+        return dbRepository.getSkierIdsAtResortSeasonDay(resortId, seasonId, dayId);
+    }
+
+    @Override
+    public int[] getSkierIdsAtResortSeasonDayLift(int resortId, int seasonId, int dayId, int liftId) throws Exception {
+        return dbRepository.getSkierIdsAtResortSeasonDayLift(resortId, seasonId, dayId, liftId);
+    }
+
+    @Override
+    public void saveLifeRides(List<LifeRide> lifeRides) throws Exception {
+        dbRepository.saveLifeRides(lifeRides);
+    }
+
+    @Override
+    public boolean isReady() {
+        return dbRepository.isReady();
+    }
+
+    @Override
+    public void onLifeRidePublished(LifeRide lifeRide) {
+        dbRepository.onLifeRidePublished(lifeRide);
+    }
+
+    @Override
+    public void close() throws Exception {
+        System.out.println("destroy CachingDbRepository");
+        dbRepository.close();
+    }
+
+}
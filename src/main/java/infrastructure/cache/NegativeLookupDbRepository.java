@@ -0,0 +1,241 @@
+package infrastructure.cache;
+
+import domain.DbRepository;
+import domain.LifeRide;
+import domain.SeasonVerticalSink;
+import domain.SeasonVerticals;
+import infrastructure.metrics.Metrics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Decorator that answers skier-day GETs for skiers without rides as "not found" without a DB call
+ * Keeps one Bloom filter of skier IDs per queried resort-day, loaded from the DB and fed with every ride this node ingests
+ * Rides posted through other nodes, or still in the MQ when the filter loaded, reach it only at its next reload:
+ * until then a GET for such a skier wrongly answers "not found". Off by default for that reason
+ * The maxResortDays most recently queried resort-days keep a filter, the least recently queried one is evicted
+ */
+public class NegativeLookupDbRepository implements DbRepository {
+
+    private final DbRepository dbRepository;
+    private final double fpp;
+    private final int expectedSkiers;
+    private final long refreshNanos;
+    private final int maxResortDays;
+    private final ConcurrentMap<Long, ResortDayFilter> filters = new ConcurrentHashMap<>();
+    private final LongAdder negatives = Metrics.counter("bloom.skierDay.negative");
+    private final LongAdder passes = Metrics.counter("bloom.skierDay.pass");
+    private final LongAdder loadFailures = Metrics.counter("bloom.skierDay.loadFailure");
+    private final LongAdder evictions = Metrics.counter("bloom.skierDay.evicted");
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "bloom-filter-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Filter of one resort-day. Until the first load finishes it answers nothing and every GET goes to the DB
+     */
+    private class ResortDayFilter {
+
+        private final AtomicBoolean loading = new AtomicBoolean();
+        // Read without a lock on the GET path, BloomFilter is thread-safe. Swapped under the filter's monitor
+        private volatile BloomFilter current;
+        // Filter being loaded, rides ingested meanwhile go into both so the swap loses none
+        private BloomFilter next;
+        private volatile boolean ready;
+        private volatile long loadedAtNanos;
+        private volatile long lastQueriedNanos = System.nanoTime();
+        private int insertions;
+
+        synchronized void add(int skierId) {
+            insertions++;
+            if (current != null) {
+                current.put(skierId);
+            }
+            if (next != null) {
+                next.put(skierId);
+            }
+        }
+
+        boolean mightContain(int skierId) {
+            return current.mightContain(skierId);
+        }
+
+        void load(int resortId, int seasonId, int dayId) {
+            BloomFilter fresh;
+            synchronized (this) {
+                // Grow with the resort-day, a filter filled past its expected insertions loses its fpp
+                fresh = new BloomFilter(Math.max(expectedSkiers, insertions), fpp);
+                next = fresh;
+                insertions = 0;
+            }
+            try {
+                int[] skierIds = dbRepository.getSkierIdsAtResortSeasonDay(resortId, seasonId, dayId);
+                synchronized (this) {
+                    for (int skierId : skierIds) {
+                        fresh.put(skierId);
+                    }
+                    insertions += skierIds.length;
+                    current = fresh;
+                    next = null;
+                }
+                loadedAtNanos = System.nanoTime();
+                ready = true;
+            } catch (Exception e) {
+                // Keep serving from the previous filter (or the DB), the next GET retries the load
+                synchronized (this) {
+                    next = null;
+                }
+                loadFailures.increment();
+                System.err.println("Warning: failed to load bloom filter for resort " + resortId + " season " + seasonId
+                        + " day " + dayId + ": " + e.getMessage());
+            } finally {
+                loading.set(false);
+            }
+        }
+    }
+
+    public NegativeLookupDbRepository(DbRepository dbRepository, double fpp, int expectedSkiers, long refreshMs, int maxResortDays) {
+        System.out.println("init NegativeLookupDbRepository");
+        this.dbRepository = dbRepository;
+        this.fpp = fpp;
+        this.expectedSkiers = expectedSkiers;
+        this.refreshNanos = TimeUnit.MILLISECONDS.toNanos(refreshMs);
+        this.maxResortDays = maxResortDays;
+        Metrics.gauge("bloom.skierDay.resortDays", filters::size);
+    }
+
+    @Override
+    public int getTotalVerticalForSkierAtDay(int resortId, int seasonId, int dayId, int skierId) throws Exception {
+        ResortDayFilter filter = filterFor(resortId, seasonId, dayId);
+        if (filter != null && filter.ready && !filter.mightContain(skierId)) {
+            negatives.increment();
+            return 0;
+        }
+        passes.increment();
+        return dbRepository.getTotalVerticalForSkierAtDay(resortId, seasonId, dayId, skierId);
+    }
+
+    /**
+     * @param resortId
+     * @param seasonId
+     * @param dayId
+     * @return ResortDayFilter of the resort-day, created and loaded on first use, or null if the key doesn't pack
+     */
+    private ResortDayFilter filterFor(int resortId, int seasonId, int dayId) {
+        long key = QueryKeys.resortDay(resortId, seasonId, dayId);
+        if (key == QueryKeys.NO_KEY) {
+            return null;
+        }
+        ResortDayFilter filter = filters.get(key);
+        if (filter == null) {
+            filter = filters.computeIfAbsent(key, k -> new ResortDayFilter());
+            if (filters.size() > maxResortDays) {
+                evictLeastRecentlyQueried(key);
+            }
+        }
+        filter.lastQueriedNanos = System.nanoTime();
+        if ((!filter.ready || System.nanoTime() - filter.loadedAtNanos > refreshNanos) && filter.loading.compareAndSet(false, true)) {
+            ResortDayFilter loading = filter;
+            loader.execute(() -> loading.load(resortId, seasonId, dayId));
+        }
+        return filter;
+    }
+
+    /**
+     * @param keep resort-day that was just added
+     * @Description a scan over at most maxResortDays + 1 filters, only when a resort-day is queried for the first time
+     * keeps the hit path free of the shared lock an access-ordered LinkedHashMap would need
+     */
+    private void evictLeastRecentlyQueried(long keep) {
+        Map.Entry<Long, ResortDayFilter> eldest = null;
+        for (Map.Entry<Long, ResortDayFilter> entry : filters.entrySet()) {
+            if (entry.getKey() != keep && (eldest == null || entry.getValue().lastQueriedNanos - eldest.getValue().lastQueriedNanos < 0)) {
+                eldest = entry;
+            }
+        }
+        if (eldest != null && filters.remove(eldest.getKey(), eldest.getValue())) {
+            evictions.increment();
+        }
+    }
+
+    private void addRide(LifeRide lifeRide) {
+        long key = QueryKeys.resortDay(lifeRide.getResortID(), lifeRide.getSeasonID(), lifeRide.getDayID());
+        // Only resort-days someone has queried have a filter, the others load everything from the DB on first use
+        ResortDayFilter filter = key == QueryKeys.NO_KEY ? null : filters.get(key);
+        if (filter != null) {
+            filter.add(lifeRide.getSkierID());
+        }
+    }
+
+    @Override
+    public int getNumberOfUniqueSkiersAtResortSeasonDay(int resortId, int seasonId, int dayId) throws Exception {
+        return dbRepository.getNumberOfUniqueSkiersAtResortSeasonDay(resortId, seasonId, dayId);
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId) throws Exception {
+        return dbRepository.getTotalVerticalForSkierAtResort(skierID, resortId);
+    }
+
+    @Override
+    public boolean streamTotalVerticalForSkierAtResort(int skierID, int resortId, SeasonVerticalSink sink) throws Exception {
+        return dbRepository.streamTotalVerticalForSkierAtResort(skierID, resortId, sink);
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId, int seasonId) throws Exception {
+        return dbRepository.getTotalVerticalForSkierAtResort(skierID, resortId, seasonId);
+    }
+
+    @Override
+    public int[] getSkierIdsAtResortSeasonDay(int resortId, int seasonId, int dayId) throws Exception {
+        return dbRepository.getSkierIdsAtResortSeasonDay(resortId, seasonId, dayId);
+    }
+
+    @Override
+    public int[] getSkierIdsAtResortSeasonDayLift(int resortId, int seasonId, int dayId, int liftId) throws Exception {
+        return dbRepository.getSkierIdsAtResortSeasonDayLift(resortId, seasonId, dayId, liftId);
+    }
+
+    @Override
+    public void saveLifeRides(List<LifeRide> lifeRides) throws Exception {
+        dbRepository.saveLifeRides(lifeRides);
+        for (LifeRide lifeRide : lifeRides) {
+            addRide(lifeRide);
+        }
+    }
+
+    @Override
+    public boolean isReady() {
+        return dbRepository.isReady();
+    }
+
+    @Override
+    public void onLifeRidePublished(LifeRide lifeRide) {
+        addRide(lifeRide);
+        dbRepository.onLifeRidePublished(lifeRide);
+    }
+
+    @Override
+    public void close() throws Exception {
+        System.out.println("destroy NegativeLookupDbRepository");
+        loader.shutdownNow();
+        dbRepository.close();
+    }
+
+}
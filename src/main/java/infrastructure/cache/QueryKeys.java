@@ -0,0 +1,73 @@
+package infrastructure.cache;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Packs the int arguments of a query into one long, so keys are compared and hashed as primitives
+ * instead of building a concatenated String per lookup
+ * Each field gets a fixed bit width, arguments that don't fit return NO_KEY and the caller skips the cache
+ */
+public class QueryKeys {
+
+    public static final long NO_KEY = -1;
+
+    private static final int SKIER_BITS = 24;
+    private static final int RESORT_BITS = 14;
+    private static final int SEASON_BITS = 16;
+    private static final int DAY_BITS = 9;
+    private static final int LIFT_BITS = 16;
+
+    private QueryKeys() {
+    }
+
+    // 24 + 14 + 16 + 9 = 63 bits
+    public static long skierDay(int resortId, int seasonId, int dayId, int skierId) {
+        if (!fits(resortId, RESORT_BITS) || !fits(seasonId, SEASON_BITS) || !fits(dayId, DAY_BITS) || !fits(skierId, SKIER_BITS)) {
+            return NO_KEY;
+        }
+        return ((((long) resortId << SEASON_BITS | seasonId) << DAY_BITS | dayId) << SKIER_BITS) | skierId;
+    }
+
+    public static long resortDay(int resortId, int seasonId, int dayId) {
+        if (!fits(resortId, RESORT_BITS) || !fits(seasonId, SEASON_BITS) || !fits(dayId, DAY_BITS)) {
+            return NO_KEY;
+        }
+        return ((long) resortId << SEASON_BITS | seasonId) << DAY_BITS | dayId;
+    }
+
+    // 14 + 16 + 9 + 16 = 55 bits
+    public static long resortDayLift(int resortId, int seasonId, int dayId, int liftId) {
+        long resortDay = resortDay(resortId, seasonId, dayId);
+        if (resortDay == NO_KEY || !fits(liftId, LIFT_BITS)) {
+            return NO_KEY;
+        }
+        return resortDay << LIFT_BITS | liftId;
+    }
+
+    // Inverse of resortDayLift for the resort-day part
+    public static long resortDayOfLift(long resortDayLift) {
+        return resortDayLift >>> LIFT_BITS;
+    }
+
+    public static long skierResort(int skierId, int resortId) {
+        if (!fits(skierId, SKIER_BITS) || !fits(resortId, RESORT_BITS)) {
+            return NO_KEY;
+        }
+        return (long) skierId << RESORT_BITS | resortId;
+    }
+
+    public static long skierResortSeason(int skierId, int resortId, int seasonId) {
+        if (!fits(skierId, SKIER_BITS) || !fits(resortId, RESORT_BITS) || !fits(seasonId, SEASON_BITS)) {
+            return NO_KEY;
+        }
+        return ((long) skierId << RESORT_BITS | resortId) << SEASON_BITS | seasonId;
+    }
+
+    private static boolean fits(int value, int bits) {
+        return value >= 0 && value < (1 << bits);
+    }
+
+}
@@ -0,0 +1,68 @@
+package infrastructure.cache;
+
+import domain.RepositoryUnavailableException;
+import infrastructure.metrics.Metrics;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Coalesces concurrent calls with the same key: the first caller runs the call, callers arriving while it is
+ * in flight wait for it and share its result (or its exception) instead of running it again
+ * Followers wait at most waitMs, a stuck leader can't pin their threads
+ */
+public class SingleFlight<V> {
+
+    private final ConcurrentHashMap<Long, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final long waitMs;
+    private final LongAdder leaders;
+    private final LongAdder followers;
+    private final LongAdder timeouts;
+
+    public SingleFlight(String name, long waitMs) {
+        this.waitMs = waitMs;
+        this.leaders = Metrics.counter("singleFlight." + name + ".executed");
+        this.followers = Metrics.counter("singleFlight." + name + ".shared");
+        this.timeouts = Metrics.counter("singleFlight." + name + ".timedOut");
+    }
+
+    public V execute(long key, Callable<V> call) throws Exception {
+        CompletableFuture<V> pending = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, pending);
+        if (existing != null) {
+            followers.increment();
+            try {
+                return existing.get(waitMs, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            } catch (TimeoutException e) {
+                timeouts.increment();
+                throw new RepositoryUnavailableException("Error: shared call still in flight after " + waitMs + "ms");
+            }
+        }
+        leaders.increment();
+        try {
+            V result = call.call();
+            pending.complete(result);
+            return result;
+        } catch (Throwable e) {
+            // Errors too, otherwise followers of a leader that hit e.g. an OutOfMemoryError wait for nothing
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            // Remove before the next caller arrives, so a result is only shared while the call is in flight
+            inFlight.remove(key, pending);
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package infrastructure.cache;
+
+import domain.DbRepository;
+import domain.LifeRide;
+import domain.SeasonVerticalSink;
+import domain.SeasonVerticals;
+
+import java.util.List;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Decorator that lets concurrent identical GETs share one pending DB call
+ * e.g. hundreds of dashboards refreshing the same resort-day count run one aggregation, not hundreds
+ */
+public class SingleFlightDbRepository implements DbRepository {
+
+    private final DbRepository dbRepository;
+    private final SingleFlight<Integer> skierDayVerticals;
+    private final SingleFlight<Integer> uniqueSkiers;
+    private final SingleFlight<SeasonVerticals> skierResortVerticals;
+    private final SingleFlight<SeasonVerticals> skierResortSeasonVerticals;
+
+    /**
+     * @param dbRepository
+     * @param waitMs how long a caller waits for a call another caller is running
+     */
+    public SingleFlightDbRepository(DbRepository dbRepository, long waitMs) {
+        System.out.println("init SingleFlightDbRepository");
+        this.dbRepository = dbRepository;
+        this.skierDayVerticals = new SingleFlight<>("skierDayVertical", waitMs);
+        this.uniqueSkiers = new SingleFlight<>("uniqueSkiers", waitMs);
+        this.skierResortVerticals = new SingleFlight<>("skierResortVertical", waitMs);
+        this.skierResortSeasonVerticals = new SingleFlight<>("skierResortSeasonVertical", waitMs);
+    }
+
+    @Override
+    public int getNumberOfUniqueSkiersAtResortSeasonDay(int resortId, int seasonId, int dayId) throws Exception {
+        long key = QueryKeys.resortDay(resortId, seasonId, dayId);
+        if (key == QueryKeys.NO_KEY) {
+            return dbRepository.getNumberOfUniqueSkiersAtResortSeasonDay(resortId, seasonId, dayId);
+        }
+        return uniqueSkiers.execute(key, () -> dbRepository.getNumberOfUniqueSkiersAtResortSeasonDay(resortId, seasonId, dayId));
+    }
+
+    @Override
+    public int getTotalVerticalForSkierAtDay(int resortId, int seasonId, int dayId, int skierId) throws Exception {
+        long key = QueryKeys.skierDay(resortId, seasonId, dayId, skierId);
+        if (key == QueryKeys.NO_KEY) {
+            return dbRepository.getTotalVerticalForSkierAtDay(resortId, seasonId, dayId, skierId);
+        }
+        return skierDayVerticals.execute(key, () -> dbRepository.getTotalVerticalForSkierAtDay(resortId, seasonId, dayId, skierId));
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId) throws Exception {
+        long key = QueryKeys.skierResort(skierID, resortId);
+        if (key == QueryKeys.NO_KEY) {
+            return dbRepository.getTotalVerticalForSkierAtResort(skierID, resortId);
+        }
+        return skierResortVerticals.execute(key, () -> dbRepository.getTotalVerticalForSkierAtResort(skierID, resortId));
+    }
+
+    @Override
+    // Not single-flighted: every caller writes to its own response as the cursor advances
+    public boolean streamTotalVerticalForSkierAtResort(int skierID, int resortId, SeasonVerticalSink sink) throws Exception {
+        return dbRepository.streamTotalVerticalForSkierAtResort(skierID, resortId, sink);
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId, int seasonId) throws Exception {
+        long key = QueryKeys.skierResortSeason(skierID, resortId, seasonId);
+        if (key == QueryKeys.NO_KEY) {
+            return dbRepository.getTotalVerticalForSkierAtResort(skierID, resortId, seasonId);
+        }
+        return skierResortSeasonVerticals.execute(key, () -> dbRepository.getTotalVerticalForSkierAtResort(skierID, resortId, seasonId));
+    }
+
+    @Override
+    public int[] getSkierIdsAtResortSeasonDay(int resortId, int seasonId, int dayId) throws Exception {
+        return dbRepository.getSkierIdsAtResortSeasonDay(resortId, seasonId, dayId);
+    }
+
+    @Override
+    public int[] getSkierIdsAtResortSeasonDayLift(int resortId, int seasonId, int dayId, int liftId) throws Exception {
+        return dbRepository.getSkierIdsAtResortSeasonDayLift(resortId, seasonId, dayId, liftId);
+    }
+
+    @Override
+    public void saveLifeRides(List<LifeRide> lifeRides) throws Exception {
+        dbRepository.saveLifeRides(lifeRides);
+    }
+
+    @Override
+    public boolean isReady() {
+        return dbRepository.isReady();
+    }
+
+    @Override
+    public void onLifeRidePublished(LifeRide lifeRide) {
+        dbRepository.onLifeRidePublished(lifeRide);
+    }
+
+    @Override
+    public void close() throws Exception {
+        System.out.println("destroy SingleFlightDbRepository");
+        dbRepository.close();
+    }
+
+}
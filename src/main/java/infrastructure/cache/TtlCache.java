@@ -0,0 +1,127 @@
+package infrastructure.cache;
+
+import infrastructure.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Size-bounded LRU cache with a fixed TTL, keyed by packed longs (see QueryKeys)
+ * Split into segments with one lock each, so concurrent GETs of different keys rarely contend
+ * Expired entries stay until they are evicted, so a caller can still fall back to them when the DB is down
+ */
+public class TtlCache<V> {
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private final long ttlNanos;
+    private final List<Segment<V>> segments;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    public static class CacheEntry<V> {
+
+        private final V value;
+        private final long expiresAtNanos;
+
+        CacheEntry(V value, long expiresAtNanos) {
+            this.value = value;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public boolean isFresh() {
+            return System.nanoTime() - expiresAtNanos < 0;
+        }
+    }
+
+    // Access-ordered LinkedHashMap: every get moves the entry to the tail, removeEldestEntry drops the least recently used
+    private static class Segment<V> extends LinkedHashMap<Long, CacheEntry<V>> {
+
+        private final int maxEntries;
+        private final LongAdder evictions;
+
+        Segment(int maxEntries, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, CacheEntry<V>> eldest) {
+            if (size() > maxEntries) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public TtlCache(String name, long ttlMs, int maxEntries) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.hits = Metrics.counter("cache." + name + ".hit");
+        this.misses = Metrics.counter("cache." + name + ".miss");
+        this.evictions = Metrics.counter("cache." + name + ".eviction");
+        this.segments = new ArrayList<>(SEGMENT_COUNT);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments.add(new Segment<>(Math.max(1, maxEntries / SEGMENT_COUNT), evictions));
+        }
+        Metrics.gauge("cache." + name + ".size", this::size);
+    }
+
+    /**
+     * @param key
+     * @return CacheEntry, fresh or expired, or null if the key is not cached. Counts a hit only for a fresh entry
+     */
+    public CacheEntry<V> get(long key) {
+        Segment<V> segment = segmentFor(key);
+        CacheEntry<V> entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+        }
+        if (entry != null && entry.isFresh()) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return entry;
+    }
+
+    public void put(long key, V value) {
+        Segment<V> segment = segmentFor(key);
+        CacheEntry<V> entry = new CacheEntry<>(value, System.nanoTime() + ttlNanos);
+        synchronized (segment) {
+            segment.put(key, entry);
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private Segment<V> segmentFor(long key) {
+        // Mix the high bits in, packed keys differ mostly in their low fields
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return segments.get((int) (hash >>> 60) & (SEGMENT_COUNT - 1));
+    }
+
+}
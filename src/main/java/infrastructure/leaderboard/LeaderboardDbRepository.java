@@ -0,0 +1,152 @@
+package infrastructure.leaderboard;
+
+import domain.DbRepository;
+import domain.Leaderboard;
+import domain.LifeRide;
+import domain.SeasonVerticalSink;
+import domain.SeasonVerticals;
+import infrastructure.cache.QueryKeys;
+import infrastructure.metrics.Metrics;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Decorator keeping a TopKVerticals per resort-day, fed with every ride POSTed to this node
+ * Only the maxResortDays most recently ridden resort-days are kept, older leaderboards are dropped
+ * Exact as long as all rides are POSTed through this node, lost on restart
+ * Every POST counts: a ride POSTed twice is ranked twice, while the DB stores it once (rideKey) and its verticals count it once
+ */
+public class LeaderboardDbRepository implements DbRepository {
+
+    private final DbRepository dbRepository;
+    private final int capacity;
+    private final Map<Long, TopKVerticals> leaderboards;
+    private final LongAdder dropped = Metrics.counter("leaderboard.droppedRide");
+
+    /**
+     * @param dbRepository
+     * @param capacity largest k served
+     * @param maxResortDays
+     */
+    public LeaderboardDbRepository(DbRepository dbRepository, int capacity, int maxResortDays) {
+        System.out.println("init LeaderboardDbRepository");
+        this.dbRepository = dbRepository;
+        this.capacity = capacity;
+        // Access order + removeEldestEntry: the resort-day ridden least recently goes first, i.e. past days
+        this.leaderboards = new LinkedHashMap<Long, TopKVerticals>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, TopKVerticals> eldest) {
+                return size() > maxResortDays;
+            }
+        };
+        Metrics.gauge("leaderboard.resortDays", () -> {
+            synchronized (leaderboards) {
+                return leaderboards.size();
+            }
+        });
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @param resortId
+     * @param seasonId
+     * @param dayId
+     * @param k
+     * @return Leaderboard of the k best skiers, or null if no ride of the resort-day was POSTed here
+     */
+    public Leaderboard getLeaderboard(int resortId, int seasonId, int dayId, int k) {
+        long key = QueryKeys.resortDay(resortId, seasonId, dayId);
+        if (key == QueryKeys.NO_KEY) {
+            return null;
+        }
+        TopKVerticals topK;
+        synchronized (leaderboards) {
+            topK = leaderboards.get(key);
+        }
+        return topK != null ? topK.top(k) : null;
+    }
+
+    private void addRide(LifeRide lifeRide) {
+        long key = QueryKeys.resortDay(lifeRide.getResortID(), lifeRide.getSeasonID(), lifeRide.getDayID());
+        // TopKVerticals needs verticals that only grow
+        if (key == QueryKeys.NO_KEY || lifeRide.getSkierID() < 0 || lifeRide.getLiftID() < 1) {
+            dropped.increment();
+            return;
+        }
+        // Added under the map lock, a ride can't go into a leaderboard that was just evicted; add is O(K) on a small K
+        synchronized (leaderboards) {
+            leaderboards.computeIfAbsent(key, k -> new TopKVerticals(capacity))
+                    .add(lifeRide.getSkierID(), lifeRide.getLiftID() * 10);
+        }
+    }
+
+    @Override
+    public int getTotalVerticalForSkierAtDay(int resortId, int seasonId, int dayId, int skierId) throws Exception {
+        return dbRepository.getTotalVerticalForSkierAtDay(resortId, seasonId, dayId, skierId);
+    }
+
+    @Override
+    public int getNumberOfUniqueSkiersAtResortSeasonDay(int resortId, int seasonId, int dayId) throws Exception {
+        return dbRepository.getNumberOfUniqueSkiersAtResortSeasonDay(resortId, seasonId, dayId);
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId) throws Exception {
+        return dbRepository.getTotalVerticalForSkierAtResort(skierID, resortId);
+    }
+
+    @Override
+    public boolean streamTotalVerticalForSkierAtResort(int skierID, int resortId, SeasonVerticalSink sink) throws Exception {
+        return dbRepository.streamTotalVerticalForSkierAtResort(skierID, resortId, sink);
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId, int seasonId) throws Exception {
+        return dbRepository.getTotalVerticalForSkierAtResort(skierID, resortId, seasonId);
+    }
+
+    @Override
+    public int[] getSkierIdsAtResortSeasonDay(int resortId, int seasonId, int dayId) throws Exception {
+        return dbRepository.getSkierIdsAtResortSeasonDay(resortId, seasonId, dayId);
+    }
+
+    @Override
+    public int[] getSkierIdsAtResortSeasonDayLift(int resortId, int seasonId, int dayId, int liftId) throws Exception {
+        return dbRepository.getSkierIdsAtResortSeasonDayLift(resortId, seasonId, dayId, liftId);
+    }
+
+    // Consumed rides are not ranked: the consumer runs in another process, the servers rank what they publish
+    @Override
+    public void saveLifeRides(List<LifeRide> lifeRides) throws Exception {
+        dbRepository.saveLifeRides(lifeRides);
+    }
+
+    @Override
+    public boolean isReady() {
+        return dbRepository.isReady();
+    }
+
+    @Override
+    public void onLifeRidePublished(LifeRide lifeRide) {
+        addRide(lifeRide);
+        dbRepository.onLifeRidePublished(lifeRide);
+    }
+
+    @Override
+    public void close() throws Exception {
+        System.out.println("destroy LeaderboardDbRepository");
+        dbRepository.close();
+    }
+
+}
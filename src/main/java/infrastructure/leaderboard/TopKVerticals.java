@@ -0,0 +1,130 @@
+package infrastructure.leaderboard;
+
+import domain.Leaderboard;
+import infrastructure.memory.LongIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Top-K skiers by total vertical of one resort-day, updated per ride in O(K) without rescanning the day
+ * Every skier's running vertical is kept in a LongIntHashMap, the K best in a min-heap on vertical
+ * Verticals only grow (callers add positive verticals only), so a skier outside the heap never scores above the heap minimum until their next ride:
+ * on that ride they replace the minimum if they beat it (replace-min), and the heap stays the exact top K
+ * Thread-safe
+ */
+public class TopKVerticals {
+
+    // The vertical map starts small and doubles as skiers arrive, most resort-days kept in memory see few of them
+    private static final int INITIAL_SKIERS = 64;
+
+    private final int capacity;
+    private final LongIntHashMap verticals;
+    // Min-heap by vertical, ties with the higher skierID at the top so the lower one stays on the board
+    private final int[] heapSkiers;
+    private final int[] heapVerts;
+    private int heapSize;
+
+    /**
+     * @param capacity K, the largest k a leaderboard can be asked for
+     */
+    public TopKVerticals(int capacity) {
+        this.capacity = capacity;
+        this.verticals = new LongIntHashMap(INITIAL_SKIERS);
+        this.heapSkiers = new int[capacity];
+        this.heapVerts = new int[capacity];
+    }
+
+    public synchronized void add(int skierId, int vertical) {
+        verticals.addTo(skierId, vertical);
+        int total = verticals.get(skierId, 0);
+        // K is small (default 100): a linear scan beats keeping a skier -> heap position index up to date
+        for (int i = 0; i < heapSize; i++) {
+            if (heapSkiers[i] == skierId) {
+                heapVerts[i] = total;
+                siftDown(i);
+                return;
+            }
+        }
+        if (heapSize < capacity) {
+            heapSkiers[heapSize] = skierId;
+            heapVerts[heapSize] = total;
+            siftUp(heapSize++);
+        } else if (less(heapSkiers[0], heapVerts[0], skierId, total)) {
+            heapSkiers[0] = skierId;
+            heapVerts[0] = total;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * @param k
+     * @return Leaderboard of the min(k, capacity) best skiers
+     */
+    public synchronized Leaderboard top(int k) {
+        int n = Math.min(k, heapSize);
+        // Sort a copy of the heap, at most capacity entries
+        long[] entries = new long[heapSize];
+        for (int i = 0; i < heapSize; i++) {
+            // Vertical descending, then skierID ascending, as one ascending long
+            entries[i] = ((long) (Integer.MAX_VALUE - heapVerts[i]) << 32) | (heapSkiers[i] & 0xFFFFFFFFL);
+        }
+        Arrays.sort(entries);
+        int[] skierIDs = new int[n];
+        int[] totalVerts = new int[n];
+        for (int i = 0; i < n; i++) {
+            skierIDs[i] = (int) entries[i];
+            totalVerts[i] = Integer.MAX_VALUE - (int) (entries[i] >>> 32);
+        }
+        return new Leaderboard(skierIDs, totalVerts);
+    }
+
+    // Strict order: lower vertical first, on equal vertical the higher skierID
+    private static boolean less(int skierA, int vertA, int skierB, int vertB) {
+        return vertA < vertB || (vertA == vertB && skierA > skierB);
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!less(heapSkiers[index], heapVerts[index], heapSkiers[parent], heapVerts[parent])) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < heapSize && less(heapSkiers[left], heapVerts[left], heapSkiers[smallest], heapVerts[smallest])) {
+                smallest = left;
+            }
+            if (right < heapSize && less(heapSkiers[right], heapVerts[right], heapSkiers[smallest], heapVerts[smallest])) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int skier = heapSkiers[i];
+        int vert = heapVerts[i];
+        heapSkiers[i] = heapSkiers[j];
+        heapVerts[i] = heapVerts[j];
+        heapSkiers[j] = skier;
+        heapVerts[j] = vert;
+    }
+
+}
@@ -0,0 +1,270 @@
+package infrastructure.memory;
+
+import domain.DbRepository;
+import domain.LifeRide;
+import domain.SeasonVerticals;
+import infrastructure.cache.QueryKeys;
+import infrastructure.metrics.Metrics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * DbRepository answering the GETs from aggregates in memory, fed with every ride this node publishes (onLifeRidePublished)
+ * - vertical per skier-day and per skier-resort-season in LongIntHashMaps keyed by QueryKeys, striped by skier
+ * - skiers per resort-day as one growable int[] per resort-day, its length is the unique skier count
+ * State covers only rides published through this node since it started: run a single server node, or route
+ * POSTs and GETs of a resort to the same node
+ * Selected with -Dskier.db.model=memory
+ */
+public class InMemoryDbRepository implements DbRepository {
+
+    // Power of two, a skier's maps are chosen by the low bits of the mixed skierID
+    private static final int STRIPES = 64;
+    private static final int MISSING = -1;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final ReadWriteLock resortDayLock = new ReentrantReadWriteLock();
+    // resort-day key -> index into resortDaySkiers / resortDaySizes
+    private final LongIntHashMap resortDaySlots;
+    private int[][] resortDaySkiers = new int[64][];
+    private int[] resortDaySizes = new int[64];
+    // Seasons seen so far, a skier-resort GET probes one key per season; copy-on-write, there are only a handful
+    private volatile int[] seasons = new int[0];
+    private final LongAdder unpackable = Metrics.counter("memory.unpackableRide");
+
+    /**
+     * Aggregates of the skiers hashed to one stripe, guarded by its own lock so writers of different skiers don't contend
+     */
+    private static class Stripe {
+
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final LongIntHashMap skierDayVerticals;
+        private final LongIntHashMap skierResortSeasonVerticals;
+
+        Stripe(int expectedSkierDays) {
+            skierDayVerticals = new LongIntHashMap(expectedSkierDays);
+            skierResortSeasonVerticals = new LongIntHashMap(expectedSkierDays);
+        }
+    }
+
+    /**
+     * @param expectedSkierDays sizes the maps up front, they still grow past it
+     */
+    public InMemoryDbRepository(int expectedSkierDays) {
+        System.out.println("init InMemoryDbRepository");
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(Math.max(16, expectedSkierDays / STRIPES));
+        }
+        resortDaySlots = new LongIntHashMap(64);
+        Metrics.gauge("memory.skierDays", () -> {
+            long total = 0;
+            for (Stripe stripe : stripes) {
+                stripe.lock.readLock().lock();
+                try {
+                    total += stripe.skierDayVerticals.size();
+                } finally {
+                    stripe.lock.readLock().unlock();
+                }
+            }
+            return total;
+        });
+        Metrics.gauge("memory.resortDays", () -> {
+            resortDayLock.readLock().lock();
+            try {
+                return resortDaySlots.size();
+            } finally {
+                resortDayLock.readLock().unlock();
+            }
+        });
+    }
+
+    private Stripe stripeFor(int skierId) {
+        int h = skierId * 0x9E3779B9;
+        return stripes[(h ^ h >>> 16) & (STRIPES - 1)];
+    }
+
+    @Override
+    public int getTotalVerticalForSkierAtDay(int resortId, int seasonId, int dayId, int skierId) {
+        long key = QueryKeys.skierDay(resortId, seasonId, dayId, skierId);
+        if (key == QueryKeys.NO_KEY) {
+            return 0;
+        }
+        Stripe stripe = stripeFor(skierId);
+        stripe.lock.readLock().lock();
+        try {
+            return stripe.skierDayVerticals.get(key, 0);
+        } finally {
+            stripe.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId) {
+        return seasonVerticals(skierID, resortId, seasons);
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId, int seasonId) {
+        return seasonVerticals(skierID, resortId, new int[]{seasonId});
+    }
+
+    /**
+     * @param skierID
+     * @param resortId
+     * @param candidateSeasons
+     * @return SeasonVerticals of the candidate seasons with rides, or null if there are none
+     */
+    private SeasonVerticals seasonVerticals(int skierID, int resortId, int[] candidateSeasons) {
+        int[] seasonIDs = new int[candidateSeasons.length];
+        int[] totalVerts = new int[candidateSeasons.length];
+        int found = 0;
+        Stripe stripe = stripeFor(skierID);
+        stripe.lock.readLock().lock();
+        try {
+            for (int seasonId : candidateSeasons) {
+                long key = QueryKeys.skierResortSeason(skierID, resortId, seasonId);
+                int vertical = key == QueryKeys.NO_KEY ? MISSING : stripe.skierResortSeasonVerticals.get(key, MISSING);
+                if (vertical != MISSING) {
+                    seasonIDs[found] = seasonId;
+                    totalVerts[found] = vertical;
+                    found++;
+                }
+            }
+        } finally {
+            stripe.lock.readLock().unlock();
+        }
+        return found == 0 ? null : new SeasonVerticals(Arrays.copyOf(seasonIDs, found), Arrays.copyOf(totalVerts, found));
+    }
+
+    @Override
+    public int getNumberOfUniqueSkiersAtResortSeasonDay(int resortId, int seasonId, int dayId) {
+        long key = QueryKeys.resortDay(resortId, seasonId, dayId);
+        if (key == QueryKeys.NO_KEY) {
+            return 0;
+        }
+        resortDayLock.readLock().lock();
+        try {
+            int slot = resortDaySlots.get(key, MISSING);
+            return slot == MISSING ? 0 : resortDaySizes[slot];
+        } finally {
+            resortDayLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int[] getSkierIdsAtResortSeasonDay(int resortId, int seasonId, int dayId) {
+        long key = QueryKeys.resortDay(resortId, seasonId, dayId);
+        if (key == QueryKeys.NO_KEY) {
+            return new int[0];
+        }
+        resortDayLock.readLock().lock();
+        try {
+            int slot = resortDaySlots.get(key, MISSING);
+            return slot == MISSING ? new int[0] : Arrays.copyOf(resortDaySkiers[slot], resortDaySizes[slot]);
+        } finally {
+            resortDayLock.readLock().unlock();
+        }
+    }
+
+    private void addRide(LifeRide lifeRide) {
+        int resortId = lifeRide.getResortID();
+        int seasonId = lifeRide.getSeasonID();
+        int dayId = lifeRide.getDayID();
+        int skierId = lifeRide.getSkierID();
+        long skierDayKey = QueryKeys.skierDay(resortId, seasonId, dayId, skierId);
+        long skierResortSeasonKey = QueryKeys.skierResortSeason(skierId, resortId, seasonId);
+        if (skierDayKey == QueryKeys.NO_KEY || skierResortSeasonKey == QueryKeys.NO_KEY) {
+            unpackable.increment();
+            return;
+        }
+        int vertical = lifeRide.getLiftID() * 10;
+        boolean newSkierDay;
+        Stripe stripe = stripeFor(skierId);
+        stripe.lock.writeLock().lock();
+        try {
+            newSkierDay = stripe.skierDayVerticals.addTo(skierDayKey, vertical);
+            stripe.skierResortSeasonVerticals.addTo(skierResortSeasonKey, vertical);
+        } finally {
+            stripe.lock.writeLock().unlock();
+        }
+        // The first ride of a skier-day is the only one that adds the skier to the resort-day, like the rollups
+        if (newSkierDay) {
+            addSkierToResortDay(QueryKeys.resortDay(resortId, seasonId, dayId), skierId);
+        }
+        addSeason(seasonId);
+    }
+
+    private void addSkierToResortDay(long resortDayKey, int skierId) {
+        resortDayLock.writeLock().lock();
+        try {
+            int slot = resortDaySlots.putIfAbsent(resortDayKey, resortDaySlots.size());
+            if (slot == resortDaySizes.length) {
+                resortDaySkiers = Arrays.copyOf(resortDaySkiers, slot * 2);
+                resortDaySizes = Arrays.copyOf(resortDaySizes, slot * 2);
+            }
+            int[] skiers = resortDaySkiers[slot];
+            int size = resortDaySizes[slot];
+            if (skiers == null) {
+                skiers = new int[16];
+            } else if (size == skiers.length) {
+                skiers = Arrays.copyOf(skiers, size * 2);
+            }
+            skiers[size] = skierId;
+            resortDaySkiers[slot] = skiers;
+            resortDaySizes[slot] = size + 1;
+        } finally {
+            resortDayLock.writeLock().unlock();
+        }
+    }
+
+    private void addSeason(int seasonId) {
+        for (int season : seasons) {
+            if (season == seasonId) {
+                return;
+            }
+        }
+        synchronized (this) {
+            int[] current = seasons;
+            for (int season : current) {
+                if (season == seasonId) {
+                    return;
+                }
+            }
+            int[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = seasonId;
+            Arrays.sort(next);
+            seasons = next;
+        }
+    }
+
+    /**
+     * @param lifeRides
+     * @Description rides consumed from the MQ in this process, e.g. a consumer that also serves GETs
+     */
+    @Override
+    public void saveLifeRides(List<LifeRide> lifeRides) {
+        for (LifeRide lifeRide : lifeRides) {
+            addRide(lifeRide);
+        }
+    }
+
+    @Override
+    public void onLifeRidePublished(LifeRide lifeRide) {
+        addRide(lifeRide);
+    }
+
+    @Override
+    public void close() {
+        System.out.println("destroy InMemoryDbRepository");
+    }
+
+}
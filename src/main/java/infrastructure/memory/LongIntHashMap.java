@@ -0,0 +1,156 @@
+package infrastructure.memory;
+
+import java.util.Arrays;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Open-addressing hash map from non-negative long keys to int values, linear probing, no boxing and no entry objects
+ * Two parallel arrays: 12 bytes per slot instead of ~80 for a HashMap<Long, Integer> entry
+ * Append-only (there is no remove), which keeps probing free of tombstones
+ * Not thread-safe, callers lock around it
+ */
+public class LongIntHashMap {
+
+    // Negative keys are never stored, QueryKeys packs into the low 63 bits and uses -1 as NO_KEY
+    private static final long EMPTY = -1L;
+    private static final double MAX_LOAD = 0.6;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    /**
+     * @param expectedSize entries the map holds before its first resize
+     */
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit((int) Math.max(2, Math.min(1 << 30, expectedSize / MAX_LOAD)) * 2 - 1);
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * MAX_LOAD);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param key
+     * @param defaultValue
+     * @return int value of the key, or defaultValue if absent
+     */
+    public int get(long key, int defaultValue) {
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return defaultValue;
+    }
+
+    public boolean containsKey(long key) {
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @param key non-negative
+     * @param delta
+     * @return boolean true if the key was absent and has been inserted with value delta
+     */
+    public boolean addTo(long key, int delta) {
+        checkKey(key);
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                values[slot] += delta;
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        insertAt(slot, key, delta);
+        return true;
+    }
+
+    /**
+     * @param key non-negative
+     * @param value
+     * @return int previous value, or value itself if the key was absent (then it has been inserted)
+     */
+    public int putIfAbsent(long key, int value) {
+        checkKey(key);
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        insertAt(slot, key, value);
+        return value;
+    }
+
+    private void insertAt(int slot, long key, int value) {
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > resizeAt) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    private void rehash(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalStateException("Error: LongIntHashMap can't grow past " + keys.length + " slots");
+        }
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i]);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static void checkKey(long key) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Error: negative key " + key);
+        }
+    }
+
+    // 64-bit finalizer of MurmurHash3, packed keys differ mostly in their low bits and would cluster under linear probing
+    private int slot(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+}
@@ -0,0 +1,77 @@
+package infrastructure.mongoDB;
+
+import com.mongodb.MongoException;
+import domain.DbRepository;
+import domain.LifeRide;
+import domain.SeasonVerticalSink;
+import domain.SeasonVerticals;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * DbRepository on the bucketed skier-day model, see SkierDayBucketConnector
+ * Selected with -Dskier.db.model=bucketed
+ */
+public class BucketedDbRepoImpl implements DbRepository {
+
+    private static final String MG_COLLECTION = "skier_day";
+
+    private final SkierDayBucketConnector skierDayBucketConnector;
+
+    public BucketedDbRepoImpl() throws MongoException {
+        System.out.println("init BucketedDbRepoImpl");
+        this.skierDayBucketConnector = new SkierDayBucketConnector(DbRepoImpl.MG_CONNECTION, DbRepoImpl.MG_DATABASE, MG_COLLECTION);
+    }
+
+    @Override
+    public int getTotalVerticalForSkierAtDay(int resortId, int seasonId, int dayId, int skierId) throws MongoException {
+        return skierDayBucketConnector.getTotalVerticalForSkierAtDay(resortId, seasonId, dayId, skierId);
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId) throws MongoException {
+        return skierDayBucketConnector.getTotalVerticalForSkierAtResort(skierID, resortId);
+    }
+
+    @Override
+    public boolean streamTotalVerticalForSkierAtResort(int skierID, int resortId, SeasonVerticalSink sink) throws MongoException, IOException {
+        return skierDayBucketConnector.streamTotalVerticalForSkierAtResort(skierID, resortId, sink);
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId, int seasonId) throws MongoException {
+        return skierDayBucketConnector.getTotalVerticalForSkierAtResort(skierID, resortId, seasonId);
+    }
+
+    @Override
+    public int getNumberOfUniqueSkiersAtResortSeasonDay(int resortId, int seasonId, int dayId) throws MongoException {
+        return skierDayBucketConnector.getNumberOfUniqueSkiersAtResortSeasonDay(resortId, seasonId, dayId);
+    }
+
+    @Override
+    public int[] getSkierIdsAtResortSeasonDay(int resortId, int seasonId, int dayId) throws MongoException {
+        return skierDayBucketConnector.getSkierIdsAtResortSeasonDay(resortId, seasonId, dayId);
+    }
+
+    @Override
+    public int[] getSkierIdsAtResortSeasonDayLift(int resortId, int seasonId, int dayId, int liftId) throws MongoException {
+        return skierDayBucketConnector.getSkierIdsAtResortSeasonDayLift(resortId, seasonId, dayId, liftId);
+    }
+
+    @Override
+    public void saveLifeRides(List<LifeRide> lifeRides) throws MongoException {
+        skierDayBucketConnector.insertLifeRides(lifeRides);
+    }
+
+    @Override
+    public void close() {
+        System.out.println("destroy BucketedDbRepoImpl");
+        skierDayBucketConnector.close();
+    }
+}
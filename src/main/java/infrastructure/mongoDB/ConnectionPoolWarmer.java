@@ -0,0 +1,145 @@
+package infrastructure.mongoDB;
+
+import com.mongodb.MongoException;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionClosedEvent;
+import com.mongodb.event.ConnectionCreatedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import infrastructure.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Grows the Mongo connection pool in the background instead of at startup
+ * The pool starts at a small minSize; this listener tracks how many connections are in use, and every interval
+ * opens connections up to target = peak in use over the last interval * HEADROOM (at least initialTarget, at most maxSize)
+ * by running that many concurrent pings. Idle connections above minSize are closed by the driver's maxConnectionIdleTime,
+ * so the pool follows the load in both directions
+ * Ready once the server answered a ping and the pool reached initialTarget. Every round pings at least once,
+ * a failed round reports not ready until a ping succeeds again
+ * Works for the sync and the reactive driver, they share the pool listener and differ only in how they ping
+ */
+public class ConnectionPoolWarmer implements ConnectionPoolListener, AutoCloseable {
+
+    private static final double HEADROOM = 1.5;
+    // Connections opened per round at most, a cold pool shouldn't hit mongod with hundreds of handshakes at once
+    private static final int MAX_OPEN_PER_ROUND = 20;
+
+    private final int initialTarget;
+    private final int maxSize;
+    private final long intervalMs;
+    private final AtomicInteger poolSize = new AtomicInteger();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicInteger peakInUse = new AtomicInteger();
+    private volatile int target;
+    private volatile boolean reachable;
+    private volatile boolean ready;
+    private Runnable ping;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mongo-pool-warmer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService pingers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "mongo-pool-warmer-ping");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ConnectionPoolWarmer(int initialTarget, int maxSize, long intervalMs) {
+        this.initialTarget = initialTarget;
+        this.maxSize = maxSize;
+        this.intervalMs = intervalMs;
+        this.target = initialTarget;
+        Metrics.gauge("mongo.pool.size", poolSize::get);
+        Metrics.gauge("mongo.pool.inUse", inUse::get);
+        Metrics.gauge("mongo.pool.target", () -> target);
+    }
+
+    /**
+     * @param ping blocking ping through the client whose pool this listener is registered on, throws if it fails
+     */
+    public void start(Runnable ping) {
+        this.ping = ping;
+        scheduler.scheduleWithFixedDelay(this::warm, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void warm() {
+        try {
+            // Decay: the next window starts from what is in use now
+            int peak = peakInUse.getAndSet(inUse.get());
+            target = Math.min(maxSize, Math.max(initialTarget, (int) Math.ceil(peak * HEADROOM)));
+            int missing = Math.min(MAX_OPEN_PER_ROUND, target - poolSize.get());
+            // Concurrent pings each hold a connection: idle ones serve the first pings, the pool opens one per remaining ping
+            // Best effort, fast pings may reuse a connection another ping just released, the next round makes up for it
+            // A warm pool still gets one ping per round, it's the readiness probe
+            int pingCount = missing > 0 ? missing + Math.max(0, poolSize.get() - inUse.get()) : 1;
+            List<CompletableFuture<Void>> pings = new ArrayList<>(pingCount);
+            for (int i = 0; i < pingCount; i++) {
+                pings.add(CompletableFuture.runAsync(ping, pingers));
+            }
+            CompletableFuture.allOf(pings.toArray(new CompletableFuture<?>[0])).join();
+            if (!reachable) {
+                reachable = true;
+                System.out.println("mongo pool: server reachable, warming to " + target + " connections");
+            }
+            if (!ready && poolSize.get() >= initialTarget) {
+                ready = true;
+                System.out.println("mongo pool: ready with " + poolSize.get() + " connections");
+            }
+        } catch (MongoException | CompletionException e) {
+            // Not ready yet or anymore, the next round tries again
+            if (ready) {
+                System.err.println("Warning: mongo pool: server unreachable, not ready");
+            }
+            reachable = false;
+            ready = false;
+            System.err.println("Warning: mongo pool warm-up failed: " + e.getMessage());
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public void connectionCreated(ConnectionCreatedEvent event) {
+        poolSize.incrementAndGet();
+    }
+
+    @Override
+    public void connectionClosed(ConnectionClosedEvent event) {
+        poolSize.decrementAndGet();
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        peakInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+    }
+
+    @Override
+    public void connectionCheckedIn(ConnectionCheckedInEvent event) {
+        inUse.decrementAndGet();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        pingers.shutdownNow();
+    }
+
+}
@@ -1,7 +1,14 @@
 package infrastructure.mongoDB;
 
 import com.mongodb.MongoException;
+import com.mongodb.ReadPreference;
 import domain.DbRepository;
+import domain.LifeRide;
+import domain.SeasonVerticalSink;
+import domain.SeasonVerticals;
+
+import java.io.IOException;
+import java.util.List;
 
 /**
  * @author Rebecca Zhang
@@ -9,15 +16,43 @@ import domain.DbRepository;
  */
 public class DbRepoImpl implements DbRepository {
 
-    private static final String MG_CONNECTION = "mongodb://34.220.164.23:27017"; // Change to MongoDb's ip
-    private static final String MG_DATABASE = "skier";
-    private static final String MG_COLLECTION = "liferide";
+    static final String MG_CONNECTION = "mongodb://34.220.164.23:27017"; // Change to MongoDb's ip
+    static final String MG_DATABASE = "skier";
+    static final String MG_COLLECTION = "liferide";
 
     private final MongoDBConnector mongoDBConnector;
+    private final MongoIndexManager mongoIndexManager;
+    private final SchemaMigration schemaMigration;
+    private final RollupBackfill rollupBackfill;
 
     public DbRepoImpl() throws MongoException {
-        System.out.println("init DbRepoImpl");
-        this.mongoDBConnector = new MongoDBConnector(MG_CONNECTION, MG_DATABASE, MG_COLLECTION);
+        this(MG_CONNECTION);
+    }
+
+    /**
+     * @param connectionString e.g. one shard of a ShardedDbRepository, with its own client and pool
+     */
+    public DbRepoImpl(String connectionString) throws MongoException {
+        System.out.println("init DbRepoImpl on " + MongoDBConnector.hosts(connectionString));
+        this.mongoDBConnector = new MongoDBConnector(connectionString, MG_DATABASE, MG_COLLECTION);
+        this.mongoIndexManager = new MongoIndexManager(mongoDBConnector);
+        mongoIndexManager.startInBackground();
+        this.schemaMigration = new SchemaMigration(mongoDBConnector);
+        schemaMigration.startInBackground();
+        this.rollupBackfill = new RollupBackfill(mongoDBConnector);
+        rollupBackfill.startInBackground();
+    }
+
+    // Reads through another read preference on the same pool, index and schema upkeep stay with the owner
+    private DbRepoImpl(MongoDBConnector mongoDBConnector) {
+        this.mongoDBConnector = mongoDBConnector;
+        this.mongoIndexManager = null;
+        this.schemaMigration = null;
+        this.rollupBackfill = null;
+    }
+
+    public DbRepository withReadPreference(ReadPreference readPreference) {
+        return new DbRepoImpl(mongoDBConnector.withReadPreference(readPreference));
     }
 
     @Override
@@ -26,12 +61,17 @@ public class DbRepoImpl implements DbRepository {
     }
 
     @Override
-    public String getTotalVerticalForSkierAtResort(int skierID, int resortId) throws MongoException {
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId) throws MongoException {
         return mongoDBConnector.getTotalVerticalForSkierAtResort(skierID, resortId);
     }
 
     @Override
-    public String getTotalVerticalForSkierAtResort(int skierID, int resortId, int seasonId) throws MongoException {
+    public boolean streamTotalVerticalForSkierAtResort(int skierID, int resortId, SeasonVerticalSink sink) throws MongoException, IOException {
+        return mongoDBConnector.streamTotalVerticalForSkierAtResort(skierID, resortId, sink);
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId, int seasonId) throws MongoException {
         return mongoDBConnector.getTotalVerticalForSkierAtResort(skierID, resortId, seasonId);
     }
 
@@ -40,9 +80,38 @@ public class DbRepoImpl implements DbRepository {
         return mongoDBConnector.getNumberOfUniqueSkiersAtResortSeasonDay(resortId, seasonId, dayId);
     }
 
+    @Override
+    public int[] getSkierIdsAtResortSeasonDay(int resortId, int seasonId, int dayId) throws MongoException {
+        return mongoDBConnector.getSkierIdsAtResortSeasonDay(resortId, seasonId, dayId);
+    }
+
+    @Override
+    public int[] getSkierIdsAtResortSeasonDayLift(int resortId, int seasonId, int dayId, int liftId) throws MongoException {
+        return mongoDBConnector.getSkierIdsAtResortSeasonDayLift(resortId, seasonId, dayId, liftId);
+    }
+
+    @Override
+    public boolean isReady() {
+        return mongoDBConnector.isReady();
+    }
+
+    @Override
+    public void saveLifeRides(List<LifeRide> lifeRides) throws MongoException {
+        mongoDBConnector.insertLifeRides(lifeRides);
+    }
+
     @Override
     public void close() {
         System.out.println("destroy DbRepoImpl");
+        if (mongoIndexManager != null) {
+            mongoIndexManager.close();
+        }
+        if (schemaMigration != null) {
+            schemaMigration.close();
+        }
+        if (rollupBackfill != null) {
+            rollupBackfill.close();
+        }
         mongoDBConnector.close();
     }
 }
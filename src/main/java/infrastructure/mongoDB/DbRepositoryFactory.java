@@ -1,6 +1,23 @@
 package infrastructure.mongoDB;
 
+import domain.AsyncDbRepository;
 import domain.DbRepository;
+import infrastructure.bitmap.BitmapStore;
+import infrastructure.bitmap.SkierBitmapDbRepository;
+import infrastructure.cache.CachingDbRepository;
+import infrastructure.cache.NegativeLookupDbRepository;
+import infrastructure.cache.SingleFlightDbRepository;
+import infrastructure.leaderboard.LeaderboardDbRepository;
+import infrastructure.memory.InMemoryDbRepository;
+import infrastructure.resilience.CircuitBreaker;
+import infrastructure.resilience.CircuitBreakerDbRepository;
+import infrastructure.resilience.HedgedDbRepository;
+import infrastructure.sharding.ShardedDbRepository;
+import infrastructure.sketch.UniqueSkierSketchDbRepository;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author Rebecca Zhang
@@ -8,15 +25,249 @@ import domain.DbRepository;
  */
 public class DbRepositoryFactory {
 
+    // rides: one document per ride plus rollups (default), bucketed: one document per skier per resort-day,
+    // timeseries: rides in a time-series collection, no rollups, memory: aggregates of the rides this node published
+    private static final String DB_MODEL = System.getProperty("skier.db.model", "rides");
+    // GETs through the reactive driver and AsyncContext, servlet threads don't wait on Mongo
+    private static final boolean ASYNC_READS = Boolean.parseBoolean(System.getProperty("skier.db.async", "false"));
+    // Fail fast while the DB is timing out or erroring: opens at failureRate over the last windowSize calls, probes after openMs
+    private static final boolean BREAKER_ENABLED = Boolean.parseBoolean(System.getProperty("skier.db.breaker.enabled", "true"));
+    private static final int BREAKER_WINDOW_SIZE = Integer.getInteger("skier.db.breaker.windowSize", 100);
+    private static final int BREAKER_MIN_CALLS = Integer.getInteger("skier.db.breaker.minCalls", 20);
+    private static final double BREAKER_FAILURE_RATE = Double.parseDouble(System.getProperty("skier.db.breaker.failureRate", "0.5"));
+    private static final long BREAKER_OPEN_MS = Long.getLong("skier.db.breaker.openMs", 5000);
+    // Hedged reads on a replica set: after the p95 delay the GET is also sent to a secondary within maxStalenessSec
+    private static final boolean HEDGE_ENABLED = Boolean.parseBoolean(System.getProperty("skier.db.hedge.enabled", "false"));
+    private static final double HEDGE_PERCENTILE = Double.parseDouble(System.getProperty("skier.db.hedge.percentile", "0.95"));
+    private static final long HEDGE_MIN_DELAY_MS = Long.getLong("skier.db.hedge.minDelayMs", 5);
+    private static final long HEDGE_MAX_STALENESS_SEC = Long.getLong("skier.db.hedge.maxStalenessSec", 90);
+    // Bounds the threads running primaries and hedges, GETs past it run unhedged on the servlet thread
+    private static final int HEDGE_MAX_THREADS = Integer.getInteger("skier.db.hedge.maxThreads", 128);
+    // Client-side sharding of the rides model: comma-separated connection strings, one MongoClient each, empty = single node
+    // A shard's position in the list places it on the hash ring, append new shards at the end
+    private static final String SHARDS = System.getProperty("skier.db.shards", "");
+    // skier: skier GETs hit one shard, resort-day GETs fan out; resort: every GET hits one shard
+    private static final String SHARD_KEY = System.getProperty("skier.db.shardKey", "skier");
+    // Approximate unique-skier counts (?approx=true) from per resort-day HyperLogLog sketches, merged with the peers' sketches
+    private static final boolean HLL_ENABLED = Boolean.parseBoolean(System.getProperty("skier.hll.enabled", "true"));
+    private static final int HLL_PRECISION = Integer.getInteger("skier.hll.precision", 14);
+    private static final int HLL_MAX_RESORT_DAYS = Integer.getInteger("skier.hll.maxResortDays", 1000);
+    // Comma-separated base URLs of the other server nodes, e.g. http://10.0.0.2:8080/A2-Server
+    private static final String HLL_PEERS = System.getProperty("skier.hll.peers", "");
+    private static final long HLL_PEER_TIMEOUT_MS = Long.getLong("skier.hll.peerTimeoutMs", 200);
+    // Exact unique-skier counts from a compressed bitmap of skiers per resort-day (and per lift), persisted in skier.bitmap.dir
+    // Off by default: exact only while every ride is POSTed through this node, not enabled when skier.hll.peers lists other nodes
+    private static final boolean BITMAP_ENABLED = Boolean.parseBoolean(System.getProperty("skier.bitmap.enabled", "false"));
+    private static final String BITMAP_DIR = System.getProperty("skier.bitmap.dir", "skier-bitmaps");
+    private static final long BITMAP_MAX_BYTES = Long.getLong("skier.bitmap.maxBytes", 256L << 20);
+    private static final long BITMAP_FLUSH_MS = Long.getLong("skier.bitmap.flushMs", 30000);
+    // GET .../leaderboard?k=N from a top-K of verticals per resort-day, k up to capacity
+    // Off by default: exact only while every ride is POSTed through this node
+    private static final boolean LEADERBOARD_ENABLED = Boolean.parseBoolean(System.getProperty("skier.leaderboard.enabled", "false"));
+    private static final int LEADERBOARD_CAPACITY = Integer.getInteger("skier.leaderboard.capacity", 100);
+    private static final int LEADERBOARD_MAX_RESORT_DAYS = Integer.getInteger("skier.leaderboard.maxResortDays", 200);
+    // Initial size of the memory model's maps, they grow past it
+    private static final int MEMORY_EXPECTED_SKIER_DAYS = Integer.getInteger("skier.memory.expectedSkierDays", 1 << 20);
+    // Concurrent identical GETs share one DB call
+    private static final boolean SINGLE_FLIGHT_ENABLED = Boolean.parseBoolean(System.getProperty("skier.db.singleFlight", "true"));
+    // Bound on waiting for another request's call, above the query deadlines so it only cuts off a stuck call
+    private static final long SINGLE_FLIGHT_WAIT_MS = Long.getLong("skier.db.singleFlight.waitMs", 3000);
+    // Read-through cache in front of the model, TTLs per query
+    private static final boolean CACHE_ENABLED = Boolean.parseBoolean(System.getProperty("skier.cache.enabled", "true"));
+    private static final long CACHE_SKIER_DAY_TTL_MS = Long.getLong("skier.cache.skierDayTtlMs", 2000);
+    private static final long CACHE_UNIQUE_SKIERS_TTL_MS = Long.getLong("skier.cache.uniqueSkiersTtlMs", 5000);
+    private static final long CACHE_SEASON_VERTICAL_TTL_MS = Long.getLong("skier.cache.seasonVerticalTtlMs", 5000);
+    private static final int CACHE_MAX_ENTRIES = Integer.getInteger("skier.cache.maxEntries", 100000);
+    // Per resort-day Bloom filter of skiers with rides, answers skier-day GETs of absent skiers without a DB call
+    // Off by default: rides written since the last reload that this node didn't ingest are wrongly answered "not found"
+    private static final boolean BLOOM_ENABLED = Boolean.parseBoolean(System.getProperty("skier.bloom.enabled", "false"));
+    private static final double BLOOM_FPP = Double.parseDouble(System.getProperty("skier.bloom.fpp", "0.01"));
+    private static final int BLOOM_EXPECTED_SKIERS = Integer.getInteger("skier.bloom.expectedSkiers", 20000);
+    private static final long BLOOM_REFRESH_MS = Long.getLong("skier.bloom.refreshMs", 60000);
+    private static final int BLOOM_MAX_RESORT_DAYS = Integer.getInteger("skier.bloom.maxResortDays", 1000);
+
     private static DbRepository instance;
+    private static AsyncDbRepository asyncInstance;
+    private static UniqueSkierSketchDbRepository uniqueSkierSketches;
+    private static SkierBitmapDbRepository skierBitmaps;
+    private static LeaderboardDbRepository leaderboards;
+
+    public static boolean isAsyncReads() {
+        return ASYNC_READS;
+    }
+
+    // The memory model is fed by the servlet's POSTs, a separate process storing into it loses the rides
+    public static boolean isInMemoryModel() {
+        return "memory".equals(DB_MODEL);
+    }
+
+    public static synchronized AsyncDbRepository createAsyncDbRepository() {
+        if (asyncInstance == null) {
+            // The reactive implementation reads the rollups of the rides model
+            if (!"rides".equals(DB_MODEL)) {
+                throw new IllegalArgumentException("Error: skier.db.async doesn't support skier.db.model " + DB_MODEL);
+            }
+            if (!SHARDS.trim().isEmpty()) {
+                throw new IllegalArgumentException("Error: skier.db.async doesn't support skier.db.shards");
+            }
+            asyncInstance = new ReactiveDbRepoImpl();
+        }
+        return asyncInstance;
+    }
 
     public static synchronized DbRepository createDbRepository() throws Exception {
         if (instance == null) {
-            instance = new DbRepoImpl();
+            DbRepository dbRepository;
+            if ("memory".equals(DB_MODEL)) {
+                // Answers in microseconds and never fails, caching, single-flight, breaker and filter would only add latency
+                warnRidesOnlyOptions();
+                dbRepository = new InMemoryDbRepository(MEMORY_EXPECTED_SKIER_DAYS);
+            } else {
+                dbRepository = createDecoratedModel();
+            }
+            // Outside the cache, a bitmap count is as cheap as a cache hit and never stale
+            if (BITMAP_ENABLED && !splitList(HLL_PEERS).isEmpty()) {
+                // The peers' rides are in their own bitmaps, this node's count would be its share of the day
+                System.err.println("Warning: skier.bitmap.enabled is only supported on a single node, ignored with skier.hll.peers");
+            } else if (BITMAP_ENABLED) {
+                skierBitmaps = new SkierBitmapDbRepository(dbRepository, new BitmapStore(Paths.get(BITMAP_DIR), BITMAP_MAX_BYTES,
+                        BITMAP_FLUSH_MS, SkierBitmapDbRepository::groupOf));
+                dbRepository = skierBitmaps;
+            }
+            if (LEADERBOARD_ENABLED) {
+                leaderboards = new LeaderboardDbRepository(dbRepository, LEADERBOARD_CAPACITY, LEADERBOARD_MAX_RESORT_DAYS);
+                dbRepository = leaderboards;
+            }
+            // Outermost, the sketches see every published ride and answer approx GETs without going through the chain
+            if (HLL_ENABLED) {
+                uniqueSkierSketches = new UniqueSkierSketchDbRepository(dbRepository, HLL_PRECISION, HLL_MAX_RESORT_DAYS,
+                        splitList(HLL_PEERS), HLL_PEER_TIMEOUT_MS);
+                dbRepository = uniqueSkierSketches;
+            }
+            instance = dbRepository;
         }
         return instance;
     }
 
+    /**
+     * @return UniqueSkierSketchDbRepository of createDbRepository(), or null if skier.hll.enabled is false or it wasn't created yet
+     */
+    public static synchronized UniqueSkierSketchDbRepository getUniqueSkierSketches() {
+        return uniqueSkierSketches;
+    }
+
+    /**
+     * @return SkierBitmapDbRepository of createDbRepository(), or null if skier.bitmap.enabled is false or it wasn't created yet
+     */
+    public static synchronized SkierBitmapDbRepository getSkierBitmaps() {
+        return skierBitmaps;
+    }
+
+    /**
+     * @return LeaderboardDbRepository of createDbRepository(), or null if skier.leaderboard.enabled is false or it wasn't created yet
+     */
+    public static synchronized LeaderboardDbRepository getLeaderboards() {
+        return leaderboards;
+    }
+
+    private static DbRepository createDecoratedModel() throws Exception {
+        DbRepository dbRepository = createModel();
+        // Breaker innermost: it sees one outcome per real DB call, and the cache above can serve stale entries while it is open
+        if (BREAKER_ENABLED) {
+            dbRepository = new CircuitBreakerDbRepository(dbRepository, new CircuitBreaker("db", BREAKER_WINDOW_SIZE,
+                    BREAKER_MIN_CALLS, BREAKER_FAILURE_RATE, BREAKER_OPEN_MS));
+        }
+        // Cache outermost: a hit never reaches single-flight, a miss burst collapses into one call
+        if (SINGLE_FLIGHT_ENABLED) {
+            dbRepository = new SingleFlightDbRepository(dbRepository, SINGLE_FLIGHT_WAIT_MS);
+        }
+        if (CACHE_ENABLED) {
+            dbRepository = new CachingDbRepository(dbRepository, CACHE_SKIER_DAY_TTL_MS, CACHE_UNIQUE_SKIERS_TTL_MS,
+                    CACHE_SEASON_VERTICAL_TTL_MS, CACHE_MAX_ENTRIES);
+        }
+        // Filter outside the cache: a definite miss costs neither a cache slot nor a DB call
+        if (BLOOM_ENABLED) {
+            dbRepository = new NegativeLookupDbRepository(dbRepository, BLOOM_FPP, BLOOM_EXPECTED_SKIERS, BLOOM_REFRESH_MS,
+                    BLOOM_MAX_RESORT_DAYS);
+        }
+        return dbRepository;
+    }
+
+    private static DbRepository createModel() throws Exception {
+        switch (DB_MODEL) {
+            case "rides":
+                if (SHARDS.trim().isEmpty()) {
+                    return createRidesModel(DbRepoImpl.MG_CONNECTION);
+                }
+                return createShardedRidesModel();
+            case "bucketed":
+                warnRidesOnlyOptions();
+                return new BucketedDbRepoImpl();
+            case "timeseries":
+                warnRidesOnlyOptions();
+                return new TimeSeriesDbRepoImpl();
+            default:
+                throw new IllegalArgumentException("Error: unknown skier.db.model " + DB_MODEL);
+        }
+    }
+
+    // Comma-separated property value -> trimmed non-empty items
+    private static List<String> splitList(String value) {
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty()) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+
+    private static void warnRidesOnlyOptions() {
+        if (HEDGE_ENABLED) {
+            System.err.println("Warning: skier.db.hedge.enabled is only supported by skier.db.model rides, ignored");
+        }
+        if (!SHARDS.trim().isEmpty()) {
+            System.err.println("Warning: skier.db.shards is only supported by skier.db.model rides, ignored");
+        }
+    }
+
+    private static DbRepository createRidesModel(String connectionString) {
+        DbRepoImpl dbRepoImpl = new DbRepoImpl(connectionString);
+        if (HEDGE_ENABLED) {
+            DbRepository secondary = dbRepoImpl.withReadPreference(MongoDBConnector.readPreference("secondary", HEDGE_MAX_STALENESS_SEC));
+            return new HedgedDbRepository(dbRepoImpl, secondary, HEDGE_PERCENTILE, HEDGE_MIN_DELAY_MS, HEDGE_MAX_THREADS);
+        }
+        return dbRepoImpl;
+    }
+
+    private static DbRepository createShardedRidesModel() throws Exception {
+        ShardedDbRepository.ShardKey shardKey;
+        switch (SHARD_KEY) {
+            case "skier":
+                shardKey = ShardedDbRepository.ShardKey.SKIER;
+                break;
+            case "resort":
+                shardKey = ShardedDbRepository.ShardKey.RESORT;
+                break;
+            default:
+                throw new IllegalArgumentException("Error: unknown skier.db.shardKey " + SHARD_KEY);
+        }
+        List<String> connectionStrings = splitList(SHARDS);
+        List<DbRepository> shards = new ArrayList<>(connectionStrings.size());
+        try {
+            for (String connectionString : connectionStrings) {
+                shards.add(createRidesModel(connectionString));
+            }
+        } catch (RuntimeException e) {
+            // Don't leak the clients of the shards already connected
+            for (DbRepository shard : shards) {
+                shard.close();
+            }
+            throw e;
+        }
+        return new ShardedDbRepository(shards, shardKey);
+    }
+
 //    // Singleton
 //
 //    private static DbRepository instance;
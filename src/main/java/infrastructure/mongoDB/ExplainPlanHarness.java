@@ -0,0 +1,318 @@
+package infrastructure.mongoDB;
+
+import com.mongodb.ExplainVerbosity;
+import com.mongodb.MongoException;
+import domain.LifeRide;
+import org.bson.Document;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Explain-plan regression check for every MongoDBConnector query shape (the four raw pipelines and the rollup lookups)
+ * Starts a throwaway mongod, seeds it with synthetic rides, builds the indexes MongoIndexManager declares,
+ * runs explain("executionStats") per query and compares against stored baselines:
+ * - docsExamined / nReturned may grow by at most RATIO_TOLERANCE
+ * - no stage type may appear that the baseline plan didn't have (e.g. COLLSCAN, SORT)
+ * Exit code 1 on any regression, so it can gate a build
+ * Usage: ExplainPlanHarness [--mongod mongod] [--port 27117] [--uri mongodb://host:port] [--rides 50000]
+ *                           [--baselines explain-baselines.properties] [--record]
+ * --record writes the current plans as the new baselines, rerun it after an intended plan change
+ * --uri uses a running mongod instead of starting one, its liferide data in database HARNESS_DATABASE is replaced
+ */
+public class ExplainPlanHarness {
+
+    private static final String HARNESS_DATABASE = "skier_explain_harness";
+    private static final double RATIO_TOLERANCE = 1.25;
+    private static final long STARTUP_TIMEOUT_MS = 30000;
+    private static final int SEED_BATCH_SIZE = 5000;
+
+    /**
+     * executionStats of one query
+     */
+    private static class PlanStats {
+
+        private final long docsExamined;
+        private final long keysExamined;
+        private final long nReturned;
+        private final Set<String> stages;
+
+        PlanStats(long docsExamined, long keysExamined, long nReturned, Set<String> stages) {
+            this.docsExamined = docsExamined;
+            this.keysExamined = keysExamined;
+            this.nReturned = nReturned;
+            this.stages = stages;
+        }
+
+        double docsExaminedRatio() {
+            return (double) docsExamined / Math.max(1, nReturned);
+        }
+    }
+
+    /**
+     * @param rides
+     * @return List<LifeRide> synthetic rides with a fixed seed, always including MongoIndexManager's sample keys
+     * Several seasons, days and resorts so that a missing index prefix shows up as examined-but-not-returned documents
+     */
+    static List<LifeRide> syntheticRides(int rides) {
+        Random random = new Random(42);
+        List<LifeRide> lifeRides = new ArrayList<>(rides);
+        // Distinct rides only: the rides model stores identical rides once, the time-series model twice
+        Set<List<Integer>> seen = new HashSet<>(rides * 2);
+        while (lifeRides.size() < Math.min(10, rides)) {
+            addDistinct(lifeRides, seen, new LifeRide(MongoIndexManager.SAMPLE_RESORT_ID, MongoIndexManager.SAMPLE_SEASON_ID,
+                    MongoIndexManager.SAMPLE_DAY_ID, MongoIndexManager.SAMPLE_SKIER_ID, 1 + random.nextInt(360), 1 + random.nextInt(40)));
+        }
+        while (lifeRides.size() < rides) {
+            addDistinct(lifeRides, seen, new LifeRide(1 + random.nextInt(10), 2022 + random.nextInt(3), 1 + random.nextInt(30),
+                    1 + random.nextInt(5000), 1 + random.nextInt(360), 1 + random.nextInt(40)));
+        }
+        return lifeRides;
+    }
+
+    private static void addDistinct(List<LifeRide> lifeRides, Set<List<Integer>> seen, LifeRide lifeRide) {
+        if (seen.add(Arrays.asList(lifeRide.getResortID(), lifeRide.getSeasonID(), lifeRide.getDayID(), lifeRide.getSkierID(),
+                lifeRide.getTime(), lifeRide.getLiftID()))) {
+            lifeRides.add(lifeRide);
+        }
+    }
+
+    /**
+     * @param explain
+     * @return PlanStats totals of the first executionStats found, stage types of the winning plan
+     */
+    static PlanStats planStats(Document explain) {
+        Document executionStats = findExecutionStats(explain);
+        if (executionStats == null) {
+            throw new IllegalStateException("Error: explain output has no executionStats: " + explain.toJson());
+        }
+        List<String> stages = new ArrayList<>();
+        MongoIndexManager.collectStages(explain, stages);
+        return new PlanStats(
+                executionStats.get("totalDocsExamined", Number.class).longValue(),
+                executionStats.get("totalKeysExamined", Number.class).longValue(),
+                executionStats.get("nReturned", Number.class).longValue(),
+                new TreeSet<>(stages));
+    }
+
+    // find: top level, aggregate: under stages[0].$cursor, SBE: top level again -> search the whole document
+    private static Document findExecutionStats(Object node) {
+        if (node instanceof Document) {
+            Document document = (Document) node;
+            Object stats = document.get("executionStats");
+            if (stats instanceof Document) {
+                return (Document) stats;
+            }
+            for (Object value : document.values()) {
+                Document found = findExecutionStats(value);
+                if (found != null) {
+                    return found;
+                }
+            }
+        } else if (node instanceof List) {
+            for (Object child : (List<?>) node) {
+                Document found = findExecutionStats(child);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param name
+     * @param current
+     * @param baselines
+     * @return List<String> regressions of this query, empty if none
+     */
+    static List<String> compare(String name, PlanStats current, Properties baselines) {
+        List<String> regressions = new ArrayList<>();
+        String baselineRatio = baselines.getProperty(name + ".docsExaminedRatio");
+        String baselineStages = baselines.getProperty(name + ".stages");
+        if (baselineRatio == null || baselineStages == null) {
+            regressions.add(name + ": no baseline, run with --record");
+            return regressions;
+        }
+        double allowedRatio = Double.parseDouble(baselineRatio) * RATIO_TOLERANCE;
+        if (current.docsExaminedRatio() > allowedRatio) {
+            regressions.add(String.format("%s: docsExamined/nReturned %.2f > allowed %.2f", name, current.docsExaminedRatio(), allowedRatio));
+        }
+        Set<String> allowedStages = new LinkedHashSet<>(Arrays.asList(baselineStages.split(",")));
+        for (String stage : current.stages) {
+            if (!allowedStages.contains(stage)) {
+                regressions.add(name + ": new stage " + stage + " (baseline " + allowedStages + ")");
+            }
+        }
+        return regressions;
+    }
+
+    private static Process startMongod(String mongod, int port, Path dbPath) throws IOException {
+        ProcessBuilder processBuilder = new ProcessBuilder(mongod, "--dbpath", dbPath.toString(), "--port", String.valueOf(port),
+                "--bind_ip", "127.0.0.1", "--quiet");
+        processBuilder.redirectErrorStream(true);
+        processBuilder.redirectOutput(dbPath.resolve("mongod.log").toFile());
+        return processBuilder.start();
+    }
+
+    private static void awaitMongod(MongoDBConnector mongoDBConnector, Process mongod) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(STARTUP_TIMEOUT_MS);
+        while (true) {
+            try {
+                mongoDBConnector.getCollection().estimatedDocumentCount();
+                return;
+            } catch (MongoException e) {
+                if (mongod != null && !mongod.isAlive()) {
+                    throw new IllegalStateException("Error: mongod exited with code " + mongod.exitValue());
+                }
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException("Error: mongod not reachable after " + STARTUP_TIMEOUT_MS + "ms", e);
+                }
+                TimeUnit.MILLISECONDS.sleep(200);
+            }
+        }
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * @param mongoDBConnector
+     * @param rides
+     * @param baselinesPath
+     * @param record
+     * @return boolean true if no query regressed
+     */
+    static boolean run(MongoDBConnector mongoDBConnector, int rides, Path baselinesPath, boolean record) throws IOException {
+        mongoDBConnector.getCollection().drop();
+        mongoDBConnector.getSkierDayCollection().drop();
+        mongoDBConnector.getSkierResortCollection().drop();
+        mongoDBConnector.getResortDayCollection().drop();
+        List<LifeRide> lifeRides = syntheticRides(rides);
+        for (int from = 0; from < lifeRides.size(); from += SEED_BATCH_SIZE) {
+            mongoDBConnector.insertLifeRides(lifeRides.subList(from, Math.min(lifeRides.size(), from + SEED_BATCH_SIZE)));
+        }
+        // Seeded rides are all version 2, the numeric-only filters are what production runs after the migration
+        mongoDBConnector.onSchemaMigrationComplete();
+        System.out.println("seeded " + lifeRides.size() + " rides");
+
+        MongoIndexManager mongoIndexManager = new MongoIndexManager(mongoDBConnector);
+        List<MongoIndexManager.QueryShape> queryShapes = mongoIndexManager.queryShapes();
+        mongoIndexManager.ensureIndexes(queryShapes);
+
+        Properties baselines = new Properties();
+        if (!record && Files.exists(baselinesPath)) {
+            try (Reader reader = Files.newBufferedReader(baselinesPath, StandardCharsets.UTF_8)) {
+                baselines.load(reader);
+            }
+        }
+        Properties recorded = new Properties();
+        List<String> regressions = new ArrayList<>();
+        for (MongoIndexManager.QueryShape queryShape : queryShapes) {
+            PlanStats stats = planStats(queryShape.explain(ExplainVerbosity.EXECUTION_STATS));
+            System.out.println(String.format("%-40s docsExamined=%d keysExamined=%d nReturned=%d ratio=%.2f stages=%s",
+                    queryShape.getName(), stats.docsExamined, stats.keysExamined, stats.nReturned, stats.docsExaminedRatio(), stats.stages));
+            recorded.setProperty(queryShape.getName() + ".docsExaminedRatio", String.format(Locale.ROOT, "%.2f", stats.docsExaminedRatio()));
+            recorded.setProperty(queryShape.getName() + ".stages", String.join(",", stats.stages));
+            if (!record) {
+                regressions.addAll(compare(queryShape.getName(), stats, baselines));
+            }
+        }
+        mongoIndexManager.close();
+
+        if (record) {
+            try (Writer writer = Files.newBufferedWriter(baselinesPath, StandardCharsets.UTF_8)) {
+                recorded.store(writer, "ExplainPlanHarness baselines, " + rides + " synthetic rides");
+            }
+            System.out.println("recorded baselines to " + baselinesPath);
+            return true;
+        }
+        for (String regression : regressions) {
+            System.err.println("REGRESSION " + regression);
+        }
+        System.out.println(regressions.isEmpty() ? "all query plans within baseline" : regressions.size() + " plan regression(s)");
+        return regressions.isEmpty();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mongod = "mongod";
+        int port = 27117;
+        String uri = null;
+        int rides = 50000;
+        Path baselinesPath = Paths.get("explain-baselines.properties");
+        boolean record = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--mongod":
+                    mongod = args[++i];
+                    break;
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--uri":
+                    uri = args[++i];
+                    break;
+                case "--rides":
+                    rides = Integer.parseInt(args[++i]);
+                    break;
+                case "--baselines":
+                    baselinesPath = Paths.get(args[++i]);
+                    break;
+                case "--record":
+                    record = true;
+                    break;
+                default:
+                    System.err.println("Usage: ExplainPlanHarness [--mongod mongod] [--port 27117] [--uri mongodb://host:port] [--rides 50000] [--baselines file] [--record]");
+                    System.exit(2);
+            }
+        }
+        Process mongodProcess = null;
+        Path dbPath = null;
+        if (uri == null) {
+            dbPath = Files.createTempDirectory("explain-harness");
+            mongodProcess = startMongod(mongod, port, dbPath);
+            uri = "mongodb://127.0.0.1:" + port;
+        }
+        boolean passed;
+        try (MongoDBConnector mongoDBConnector = new MongoDBConnector(uri, HARNESS_DATABASE, DbRepoImpl.MG_COLLECTION)) {
+            awaitMongod(mongoDBConnector, mongodProcess);
+            passed = run(mongoDBConnector, rides, baselinesPath, record);
+        } finally {
+            if (mongodProcess != null) {
+                mongodProcess.destroy();
+                mongodProcess.waitFor(10, TimeUnit.SECONDS);
+                deleteRecursively(dbPath);
+            }
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+}
@@ -3,18 +3,48 @@ package infrastructure.mongoDB;
 import com.mongodb.ConnectionString;
 import com.mongodb.MongoClientSettings;
 import com.mongodb.MongoException;
+import com.mongodb.ReadPreference;
+import com.mongodb.TransactionOptions;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
 import com.mongodb.client.*;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import domain.LifeRide;
+import domain.SeasonVerticalSink;
+import domain.SeasonVerticals;
 import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.MaxKey;
+import org.bson.types.MinKey;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
-import static com.mongodb.client.model.Accumulators.push;
 import static com.mongodb.client.model.Accumulators.sum;
 import static com.mongodb.client.model.Aggregates.*;
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gte;
+import static com.mongodb.client.model.Filters.lte;
+import static com.mongodb.client.model.Filters.in;
 import static com.mongodb.client.model.Projections.*;
+import static com.mongodb.client.model.Updates.combine;
+import static com.mongodb.client.model.Updates.inc;
+import static com.mongodb.client.model.Updates.setOnInsert;
 
 /**
  * @author Rebecca Zhang
@@ -22,108 +52,588 @@ import static com.mongodb.client.model.Projections.*;
  */
 public class MongoDBConnector implements AutoCloseable {
 
+    // Rollups turn GETs into point lookups by _id instead of aggregations over raw rides. They need transactions (replica set or mongos)
+    // RollupBackfill rolls up the rides stored before, reads switch to the rollups once it is done. Same value on every server and consumer
+    static final boolean ROLLUPS = Boolean.parseBoolean(System.getProperty("skier.db.rollups", "true"));
+    // Set on a ride by the transaction that adds it to the rollups
+    static final String ROLLED_UP = "rolledUp";
+    private static final UpdateOptions UPSERT = new UpdateOptions().upsert(true);
+    // The rollup transaction only writes, but a transaction refuses any read preference other than primary
+    private static final TransactionOptions ROLLUP_TRANSACTION = TransactionOptions.builder().readPreference(ReadPreference.primary()).build();
+    private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
+    // Version 1 stored seasonID and dayID as strings, version 2 stores them as int32
+    static final int SCHEMA_VERSION = 2;
+    // Server-side budgets (maxTimeMS): a slow node fails the query instead of holding a pooled connection and a servlet thread
+    static final long POINT_QUERY_MAX_TIME_MS = Long.getLong("skier.db.pointQueryMaxTimeMs", 200);
+    static final long AGGREGATE_MAX_TIME_MS = Long.getLong("skier.db.aggregateMaxTimeMs", 1000);
+    // Client-side bound on waiting for a pooled connection, the driver default is 2 minutes
+    private static final long POOL_MAX_WAIT_MS = Long.getLong("skier.db.poolMaxWaitMs", 500);
+    // The pool starts at POOL_MIN_SIZE and is grown in the background by ConnectionPoolWarmer, startup never waits for connections
+    private static final int POOL_MIN_SIZE = Integer.getInteger("skier.db.pool.minSize", 10);
+    private static final int POOL_MAX_SIZE = Integer.getInteger("skier.db.pool.maxSize", 500);
+    private static final int POOL_INITIAL_TARGET = Integer.getInteger("skier.db.pool.initialTarget", 50);
+    private static final long POOL_WARM_INTERVAL_MS = Long.getLong("skier.db.pool.warmIntervalMs", 5000);
+    static final String SKIER_DAY_SUFFIX = "_skier_day";
+    static final String SKIER_RESORT_SUFFIX = "_skier_resort";
+    static final String RESORT_DAY_SUFFIX = "_resort_day";
+    // Where reads go by default, e.g. nearest with maxStalenessSec >= 90 on a replica set
+    private static final ReadPreference READ_PREFERENCE = readPreference(System.getProperty("skier.db.readPreference", "primary"),
+            Long.getLong("skier.db.maxStalenessSec", -1));
+    // Seasons per cursor batch on the streaming path, bounds what a single request holds in memory
+    static final int STREAM_BATCH_SIZE = 100;
+
     private final MongoClient mongoClient;
     private final MongoDatabase database;
+    // _id: {resortID, seasonID, dayID, skierID, time, liftID}, the ride's fields
     private final MongoCollection<Document> collection;
+    // _id: {resortID, seasonID, dayID, skierID}, vertical
+    private final MongoCollection<Document> skierDayCollection;
+    // _id: {skierID, resortID}, seasons: {<seasonID>: vertical}
+    private final MongoCollection<Document> skierResortCollection;
+    // _id: {resortID, seasonID, dayID}, uniqueSkiers
+    private final MongoCollection<Document> resortDayCollection;
+    // Until SchemaMigration has converted every version 1 ride, raw queries match both the numeric and the string form
+    // Shared with the read preference views of this connector
+    private final AtomicBoolean mixedSchema;
+    // Whether the server runs transactions, null until the first write has asked. Shared with the read preference views
+    private final AtomicReference<Boolean> transactions;
+    // Always read from the primary. Shared with the read preference views
+    private final MongoCollection<Document> rollupStateCollection;
+    private final RollupState rollupState;
+    private final boolean ownsClient;
+    private final ConnectionPoolWarmer connectionPoolWarmer;
 
     public MongoDBConnector(String connectionString, String databaseName, String collectionName) throws MongoException {
+        connectionPoolWarmer = createConnectionPoolWarmer();
+        mongoClient = MongoClients.create(MongoClientSettings.builder(clientSettings(connectionString))
+                .applyToConnectionPoolSettings(builder -> builder.addConnectionPoolListener(connectionPoolWarmer))
+                .build());
+        database = mongoClient.getDatabase(databaseName);
+        // Check-before-create mechanism (atomicity: when inserting concurrently, the first arriving request creates
+        // the collection and inserts the data, and other concurrent requests wait for the collection to be created
+        // before continuing the insertion operation
+        collection = database.getCollection(collectionName);
+        skierDayCollection = database.getCollection(collectionName + SKIER_DAY_SUFFIX);
+        skierResortCollection = database.getCollection(collectionName + SKIER_RESORT_SUFFIX);
+        resortDayCollection = database.getCollection(collectionName + RESORT_DAY_SUFFIX);
+        mixedSchema = new AtomicBoolean(true);
+        transactions = new AtomicReference<>();
+        rollupStateCollection = database.getCollection(collectionName + RollupState.SUFFIX).withReadPreference(ReadPreference.primary());
+        rollupState = new RollupState();
+        ownsClient = true;
+        connectionPoolWarmer.start(() -> database.runCommand(new Document("ping", 1)));
+    }
+
+    // View on the same client and pool whose reads go through another read preference
+    private MongoDBConnector(MongoDBConnector parent, ReadPreference readPreference) {
+        mongoClient = parent.mongoClient;
+        database = parent.database.withReadPreference(readPreference);
+        collection = parent.collection.withReadPreference(readPreference);
+        skierDayCollection = parent.skierDayCollection.withReadPreference(readPreference);
+        skierResortCollection = parent.skierResortCollection.withReadPreference(readPreference);
+        resortDayCollection = parent.resortDayCollection.withReadPreference(readPreference);
+        mixedSchema = parent.mixedSchema;
+        transactions = parent.transactions;
+        rollupStateCollection = parent.rollupStateCollection;
+        rollupState = parent.rollupState;
+        ownsClient = false;
+        connectionPoolWarmer = parent.connectionPoolWarmer;
+    }
+
+    MongoDBConnector withReadPreference(ReadPreference readPreference) {
+        return new MongoDBConnector(this, readPreference);
+    }
+
+    /**
+     * @param name primary, primaryPreferred, secondary, secondaryPreferred or nearest
+     * @param maxStalenessSec negative for no bound, otherwise at least 90 (server minimum), not allowed with primary
+     * @return ReadPreference
+     */
+    static ReadPreference readPreference(String name, long maxStalenessSec) {
+        if (maxStalenessSec < 0) {
+            return ReadPreference.valueOf(name);
+        }
+        return ReadPreference.valueOf(name, Collections.emptyList(), maxStalenessSec, TimeUnit.SECONDS);
+    }
+
+    static MongoClient createMongoClient(String connectionString) throws MongoException {
         // MongoClient maintains an internal connection pool that can handle multiple concurrent requests
         // and automatically manages the creation, reuse, and release of connections
-        MongoClientSettings settings = MongoClientSettings.builder()
+        return MongoClients.create(clientSettings(connectionString));
+    }
+
+    // For logs: the host list only, a connection string may carry user:password@
+    static String hosts(String connectionString) {
+        return String.join(",", new ConnectionString(connectionString).getHosts());
+    }
+
+    // Register it on the client's pool, then start it with that client's ping
+    static ConnectionPoolWarmer createConnectionPoolWarmer() {
+        return new ConnectionPoolWarmer(Math.min(POOL_INITIAL_TARGET, POOL_MAX_SIZE), POOL_MAX_SIZE, POOL_WARM_INTERVAL_MS);
+    }
+
+    // Shared by the sync and the reactive client
+    static MongoClientSettings clientSettings(String connectionString) {
+        return MongoClientSettings.builder()
                 .applyConnectionString(new ConnectionString(connectionString))
+                .readPreference(READ_PREFERENCE)
                 .applyToConnectionPoolSettings(builder ->
-                        builder.minSize(100)
-                                .maxSize(500)
+                        builder.minSize(POOL_MIN_SIZE)
+                                .maxSize(POOL_MAX_SIZE)
                                 .maxConnectionIdleTime(180000, TimeUnit.MILLISECONDS)
                                 .maxConnectionLifeTime(300000, TimeUnit.MILLISECONDS)
+                                .maxWaitTime(POOL_MAX_WAIT_MS, TimeUnit.MILLISECONDS)
                 )
                 .build();
-        mongoClient = MongoClients.create(settings);
-        database = mongoClient.getDatabase(databaseName);
-        // Check-before-create mechanism (atomicity: when inserting concurrently, the first arriving request creates
-        // the collection and inserts the data, and other concurrent requests wait for the collection to be created
-        // before continuing the insertion operation
-        collection = database.getCollection(collectionName);
     }
 
     public int getTotalVerticalForSkierAtDay(int resortId, int seasonId, int dayId, int skierId) throws MongoException {
-        AggregateIterable<Document> result = collection.aggregate(Arrays.asList(
-                match(and(
-                        eq("resortID", resortId),
-                        eq("seasonID", String.valueOf(seasonId)),
-                        eq("dayID", String.valueOf(dayId)),
-                        eq("skierID", skierId)
-                )),
-                group(null, sum("totalVertical", new Document("$multiply", Arrays.asList("$liftID", 10))))
-        ));
+        if (rollupReads()) {
+            Document doc = skierDayCollection.find(skierDayFilter(resortId, seasonId, dayId, skierId))
+                    .maxTime(POINT_QUERY_MAX_TIME_MS, TimeUnit.MILLISECONDS)
+                    .first();
+            return doc != null ? doc.getInteger("vertical", 0) : 0;
+        }
+        AggregateIterable<Document> result = collection.aggregate(totalVerticalForSkierAtDayPipeline(resortId, seasonId, dayId, skierId))
+                .maxTime(AGGREGATE_MAX_TIME_MS, TimeUnit.MILLISECONDS);
 
         Document doc = result.first();
         return doc != null ? doc.getInteger("totalVertical", 0) : 0;
     }
 
     public int getNumberOfUniqueSkiersAtResortSeasonDay(int resortId, int seasonId, int dayId) throws MongoException {
-        AggregateIterable<Document> result = collection.aggregate(Arrays.asList(
-                match(and(
-                        eq("resortID", resortId),
-                        eq("seasonID", String.valueOf(seasonId)),
-                        eq("dayID", String.valueOf(dayId))
-                )),
-                group("$skierID"),
-                count("uniqueSkiers")
-        ));
+        if (rollupReads()) {
+            Document doc = resortDayCollection.find(resortDayFilter(resortId, seasonId, dayId))
+                    .maxTime(POINT_QUERY_MAX_TIME_MS, TimeUnit.MILLISECONDS)
+                    .first();
+            return doc != null ? doc.getInteger("uniqueSkiers", 0) : 0;
+        }
+        AggregateIterable<Document> result = collection.aggregate(uniqueSkiersAtResortSeasonDayPipeline(resortId, seasonId, dayId))
+                .maxTime(AGGREGATE_MAX_TIME_MS, TimeUnit.MILLISECONDS);
 
         Document doc = result.first();
         return doc != null ? doc.getInteger("uniqueSkiers", 0) : 0;
     }
 
-    public String getTotalVerticalForSkierAtResort(int skierID, int resortId) throws MongoException {
-        AggregateIterable<Document> result = collection.aggregate(Arrays.asList(
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId) throws MongoException {
+        if (rollupReads()) {
+            Document doc = skierResortCollection.find(skierResortFilter(skierID, resortId))
+                    .maxTime(POINT_QUERY_MAX_TIME_MS, TimeUnit.MILLISECONDS)
+                    .first();
+            return doc != null ? toSeasonVerticals(doc.get("seasons", Document.class)) : null;
+        }
+        return toSeasonVerticals(collection.aggregate(totalVerticalForSkierAtResortPipeline(
+                and(eq("skierID", skierID), eq("resortID", resortId))))
+                .maxTime(AGGREGATE_MAX_TIME_MS, TimeUnit.MILLISECONDS));
+    }
+
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId, int seasonId) throws MongoException {
+        if (rollupReads()) {
+            Document doc = skierResortCollection.find(skierResortFilter(skierID, resortId))
+                    .projection(include("seasons." + seasonId))
+                    .maxTime(POINT_QUERY_MAX_TIME_MS, TimeUnit.MILLISECONDS)
+                    .first();
+            return doc != null ? toSeasonVerticals(doc.get("seasons", Document.class)) : null;
+        }
+        return toSeasonVerticals(collection.aggregate(totalVerticalForSkierAtResortPipeline(
+                and(eq("skierID", skierID), eq("resortID", resortId), idFilter("seasonID", seasonId))))
+                .maxTime(AGGREGATE_MAX_TIME_MS, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * @param skierID
+     * @param resortId
+     * @param sink
+     * @return boolean false if the skier has no rides at the resort
+     * @Description iterates the aggregation cursor batch by batch, at most one batch of seasons is held per request
+     */
+    public boolean streamTotalVerticalForSkierAtResort(int skierID, int resortId, SeasonVerticalSink sink) throws MongoException, IOException {
+        if (rollupReads()) {
+            // One rollup document per skier-resort, nothing to stream
+            SeasonVerticals seasonVerticals = getTotalVerticalForSkierAtResort(skierID, resortId);
+            if (seasonVerticals == null) {
+                return false;
+            }
+            for (int i = 0; i < seasonVerticals.size(); i++) {
+                sink.onSeason(seasonVerticals.getSeasonID(i), seasonVerticals.getTotalVert(i));
+            }
+            return true;
+        }
+        return streamSeasonVerticals(collection.aggregate(totalVerticalForSkierAtResortPipeline(
+                and(eq("skierID", skierID), eq("resortID", resortId))))
+                .batchSize(STREAM_BATCH_SIZE)
+                .maxTime(AGGREGATE_MAX_TIME_MS, TimeUnit.MILLISECONDS), sink);
+    }
+
+    /**
+     * @param seasons one {seasonID, totalVert} document per season
+     * @param sink
+     * @return boolean false if there are no seasons
+     */
+    static boolean streamSeasonVerticals(MongoIterable<Document> seasons, SeasonVerticalSink sink) throws MongoException, IOException {
+        boolean found = false;
+        try (MongoCursor<Document> cursor = seasons.iterator()) {
+            while (cursor.hasNext()) {
+                Document doc = cursor.next();
+                sink.onSeason(doc.get("seasonID", Number.class).intValue(), doc.get("totalVert", Number.class).intValue());
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    // Query shapes, package-private so MongoIndexManager can explain exactly what the GETs run
+
+    /**
+     * @param field seasonID or dayID
+     * @param value
+     * @return Bson $in over both forms is still two point ranges on the same index
+     */
+    Bson idFilter(String field, int value) {
+        return mixedSchema.get() ? in(field, value, String.valueOf(value)) : eq(field, value);
+    }
+
+    List<Bson> totalVerticalForSkierAtDayPipeline(int resortId, int seasonId, int dayId, int skierId) {
+        return Arrays.asList(
                 match(and(
-                        eq("skierID", skierID),
-                        eq("resortID", resortId)
-                )),
-                group("$seasonID", sum("totalVert", new Document("$multiply", Arrays.asList("$liftID", 10)))),
-                project(fields(
-                        excludeId(),
-                        computed("seasonID", "$_id"),
-                        include("totalVert")
+                        eq("resortID", resortId),
+                        idFilter("seasonID", seasonId),
+                        idFilter("dayID", dayId),
+                        eq("skierID", skierId)
                 )),
-                group(null, push("resorts", "$$ROOT")),
-                project(fields(
-                        excludeId(),
-                        include("resorts")
-                ))
-        ));
-        Document doc = result.first();
-        return doc != null ? doc.toJson() : null;
+                group(null, sum("totalVertical", new Document("$multiply", Arrays.asList("$liftID", 10))))
+        );
     }
 
-    public String getTotalVerticalForSkierAtResort(int skierID, int resortId, int seasonId) throws MongoException {
-        AggregateIterable<Document> result = collection.aggregate(Arrays.asList(
+    List<Bson> uniqueSkiersAtResortSeasonDayPipeline(int resortId, int seasonId, int dayId) {
+        return Arrays.asList(
                 match(and(
-                        eq("skierID", skierID),
                         eq("resortID", resortId),
-                        eq("seasonID", String.valueOf(seasonId))
+                        idFilter("seasonID", seasonId),
+                        idFilter("dayID", dayId)
                 )),
-                group("$seasonID", sum("totalVert", new Document("$multiply", Arrays.asList("$liftID", 10)))),
+                group("$skierID"),
+                count("uniqueSkiers")
+        );
+    }
+
+    List<Bson> totalVerticalForSkierAtResortPipeline(Bson filter) {
+        return Arrays.asList(
+                match(filter),
+                // $toInt so that version 1 and version 2 rides of the same season fall into one group
+                group(new Document("$toInt", "$seasonID"), sum("totalVert", new Document("$multiply", Arrays.asList("$liftID", 10)))),
                 project(fields(
                         excludeId(),
                         computed("seasonID", "$_id"),
                         include("totalVert")
-                )),
-                group(null, push("resorts", "$$ROOT")),
-                project(fields(
-                        excludeId(),
-                        include("resorts")
                 ))
-        ));
-        Document doc = result.first();
-        return doc != null ? doc.toJson() : null;
+        );
+    }
+
+    static Bson skierDayFilter(int resortId, int seasonId, int dayId, int skierId) {
+        return eq("_id", skierDayKey(resortId, seasonId, dayId, skierId));
+    }
+
+    static Bson skierResortFilter(int skierId, int resortId) {
+        return eq("_id", skierResortKey(skierId, resortId));
+    }
+
+    static Bson resortDayFilter(int resortId, int seasonId, int dayId) {
+        return eq("_id", resortDayKey(resortId, seasonId, dayId));
+    }
+
+    void onSchemaMigrationComplete() {
+        mixedSchema.set(false);
+    }
+
+    /**
+     * @return RollupState.Phase as stored, re-read at most every RollupState.REFRESH_MS
+     */
+    RollupState.Phase rollupPhase() throws MongoException {
+        if (!ROLLUPS) {
+            return RollupState.Phase.NONE;
+        }
+        if (rollupState.needsRefresh()) {
+            rollupState.update(rollupStateCollection.find(eq("_id", RollupState.ID)).first());
+        }
+        return rollupState.phase();
+    }
+
+    // Only once every stored ride is in the rollups
+    boolean rollupReads() throws MongoException {
+        return rollupPhase() == RollupState.Phase.READY;
+    }
+
+    /**
+     * @Description for a database this process has just emptied and writes alone, e.g. TimeSeriesBenchmark's: nothing to backfill
+     */
+    void startRollupsOnEmptyDatabase() throws MongoException {
+        if (!ROLLUPS || !supportsTransactions()) {
+            return;
+        }
+        Document state = new Document("_id", RollupState.ID).append("phase", RollupState.Phase.READY.name()).append("since", new Date());
+        rollupStateCollection.replaceOne(eq("_id", RollupState.ID), state, new ReplaceOptions().upsert(true));
+        rollupState.update(state);
+    }
+
+    MongoCollection<Document> getRollupStateCollection() {
+        return rollupStateCollection;
+    }
+
+    MongoCollection<Document> getCollection() {
+        return collection;
+    }
+
+    MongoCollection<Document> getSkierDayCollection() {
+        return skierDayCollection;
+    }
+
+    MongoCollection<Document> getSkierResortCollection() {
+        return skierResortCollection;
+    }
+
+    MongoCollection<Document> getResortDayCollection() {
+        return resortDayCollection;
+    }
+
+    public int[] getSkierIdsAtResortSeasonDay(int resortId, int seasonId, int dayId) throws MongoException {
+        List<Integer> skierIds = new ArrayList<>();
+        if (rollupReads()) {
+            // Compound _ids compare field by field -> all skiers of a resort-day are one range on the _id index
+            Bson filter = and(
+                    gte("_id", skierDayKey(resortId, seasonId, dayId, new MinKey())),
+                    lte("_id", skierDayKey(resortId, seasonId, dayId, new MaxKey()))
+            );
+            for (Document doc : skierDayCollection.find(filter).projection(include("_id")).maxTime(AGGREGATE_MAX_TIME_MS, TimeUnit.MILLISECONDS)) {
+                skierIds.add(doc.get("_id", Document.class).getInteger("skierID"));
+            }
+        } else {
+            collection.distinct("skierID", and(eq("resortID", resortId), idFilter("seasonID", seasonId), idFilter("dayID", dayId)), Integer.class)
+                    .maxTime(AGGREGATE_MAX_TIME_MS, TimeUnit.MILLISECONDS)
+                    .into(skierIds);
+        }
+        return skierIds.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // Raw rides even with rollups: they are per skier-day, not per lift
+    public int[] getSkierIdsAtResortSeasonDayLift(int resortId, int seasonId, int dayId, int liftId) throws MongoException {
+        List<Integer> skierIds = collection.distinct("skierID", and(eq("resortID", resortId), idFilter("seasonID", seasonId),
+                        idFilter("dayID", dayId), eq("liftID", liftId)), Integer.class)
+                .maxTime(AGGREGATE_MAX_TIME_MS, TimeUnit.MILLISECONDS)
+                .into(new ArrayList<>());
+        return skierIds.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @param seasons rollup field {<seasonID>: vertical}
+     * @return SeasonVerticals or null if there are no seasons
+     */
+    static SeasonVerticals toSeasonVerticals(Document seasons) {
+        if (seasons == null || seasons.isEmpty()) {
+            return null;
+        }
+        int[] seasonIDs = new int[seasons.size()];
+        int[] totalVerts = new int[seasons.size()];
+        int i = 0;
+        for (Map.Entry<String, Object> season : seasons.entrySet()) {
+            seasonIDs[i] = Integer.parseInt(season.getKey());
+            totalVerts[i] = ((Number) season.getValue()).intValue();
+            i++;
+        }
+        return new SeasonVerticals(seasonIDs, totalVerts);
+    }
+
+    /**
+     * @param seasons one {seasonID, totalVert} document per season
+     * @return SeasonVerticals or null if there are no seasons
+     */
+    static SeasonVerticals toSeasonVerticals(MongoIterable<Document> seasons) {
+        List<Document> docs = seasons.into(new ArrayList<>());
+        if (docs.isEmpty()) {
+            return null;
+        }
+        int[] seasonIDs = new int[docs.size()];
+        int[] totalVerts = new int[docs.size()];
+        for (int i = 0; i < docs.size(); i++) {
+            seasonIDs[i] = docs.get(i).get("seasonID", Number.class).intValue();
+            totalVerts[i] = docs.get(i).get("totalVert", Number.class).intValue();
+        }
+        return new SeasonVerticals(seasonIDs, totalVerts);
+    }
+
+    /**
+     * @param lifeRides
+     * @Description upsert a batch of rides by their deterministic _id and apply only the rides that were new to the rollups
+     * Updates of the same rollup key within the batch are coalesced into a single $inc upsert
+     * A redelivered or replayed ride finds itself stored and changes nothing, so callers may retry a batch as a whole
+     * Rides and rollups are written in one transaction: a failure in between rolls back the rides too and the retry applies them
+     * Until a RollupBackfill has started, and on a standalone mongod which has no transactions, only the rides are written
+     */
+    public void insertLifeRides(List<LifeRide> lifeRides) throws MongoException {
+        if (lifeRides.isEmpty()) {
+            return;
+        }
+        if (!rollupPhase().maintained() || !supportsTransactions()) {
+            writeRides(null, lifeRides);
+            return;
+        }
+        inRollupTransaction(session -> writeRides(session, lifeRides));
+    }
+
+    /**
+     * @param work retried as a whole on transient errors, e.g. a write conflict on a resort-day another lane is counting
+     */
+    void inRollupTransaction(Consumer<ClientSession> work) throws MongoException {
+        try (ClientSession session = mongoClient.startSession()) {
+            session.withTransaction(() -> {
+                work.accept(session);
+                return null;
+            }, ROLLUP_TRANSACTION);
+        }
+    }
+
+    /**
+     * @return boolean true on a replica set member or mongos, asked once on the first write
+     */
+    boolean supportsTransactions() throws MongoException {
+        Boolean supported = transactions.get();
+        if (supported == null) {
+            Document hello = database.runCommand(new Document("hello", 1));
+            supported = hello.containsKey("setName") || "isdbgrid".equals(hello.getString("msg"));
+            if (!supported && ROLLUPS) {
+                System.err.println("Warning: standalone mongod without transactions, no rollups are kept and GETs aggregate the raw rides");
+            }
+            transactions.set(supported);
+        }
+        return supported;
+    }
+
+    /**
+     * @param session the rollup transaction, null to write the rides only
+     * @param lifeRides
+     */
+    private void writeRides(ClientSession session, List<LifeRide> lifeRides) throws MongoException {
+        // 1) Raw rides, $setOnInsert leaves a ride that is already stored untouched and reports only the new ones as upserts
+        List<WriteModel<Document>> upserts = new ArrayList<>(lifeRides.size());
+        for (LifeRide lifeRide : lifeRides) {
+            Document ride = toDocument(lifeRide);
+            if (session != null) {
+                ride.append(ROLLED_UP, true);
+            }
+            upserts.add(new UpdateOneModel<>(eq("_id", rideKey(lifeRide)), setOnInsert(ride), UPSERT));
+        }
+        BulkWriteResult result = bulkWrite(session, collection, upserts);
+        if (session == null) {
+            return;
+        }
+        List<LifeRide> newRides = new ArrayList<>(result.getUpserts().size());
+        for (BulkWriteUpsert upsert : result.getUpserts()) {
+            newRides.add(lifeRides.get(upsert.getIndex()));
+        }
+        applyRollups(session, newRides);
+    }
+
+    // Inside the rollup transaction that also stores or marks these rides
+    void applyRollups(ClientSession session, List<LifeRide> newRides) throws MongoException {
+        if (newRides.isEmpty()) {
+            return;
+        }
+        // 2) Coalesce per rollup key, Document keys compare by content
+        Map<Document, Integer> skierDayVerticals = new LinkedHashMap<>();
+        Map<Document, Map<String, Integer>> skierResortVerticals = new LinkedHashMap<>();
+        for (LifeRide lifeRide : newRides) {
+            int seasonId = lifeRide.getSeasonID();
+            int dayId = lifeRide.getDayID();
+            int vertical = lifeRide.getLiftID() * 10;
+            skierDayVerticals.merge(skierDayKey(lifeRide.getResortID(), seasonId, dayId, lifeRide.getSkierID()), vertical, Integer::sum);
+            skierResortVerticals.computeIfAbsent(skierResortKey(lifeRide.getSkierID(), lifeRide.getResortID()), key -> new LinkedHashMap<>())
+                    .merge(String.valueOf(seasonId), vertical, Integer::sum);
+        }
+        List<WriteModel<Document>> skierResortUpdates = new ArrayList<>(skierResortVerticals.size());
+        for (Map.Entry<Document, Map<String, Integer>> entry : skierResortVerticals.entrySet()) {
+            List<Bson> seasonIncrements = new ArrayList<>();
+            entry.getValue().forEach((seasonId, vertical) -> seasonIncrements.add(inc("seasons." + seasonId, vertical)));
+            skierResortUpdates.add(new UpdateOneModel<>(eq("_id", entry.getKey()), combine(seasonIncrements), UPSERT));
+        }
+        bulkWrite(session, skierResortCollection, skierResortUpdates);
+        applySkierDayVerticals(session, skierDayVerticals);
+    }
+
+    /**
+     * @param session
+     * @param skierDayVerticals
+     * @Description an upsert that inserted a new skier-day document means the skier's first ride of that day
+     * -> count it towards the resort-day's unique skiers, so distinct counts need no $group either
+     * Runs last: the resort-day documents are the ones concurrent writers contend on
+     */
+    private void applySkierDayVerticals(ClientSession session, Map<Document, Integer> skierDayVerticals) throws MongoException {
+        List<Document> keys = new ArrayList<>(skierDayVerticals.keySet());
+        List<WriteModel<Document>> updates = new ArrayList<>(keys.size());
+        for (Document key : keys) {
+            updates.add(new UpdateOneModel<>(eq("_id", key), inc("vertical", skierDayVerticals.get(key)), UPSERT));
+        }
+        BulkWriteResult result = bulkWrite(session, skierDayCollection, updates);
+        Map<Document, Integer> newSkiers = new LinkedHashMap<>();
+        for (BulkWriteUpsert upsert : result.getUpserts()) {
+            Document key = keys.get(upsert.getIndex());
+            newSkiers.merge(resortDayKey(key.getInteger("resortID"), key.getInteger("seasonID"), key.getInteger("dayID")), 1, Integer::sum);
+        }
+        if (!newSkiers.isEmpty()) {
+            List<WriteModel<Document>> resortDayUpdates = new ArrayList<>(newSkiers.size());
+            newSkiers.forEach((key, count) -> resortDayUpdates.add(new UpdateOneModel<>(eq("_id", key), inc("uniqueSkiers", count), UPSERT)));
+            bulkWrite(session, resortDayCollection, resortDayUpdates);
+        }
+    }
+
+    private static BulkWriteResult bulkWrite(ClientSession session, MongoCollection<Document> collection, List<WriteModel<Document>> updates)
+            throws MongoException {
+        return session == null ? collection.bulkWrite(updates, UNORDERED) : collection.bulkWrite(session, updates, UNORDERED);
+    }
+
+    // The field order of a compound _id is part of its value, always build keys through these
+    private static Document skierDayKey(int resortId, int seasonId, int dayId, Object skierId) {
+        return new Document("resortID", resortId).append("seasonID", seasonId).append("dayID", dayId).append("skierID", skierId);
+    }
+
+    // A ride is identified by all of its fields: the same message delivered twice is the same ride
+    static Document rideKey(LifeRide lifeRide) {
+        return new Document("resortID", lifeRide.getResortID())
+                .append("seasonID", lifeRide.getSeasonID())
+                .append("dayID", lifeRide.getDayID())
+                .append("skierID", lifeRide.getSkierID())
+                .append("time", lifeRide.getTime())
+                .append("liftID", lifeRide.getLiftID());
+    }
+
+    private static Document skierResortKey(int skierId, int resortId) {
+        return new Document("skierID", skierId).append("resortID", resortId);
+    }
+
+    private static Document resortDayKey(int resortId, int seasonId, int dayId) {
+        return new Document("resortID", resortId).append("seasonID", seasonId).append("dayID", dayId);
+    }
+
+    private static Document toDocument(LifeRide lifeRide) {
+        return new Document("resortID", lifeRide.getResortID())
+                .append("seasonID", lifeRide.getSeasonID())
+                .append("dayID", lifeRide.getDayID())
+                .append("skierID", lifeRide.getSkierID())
+                .append("time", lifeRide.getTime())
+                .append("liftID", lifeRide.getLiftID())
+                .append("schemaVersion", SCHEMA_VERSION);
+    }
+
+    // Server answered and the pool is warm, servlets report it on /health/ready
+    public boolean isReady() {
+        return connectionPoolWarmer.isReady();
     }
 
     @Override
     public void close() {
-        mongoClient.close();
+        if (ownsClient) {
+            connectionPoolWarmer.close();
+            mongoClient.close();
+        }
     }
 
 }
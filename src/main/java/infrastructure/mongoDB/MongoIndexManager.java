@@ -0,0 +1,188 @@
+package infrastructure.mongoDB;
+
+import com.mongodb.ExplainVerbosity;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Indexes.ascending;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Declares the indexes every MongoDBConnector query needs, builds the missing ones at startup
+ * and explains each query to check that it really uses its index
+ * Runs on a background thread, so a long index build never blocks servlet initialization
+ */
+public class MongoIndexManager implements AutoCloseable {
+
+    // Sample arguments for explain, the plan doesn't depend on the values
+    static final int SAMPLE_RESORT_ID = 1;
+    static final int SAMPLE_SEASON_ID = 2024;
+    static final int SAMPLE_DAY_ID = 1;
+    static final int SAMPLE_SKIER_ID = 1;
+
+    private final MongoDBConnector mongoDBConnector;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mongo-index-manager");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public MongoIndexManager(MongoDBConnector mongoDBConnector) {
+        this.mongoDBConnector = mongoDBConnector;
+    }
+
+    /**
+     * One query of MongoDBConnector: the index it needs (null = served by _id) and how to explain it
+     */
+    static class QueryShape {
+
+        private final String name;
+        private final MongoCollection<Document> collection;
+        private final IndexModel index;
+        private final Function<ExplainVerbosity, Document> explain;
+
+        QueryShape(String name, MongoCollection<Document> collection, IndexModel index, Function<ExplainVerbosity, Document> explain) {
+            this.name = name;
+            this.collection = collection;
+            this.index = index;
+            this.explain = explain;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        Document explain(ExplainVerbosity verbosity) {
+            return explain.apply(verbosity);
+        }
+    }
+
+    List<QueryShape> queryShapes() {
+        MongoCollection<Document> rides = mongoDBConnector.getCollection();
+        // {resortID, seasonID, dayID, skierID} serves the skier-day vertical and, by prefix, the resort-day unique skiers
+        IndexModel resortDayIndex = new IndexModel(ascending("resortID", "seasonID", "dayID", "skierID"),
+                new IndexOptions().name("resortID_seasonID_dayID_skierID"));
+        IndexModel skierIndex = new IndexModel(ascending("skierID", "resortID", "seasonID"),
+                new IndexOptions().name("skierID_resortID_seasonID"));
+        Bson seasonVerticalFilter = and(eq("skierID", SAMPLE_SKIER_ID), eq("resortID", SAMPLE_RESORT_ID));
+        return Arrays.asList(
+                new QueryShape("totalVerticalForSkierAtDay", rides, resortDayIndex, verbosity -> rides.aggregate(
+                        mongoDBConnector.totalVerticalForSkierAtDayPipeline(SAMPLE_RESORT_ID, SAMPLE_SEASON_ID, SAMPLE_DAY_ID, SAMPLE_SKIER_ID))
+                        .explain(verbosity)),
+                new QueryShape("uniqueSkiersAtResortSeasonDay", rides, resortDayIndex, verbosity -> rides.aggregate(
+                        mongoDBConnector.uniqueSkiersAtResortSeasonDayPipeline(SAMPLE_RESORT_ID, SAMPLE_SEASON_ID, SAMPLE_DAY_ID))
+                        .explain(verbosity)),
+                new QueryShape("totalVerticalForSkierAtResort", rides, skierIndex, verbosity -> rides.aggregate(
+                        mongoDBConnector.totalVerticalForSkierAtResortPipeline(seasonVerticalFilter))
+                        .explain(verbosity)),
+                new QueryShape("totalVerticalForSkierAtResortSeason", rides, skierIndex, verbosity -> rides.aggregate(
+                        mongoDBConnector.totalVerticalForSkierAtResortPipeline(and(seasonVerticalFilter, mongoDBConnector.idFilter("seasonID", SAMPLE_SEASON_ID))))
+                        .explain(verbosity)),
+                new QueryShape("rollup.skierDay", mongoDBConnector.getSkierDayCollection(), null, verbosity -> mongoDBConnector.getSkierDayCollection()
+                        .find(MongoDBConnector.skierDayFilter(SAMPLE_RESORT_ID, SAMPLE_SEASON_ID, SAMPLE_DAY_ID, SAMPLE_SKIER_ID))
+                        .explain(verbosity)),
+                new QueryShape("rollup.skierResort", mongoDBConnector.getSkierResortCollection(), null, verbosity -> mongoDBConnector.getSkierResortCollection()
+                        .find(MongoDBConnector.skierResortFilter(SAMPLE_SKIER_ID, SAMPLE_RESORT_ID))
+                        .explain(verbosity)),
+                new QueryShape("rollup.resortDay", mongoDBConnector.getResortDayCollection(), null, verbosity -> mongoDBConnector.getResortDayCollection()
+                        .find(MongoDBConnector.resortDayFilter(SAMPLE_RESORT_ID, SAMPLE_SEASON_ID, SAMPLE_DAY_ID))
+                        .explain(verbosity))
+        );
+    }
+
+    public void startInBackground() {
+        executor.submit(() -> {
+            try {
+                List<QueryShape> queryShapes = queryShapes();
+                ensureIndexes(queryShapes);
+                verifyPlans(queryShapes);
+            } catch (MongoException e) {
+                System.err.println("Warning: index check failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * @param queryShapes
+     * @Description create the declared indexes that are missing, createIndexes is a no-op for existing ones
+     * but listing first avoids taking the collection lock on every startup
+     */
+    void ensureIndexes(List<QueryShape> queryShapes) throws MongoException {
+        for (QueryShape queryShape : queryShapes) {
+            if (queryShape.index == null) {
+                continue;
+            }
+            Set<String> existing = new LinkedHashSet<>();
+            for (Document index : queryShape.collection.listIndexes()) {
+                existing.add(index.getString("name"));
+            }
+            String indexName = queryShape.index.getOptions().getName();
+            if (!existing.contains(indexName)) {
+                System.out.println("building index " + indexName + " on " + queryShape.collection.getNamespace());
+                queryShape.collection.createIndexes(Collections.singletonList(queryShape.index));
+            }
+        }
+    }
+
+    private void verifyPlans(List<QueryShape> queryShapes) throws MongoException {
+        for (QueryShape queryShape : queryShapes) {
+            List<String> stages = new ArrayList<>();
+            collectStages(queryShape.explain(ExplainVerbosity.QUERY_PLANNER), stages);
+            if (stages.contains("COLLSCAN")) {
+                System.err.println("Warning: query " + queryShape.name + " on " + queryShape.collection.getNamespace()
+                        + " runs as COLLSCAN, plan stages: " + stages);
+            } else {
+                System.out.println("query " + queryShape.name + " plan stages: " + stages);
+            }
+        }
+    }
+
+    /**
+     * @param node
+     * @param stages
+     * @Description the winning plan sits at different depths for find, aggregate and SBE plans -> walk the whole explain output
+     */
+    static void collectStages(Object node, List<String> stages) {
+        if (node instanceof Document) {
+            Document document = (Document) node;
+            for (String key : document.keySet()) {
+                Object value = document.get(key);
+                if ("stage".equals(key) && value instanceof String) {
+                    stages.add((String) value);
+                } else if (!"rejectedPlans".equals(key)) {
+                    collectStages(value, stages);
+                }
+            }
+        } else if (node instanceof List) {
+            for (Object child : (List<?>) node) {
+                collectStages(child, stages);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+}
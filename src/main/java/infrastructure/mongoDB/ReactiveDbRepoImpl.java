@@ -0,0 +1,129 @@
+package infrastructure.mongoDB;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ReadPreference;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import domain.AsyncDbRepository;
+import domain.RepositoryUnavailableException;
+import domain.SeasonVerticals;
+import org.bson.Document;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Projections.include;
+import static infrastructure.mongoDB.DbRepoImpl.MG_COLLECTION;
+import static infrastructure.mongoDB.DbRepoImpl.MG_CONNECTION;
+import static infrastructure.mongoDB.DbRepoImpl.MG_DATABASE;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * AsyncDbRepository on the reactive streams driver, reads the same rollups as MongoDBConnector
+ * No thread waits for a round trip: a few driver threads serve any number of requests in flight,
+ * the limit becomes the connection pool, not the servlet thread pool
+ * Rollup reads only: the raw aggregations depend on SchemaMigration state that lives in the sync DbRepoImpl
+ * Until RollupBackfill has marked the rollups READY, reads fail and isReady is false, the rollups lack the older rides
+ */
+public class ReactiveDbRepoImpl implements AsyncDbRepository {
+
+    private final ConnectionPoolWarmer connectionPoolWarmer;
+    private final MongoClient mongoClient;
+    private final MongoCollection<Document> skierDayCollection;
+    private final MongoCollection<Document> skierResortCollection;
+    private final MongoCollection<Document> resortDayCollection;
+    private final MongoCollection<Document> rollupStateCollection;
+    private final RollupState rollupState = new RollupState();
+
+    public ReactiveDbRepoImpl() {
+        System.out.println("init ReactiveDbRepoImpl");
+        if (!MongoDBConnector.ROLLUPS) {
+            throw new IllegalStateException("Error: skier.db.async requires skier.db.rollups=true");
+        }
+        this.connectionPoolWarmer = MongoDBConnector.createConnectionPoolWarmer();
+        this.mongoClient = MongoClients.create(MongoClientSettings.builder(MongoDBConnector.clientSettings(MG_CONNECTION))
+                .applyToConnectionPoolSettings(builder -> builder.addConnectionPoolListener(connectionPoolWarmer))
+                .build());
+        MongoDatabase database = mongoClient.getDatabase(MG_DATABASE);
+        // Pinged from the warmer's own threads, blocking there is fine
+        connectionPoolWarmer.start(() -> SingleResultSubscriber.first(database.runCommand(new Document("ping", 1))).join());
+        this.skierDayCollection = database.getCollection(MG_COLLECTION + MongoDBConnector.SKIER_DAY_SUFFIX);
+        this.skierResortCollection = database.getCollection(MG_COLLECTION + MongoDBConnector.SKIER_RESORT_SUFFIX);
+        this.resortDayCollection = database.getCollection(MG_COLLECTION + MongoDBConnector.RESORT_DAY_SUFFIX);
+        this.rollupStateCollection = database.getCollection(MG_COLLECTION + RollupState.SUFFIX).withReadPreference(ReadPreference.primary());
+    }
+
+    private <T> CompletionStage<T> fromRollups(Supplier<CompletionStage<T>> read) {
+        return rollupsReady().thenCompose(ready -> {
+            if (!ready) {
+                CompletableFuture<T> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new RepositoryUnavailableException("rollups are still being backfilled"));
+                return failed;
+            }
+            return read.get();
+        });
+    }
+
+    // The cached phase, re-read at most every RollupState.REFRESH_MS
+    private CompletionStage<Boolean> rollupsReady() {
+        if (!rollupState.needsRefresh()) {
+            return CompletableFuture.completedFuture(rollupState.phase() == RollupState.Phase.READY);
+        }
+        return SingleResultSubscriber.first(rollupStateCollection.find(eq("_id", RollupState.ID)).first())
+                .thenApply(state -> {
+                    rollupState.update(state);
+                    return rollupState.phase() == RollupState.Phase.READY;
+                });
+    }
+
+    @Override
+    public CompletionStage<Integer> getNumberOfUniqueSkiersAtResortSeasonDay(int resortId, int seasonId, int dayId) {
+        return fromRollups(() -> SingleResultSubscriber.first(resortDayCollection.find(MongoDBConnector.resortDayFilter(resortId, seasonId, dayId)).maxTime(MongoDBConnector.POINT_QUERY_MAX_TIME_MS, TimeUnit.MILLISECONDS).first())
+                .thenApply(doc -> doc != null ? doc.getInteger("uniqueSkiers", 0) : 0));
+    }
+
+    @Override
+    public CompletionStage<Integer> getTotalVerticalForSkierAtDay(int resortId, int seasonId, int dayId, int skierId) {
+        return fromRollups(() -> SingleResultSubscriber.first(skierDayCollection.find(MongoDBConnector.skierDayFilter(resortId, seasonId, dayId, skierId)).maxTime(MongoDBConnector.POINT_QUERY_MAX_TIME_MS, TimeUnit.MILLISECONDS).first())
+                .thenApply(doc -> doc != null ? doc.getInteger("vertical", 0) : 0));
+    }
+
+    @Override
+    public CompletionStage<SeasonVerticals> getTotalVerticalForSkierAtResort(int skierID, int resortId) {
+        return fromRollups(() -> SingleResultSubscriber.first(skierResortCollection.find(MongoDBConnector.skierResortFilter(skierID, resortId)).maxTime(MongoDBConnector.POINT_QUERY_MAX_TIME_MS, TimeUnit.MILLISECONDS).first())
+                .thenApply(doc -> doc != null ? MongoDBConnector.toSeasonVerticals(doc.get("seasons", Document.class)) : null));
+    }
+
+    @Override
+    public CompletionStage<SeasonVerticals> getTotalVerticalForSkierAtResort(int skierID, int resortId, int seasonId) {
+        return fromRollups(() -> SingleResultSubscriber.first(skierResortCollection.find(MongoDBConnector.skierResortFilter(skierID, resortId))
+                        .projection(include("seasons." + seasonId))
+                        .maxTime(MongoDBConnector.POINT_QUERY_MAX_TIME_MS, TimeUnit.MILLISECONDS)
+                        .first())
+                .thenApply(doc -> doc != null ? MongoDBConnector.toSeasonVerticals(doc.get("seasons", Document.class)) : null));
+    }
+
+    @Override
+    public boolean isReady() {
+        // Also refreshes the phase when nothing is routed here yet
+        rollupsReady();
+        return connectionPoolWarmer.isReady() && rollupState.phase() == RollupState.Phase.READY;
+    }
+
+    @Override
+    public void close() {
+        System.out.println("destroy ReactiveDbRepoImpl");
+        connectionPoolWarmer.close();
+        mongoClient.close();
+    }
+
+}
@@ -0,0 +1,266 @@
+package infrastructure.mongoDB;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import domain.LifeRide;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Offline bulk loader: replays archived rides straight into liferide and its rollups, bypassing HTTP and RabbitMQ
+ * Input: files (or directories of files) with one LifeRide per line, encoded as JSON exactly like the MQ messages, optionally .gz
+ * Safe to rerun over files that are partly or fully loaded, rides already stored are not counted again
+ * Usage: RideReplayTool [--uri mongodb://host:27017] [--batch-size 5000] [--threads 8] [--checkpoint replay.checkpoint] <path>...
+ */
+public class RideReplayTool {
+
+    private static final Gson gson = new Gson();
+    private static final int REPORT_SECONDS = 5;
+    // Sorting a batch by rollup key keeps the upserts of one key adjacent and the _id index accesses sequential
+    private static final Comparator<LifeRide> KEY_ORDER = Comparator.comparing(LifeRide::getResortID)
+            .thenComparing(LifeRide::getSeasonID)
+            .thenComparing(LifeRide::getDayID)
+            .thenComparing(LifeRide::getSkierID)
+            .thenComparing(LifeRide::getTime);
+
+    private final MongoDBConnector mongoDBConnector;
+    private final int batchSize;
+    private final int threads;
+    private final Path checkpointPath;
+    // file -> number of lines already loaded
+    private final Properties checkpoint = new Properties();
+    private final LongAdder loadedRides = new LongAdder();
+    private final LongAdder skippedLines = new LongAdder();
+
+    public RideReplayTool(MongoDBConnector mongoDBConnector, int batchSize, int threads, Path checkpointPath) throws IOException {
+        this.mongoDBConnector = mongoDBConnector;
+        this.batchSize = batchSize;
+        this.threads = threads;
+        this.checkpointPath = checkpointPath;
+        if (checkpointPath != null && Files.exists(checkpointPath)) {
+            try (Reader reader = Files.newBufferedReader(checkpointPath, StandardCharsets.UTF_8)) {
+                checkpoint.load(reader);
+            }
+            System.out.println("resuming from checkpoint " + checkpointPath);
+        }
+    }
+
+    public void replay(List<Path> files) throws Exception {
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        long startNanos = System.nanoTime();
+        reporter.scheduleAtFixedRate(() -> report(startNanos), REPORT_SECONDS, REPORT_SECONDS, TimeUnit.SECONDS);
+        try {
+            for (Path file : files) {
+                replayFile(file, workers);
+            }
+        } finally {
+            reporter.shutdownNow();
+            workers.shutdown();
+        }
+        report(startNanos);
+    }
+
+    /**
+     * @param file
+     * @param workers
+     * @Description the reader thread cuts the file into batches, workers parse, sort and write them in parallel
+     * Batches complete out of order, the checkpoint only moves past a batch once all batches before it are written
+     * -> after a crash, batches that finished beyond the checkpoint are loaded again. Their rides are upserted by _id,
+     * found stored and skipped, so the rollups still count every ride once
+     */
+    private void replayFile(Path file, ExecutorService workers) throws Exception {
+        String checkpointKey = file.toAbsolutePath().toString();
+        long resumeLine = Long.parseLong(checkpoint.getProperty(checkpointKey, "0"));
+        if (resumeLine < 0) {
+            System.out.println("skip " + file + ": already loaded");
+            return;
+        }
+        System.out.println("replay " + file + (resumeLine > 0 ? " from line " + resumeLine : ""));
+        // Bound the batches in flight so the reader can't run ahead of the DB
+        Deque<Future<Long>> inFlight = new ArrayDeque<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(open(file), StandardCharsets.UTF_8), 1 << 20)) {
+            long lineNumber = 0;
+            List<String> lines = new ArrayList<>(batchSize);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (++lineNumber <= resumeLine) {
+                    continue;
+                }
+                lines.add(line);
+                if (lines.size() == batchSize) {
+                    submit(lines, lineNumber, workers, inFlight, checkpointKey);
+                    lines = new ArrayList<>(batchSize);
+                }
+            }
+            if (!lines.isEmpty()) {
+                submit(lines, lineNumber, workers, inFlight, checkpointKey);
+            }
+        }
+        while (!inFlight.isEmpty()) {
+            completeOldest(inFlight, checkpointKey);
+        }
+        // -1 marks the file as done
+        saveCheckpoint(checkpointKey, -1);
+    }
+
+    private void submit(List<String> lines, long lastLineNumber, ExecutorService workers, Deque<Future<Long>> inFlight,
+                        String checkpointKey) throws Exception {
+        inFlight.addLast(workers.submit(() -> {
+            loadBatch(lines);
+            return lastLineNumber;
+        }));
+        if (inFlight.size() >= threads * 2) {
+            completeOldest(inFlight, checkpointKey);
+        }
+    }
+
+    private void completeOldest(Deque<Future<Long>> inFlight, String checkpointKey) throws Exception {
+        try {
+            long lastLineNumber = inFlight.removeFirst().get();
+            saveCheckpoint(checkpointKey, lastLineNumber);
+        } catch (ExecutionException e) {
+            for (Future<Long> future : inFlight) {
+                future.cancel(true);
+            }
+            throw new IOException("Error: failed to load batch, rerun with the same checkpoint to resume", e.getCause());
+        }
+    }
+
+    private void loadBatch(List<String> lines) {
+        List<LifeRide> lifeRides = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            LifeRide lifeRide = parseLifeRide(line);
+            if (lifeRide == null) {
+                skippedLines.increment();
+            } else {
+                lifeRides.add(lifeRide);
+            }
+        }
+        lifeRides.sort(KEY_ORDER);
+        mongoDBConnector.insertLifeRides(lifeRides);
+        loadedRides.add(lifeRides.size());
+    }
+
+    private static LifeRide parseLifeRide(String line) {
+        if (line.isEmpty()) {
+            return null;
+        }
+        LifeRide lifeRide;
+        try {
+            lifeRide = gson.fromJson(line, LifeRide.class);
+        } catch (JsonSyntaxException e) {
+            return null;
+        }
+        if (lifeRide == null || lifeRide.getResortID() == null || lifeRide.getSeasonID() == null || lifeRide.getDayID() == null
+                || lifeRide.getSkierID() == null || lifeRide.getTime() == null || lifeRide.getLiftID() == null) {
+            return null;
+        }
+        return lifeRide;
+    }
+
+    private void saveCheckpoint(String checkpointKey, long lineNumber) throws IOException {
+        if (checkpointPath == null) {
+            return;
+        }
+        checkpoint.setProperty(checkpointKey, String.valueOf(lineNumber));
+        // Write then rename, so a crash never leaves a half-written checkpoint behind
+        Path tempPath = checkpointPath.resolveSibling(checkpointPath.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+            checkpoint.store(writer, "RideReplayTool checkpoint: file -> lines loaded, -1 = done");
+        }
+        Files.move(tempPath, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void report(long startNanos) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        long loaded = loadedRides.sum();
+        System.out.printf("loaded %d rides in %.1fs (%.0f rides/s), skipped %d malformed lines%n",
+                loaded, seconds, loaded / Math.max(seconds, 1e-3), skippedLines.sum());
+    }
+
+    private static InputStream open(Path file) throws IOException {
+        InputStream inputStream = Files.newInputStream(file);
+        return file.toString().endsWith(".gz") ? new GZIPInputStream(inputStream, 1 << 16) : inputStream;
+    }
+
+    private static List<Path> listFiles(List<String> paths) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String path : paths) {
+            Path root = Paths.get(path);
+            if (Files.isDirectory(root)) {
+                try (Stream<Path> children = Files.walk(root)) {
+                    files.addAll(children.filter(Files::isRegularFile).sorted().collect(Collectors.toList()));
+                }
+            } else {
+                files.add(root);
+            }
+        }
+        return files;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String uri = DbRepoImpl.MG_CONNECTION;
+        int batchSize = 5000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path checkpointPath = null;
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--uri":
+                    uri = args[++i];
+                    break;
+                case "--batch-size":
+                    batchSize = Integer.parseInt(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--checkpoint":
+                    checkpointPath = Paths.get(args[++i]);
+                    break;
+                default:
+                    paths.add(args[i]);
+            }
+        }
+        if (paths.isEmpty()) {
+            System.err.println("Usage: RideReplayTool [--uri mongodb://host:27017] [--batch-size 5000] [--threads 8] [--checkpoint file] <path>...");
+            System.exit(1);
+        }
+        try (MongoDBConnector mongoDBConnector = new MongoDBConnector(uri, DbRepoImpl.MG_DATABASE, DbRepoImpl.MG_COLLECTION)) {
+            new RideReplayTool(mongoDBConnector, batchSize, threads, checkpointPath).replay(listFiles(paths));
+        }
+    }
+
+}
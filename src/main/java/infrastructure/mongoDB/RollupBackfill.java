@@ -0,0 +1,215 @@
+package infrastructure.mongoDB;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.result.UpdateResult;
+import domain.LifeRide;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.exists;
+import static com.mongodb.client.model.Filters.gt;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Projections.include;
+import static com.mongodb.client.model.Sorts.ascending;
+import static com.mongodb.client.model.Updates.combine;
+import static com.mongodb.client.model.Updates.set;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Rolls up the rides stored before writers kept the rollups, then switches MongoDBConnector's reads to the rollups
+ * Driven by the phase in RollupState: the first process to start claims CLEARING and drops what earlier versions left in
+ * the rollup collections, then sets BACKFILLING, from which writers roll up and mark (rolledUp) every ride they store
+ * Every process then marks and rolls up the unmarked rides in small batches, each batch in one transaction, so concurrent
+ * backfills and writers never count a ride twice. READY once a pass finds nothing left after every writer has seen BACKFILLING
+ */
+public class RollupBackfill implements AutoCloseable {
+
+    private static final int BATCH_SIZE = 1000;
+    // Pause between batches so the backfill doesn't compete with GETs and the consumer's inserts
+    private static final long BATCH_PAUSE_MS = 50;
+    // A claim older than this is from a process that died while clearing
+    private static final long CLEARING_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(10);
+    // Writers see BACKFILLING within RollupState.REFRESH_MS, plus time for the writes they started before that
+    private static final long SETTLE_MS = 2 * RollupState.REFRESH_MS + TimeUnit.SECONDS.toMillis(30);
+    private static final Bson UNMARKED = exists(MongoDBConnector.ROLLED_UP, false);
+
+    private final MongoDBConnector mongoDBConnector;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mongo-rollup-backfill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RollupBackfill(MongoDBConnector mongoDBConnector) {
+        this.mongoDBConnector = mongoDBConnector;
+    }
+
+    public void startInBackground() {
+        if (!MongoDBConnector.ROLLUPS) {
+            return;
+        }
+        executor.submit(() -> {
+            try {
+                backfill();
+            } catch (MongoException e) {
+                // Reads stay on the raw rides, the next startup resumes the backfill
+                System.err.println("Warning: rollup backfill stopped: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    private void backfill() throws InterruptedException {
+        if (!mongoDBConnector.supportsTransactions()) {
+            return;
+        }
+        MongoCollection<Document> state = mongoDBConnector.getRollupStateCollection();
+        Document current;
+        while ((current = state.find(eq("_id", RollupState.ID)).first()) == null
+                || !RollupState.Phase.valueOf(current.getString("phase")).maintained()) {
+            if (current == null ? claim(state) : takeOver(state, current)) {
+                clear(state);
+            } else {
+                // Another process is clearing
+                TimeUnit.MILLISECONDS.sleep(RollupState.REFRESH_MS);
+            }
+        }
+        if (RollupState.Phase.valueOf(current.getString("phase")) == RollupState.Phase.READY) {
+            return;
+        }
+        long settledAt = current.getDate("since").getTime() + SETTLE_MS;
+        System.out.println("rollup backfill: rolling up stored rides");
+        long rolledUp = 0;
+        MongoCollection<Document> collection = mongoDBConnector.getCollection();
+        // Writers that haven't seen BACKFILLING yet still store unmarked rides -> repeat passes until one finds nothing after they all have
+        while (!Thread.currentThread().isInterrupted()) {
+            long checkedAt = System.currentTimeMillis();
+            if (collection.find(UNMARKED).projection(include("_id")).first() != null) {
+                rolledUp += backfillPass();
+            } else if (checkedAt >= settledAt) {
+                break;
+            } else {
+                TimeUnit.MILLISECONDS.sleep(Math.min(RollupState.REFRESH_MS, settledAt - checkedAt));
+            }
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        state.updateOne(and(eq("_id", RollupState.ID), eq("phase", RollupState.Phase.BACKFILLING.name())),
+                set("phase", RollupState.Phase.READY.name()));
+        System.out.println("rollup backfill: done, rolled up " + rolledUp + " rides, reads use the rollups");
+    }
+
+    private static boolean claim(MongoCollection<Document> state) {
+        try {
+            state.insertOne(new Document("_id", RollupState.ID).append("phase", RollupState.Phase.CLEARING.name()).append("since", new Date()));
+            return true;
+        } catch (MongoWriteException e) {
+            if (ErrorCategory.fromErrorCode(e.getCode()) != ErrorCategory.DUPLICATE_KEY) {
+                throw e;
+            }
+            // Another process claimed it first
+            return false;
+        }
+    }
+
+    private static boolean takeOver(MongoCollection<Document> state, Document current) {
+        Date since = current.getDate("since");
+        if (since.getTime() > System.currentTimeMillis() - CLEARING_TIMEOUT_MS) {
+            return false;
+        }
+        UpdateResult result = state.updateOne(and(eq("_id", RollupState.ID), eq("since", since)), set("since", new Date()));
+        return result.getModifiedCount() == 1;
+    }
+
+    // Nobody writes rollups while CLEARING, whatever is in them predates the rolledUp marks
+    private void clear(MongoCollection<Document> state) {
+        System.out.println("rollup backfill: dropping rollups from before the backfill");
+        mongoDBConnector.getSkierDayCollection().drop();
+        mongoDBConnector.getSkierResortCollection().drop();
+        mongoDBConnector.getResortDayCollection().drop();
+        state.updateOne(and(eq("_id", RollupState.ID), eq("phase", RollupState.Phase.CLEARING.name())),
+                combine(set("phase", RollupState.Phase.BACKFILLING.name()), set("since", new Date())));
+    }
+
+    /**
+     * @return long rides this pass rolled up
+     */
+    private long backfillPass() throws InterruptedException {
+        MongoCollection<BsonDocument> collection = mongoDBConnector.getCollection().withDocumentClass(BsonDocument.class);
+        long rolledUp = 0;
+        BsonValue lastId = null;
+        while (!Thread.currentThread().isInterrupted()) {
+            // Walk the _id index from where the last batch stopped. $gt only matches _ids of the same BSON type,
+            // rides with another type of _id are left to the next pass
+            Bson filter = lastId == null ? UNMARKED : and(gt("_id", lastId), UNMARKED);
+            List<BsonValue> ids = new ArrayList<>(BATCH_SIZE);
+            for (BsonDocument doc : collection.find(filter).projection(include("_id")).sort(ascending("_id")).limit(BATCH_SIZE)) {
+                ids.add(doc.get("_id"));
+            }
+            if (ids.isEmpty()) {
+                break;
+            }
+            rolledUp += rollUp(ids);
+            lastId = ids.get(ids.size() - 1);
+            TimeUnit.MILLISECONDS.sleep(BATCH_PAUSE_MS);
+        }
+        return rolledUp;
+    }
+
+    /**
+     * @param ids
+     * @return int rides rolled up, those still unmarked inside the transaction
+     * @Description a concurrent backfill marking the same rides conflicts with this transaction, which is retried and then finds them marked
+     */
+    private int rollUp(List<BsonValue> ids) {
+        MongoCollection<Document> collection = mongoDBConnector.getCollection();
+        Bson filter = and(in("_id", ids), UNMARKED);
+        int[] rolledUp = new int[1];
+        mongoDBConnector.inRollupTransaction(session -> {
+            List<LifeRide> lifeRides = new ArrayList<>(ids.size());
+            for (Document doc : collection.find(session, filter)) {
+                lifeRides.add(toLifeRide(doc));
+            }
+            collection.updateMany(session, filter, set(MongoDBConnector.ROLLED_UP, true));
+            mongoDBConnector.applyRollups(session, lifeRides);
+            rolledUp[0] = lifeRides.size();
+        });
+        return rolledUp[0];
+    }
+
+    // Version 1 rides store seasonID and dayID as strings, SchemaMigration may not have converted them yet
+    private static LifeRide toLifeRide(Document doc) {
+        return new LifeRide(intValue(doc.get("resortID")), intValue(doc.get("seasonID")), intValue(doc.get("dayID")),
+                intValue(doc.get("skierID")), intValue(doc.get("time")), intValue(doc.get("liftID")));
+    }
+
+    private static int intValue(Object value) {
+        return value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(String.valueOf(value));
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,58 @@
+package infrastructure.mongoDB;
+
+import org.bson.Document;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Where the rollups stand, one document in liferide_rollup_state shared by every server and consumer on the database
+ * Each process caches the phase and re-reads the document at most every REFRESH_MS
+ */
+class RollupState {
+
+    enum Phase {
+        // Nobody writes rollups, reads aggregate the raw rides
+        NONE,
+        // A RollupBackfill is dropping what earlier versions left in the rollup collections
+        CLEARING,
+        // Writers roll up the rides they store, RollupBackfill rolls up the ones stored before
+        BACKFILLING,
+        // Every ride is in the rollups, reads use them
+        READY;
+
+        boolean maintained() {
+            return this == BACKFILLING || this == READY;
+        }
+    }
+
+    static final String ID = "rollups";
+    static final String SUFFIX = "_rollup_state";
+    static final long REFRESH_MS = Long.getLong("skier.db.rollupStateRefreshMs", 5000);
+
+    // null until the document was read once
+    private volatile Phase phase;
+    private final AtomicLong refreshedAt = new AtomicLong();
+
+    /**
+     * @return boolean true for the one caller that should re-read the document now, or for anyone before the first read
+     */
+    boolean needsRefresh() {
+        long refreshed = refreshedAt.get();
+        long now = System.currentTimeMillis();
+        return phase == null || (now - refreshed >= REFRESH_MS && refreshedAt.compareAndSet(refreshed, now));
+    }
+
+    void update(Document state) {
+        phase = state == null ? Phase.NONE : Phase.valueOf(state.getString("phase"));
+    }
+
+    Phase phase() {
+        return phase;
+    }
+
+}
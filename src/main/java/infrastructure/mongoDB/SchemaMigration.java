@@ -0,0 +1,112 @@
+package infrastructure.mongoDB;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import org.bson.BsonDocument;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.gt;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Filters.or;
+import static com.mongodb.client.model.Filters.type;
+import static com.mongodb.client.model.Projections.include;
+import static com.mongodb.client.model.Sorts.ascending;
+import static com.mongodb.client.model.Updates.set;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Online migration of liferide from schema version 1 (seasonID/dayID as strings) to version 2 (int32)
+ * Converts small batches in _id order on a background thread while the server keeps serving, then switches
+ * MongoDBConnector's raw queries from matching both forms to the numeric form only
+ */
+public class SchemaMigration implements AutoCloseable {
+
+    private static final int BATCH_SIZE = 1000;
+    // Pause between batches so the migration doesn't compete with GETs and the consumer's inserts
+    private static final long BATCH_PAUSE_MS = 50;
+    private static final Bson LEGACY_FILTER = or(type("seasonID", BsonType.STRING), type("dayID", BsonType.STRING));
+    private static final List<Bson> TO_NUMERIC = Arrays.asList(
+            set("seasonID", new Document("$toInt", "$seasonID")),
+            set("dayID", new Document("$toInt", "$dayID")),
+            set("schemaVersion", MongoDBConnector.SCHEMA_VERSION)
+    );
+
+    private final MongoDBConnector mongoDBConnector;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mongo-schema-migration");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SchemaMigration(MongoDBConnector mongoDBConnector) {
+        this.mongoDBConnector = mongoDBConnector;
+    }
+
+    public void startInBackground() {
+        executor.submit(() -> {
+            try {
+                migrate();
+            } catch (MongoException e) {
+                // Queries keep matching both forms, the next startup resumes the migration
+                System.err.println("Warning: schema migration stopped: " + e.getMessage());
+            } catch (RuntimeException e) {
+                // Same, but not a DB failure: the executor would swallow it
+                System.err.println("Warning: schema migration stopped: " + e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    private void migrate() throws InterruptedException {
+        MongoCollection<BsonDocument> collection = mongoDBConnector.getCollection().withDocumentClass(BsonDocument.class);
+        long migrated = 0;
+        // Old consumers may still write version 1 rides while we run -> repeat full passes until one finds nothing
+        while (collection.find(LEGACY_FILTER).projection(include("_id")).first() != null) {
+            System.out.println("schema migration: converting liferide to version " + MongoDBConnector.SCHEMA_VERSION);
+            BsonValue lastId = null;
+            while (!Thread.currentThread().isInterrupted()) {
+                // Walk the _id index from where the last batch stopped instead of rescanning from the start. $gt only
+                // matches _ids of the same BSON type, rides with another type of _id are left to the next pass
+                Bson filter = lastId == null ? LEGACY_FILTER : and(gt("_id", lastId), LEGACY_FILTER);
+                List<BsonValue> ids = new ArrayList<>(BATCH_SIZE);
+                for (BsonDocument doc : collection.find(filter).projection(include("_id")).sort(ascending("_id")).limit(BATCH_SIZE)) {
+                    ids.add(doc.get("_id"));
+                }
+                if (ids.isEmpty()) {
+                    break;
+                }
+                // Pipeline update: converts each document in place on the server
+                migrated += collection.updateMany(and(in("_id", ids), LEGACY_FILTER), TO_NUMERIC).getModifiedCount();
+                lastId = ids.get(ids.size() - 1);
+                TimeUnit.MILLISECONDS.sleep(BATCH_PAUSE_MS);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+        mongoDBConnector.onSchemaMigrationComplete();
+        System.out.println("schema migration: done, converted " + migrated + " rides, queries use numeric IDs only");
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,49 @@
+package infrastructure.mongoDB;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Adapts a publisher of at most one item, e.g. find().first(), to a CompletableFuture
+ * Completes with null if the publisher completes empty
+ */
+class SingleResultSubscriber<T> implements Subscriber<T> {
+
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+
+    static <T> CompletableFuture<T> first(Publisher<T> publisher) {
+        SingleResultSubscriber<T> subscriber = new SingleResultSubscriber<>();
+        publisher.subscribe(subscriber);
+        return subscriber.future;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(T item) {
+        future.complete(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        future.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        // No-op if onNext already completed the future
+        future.complete(null);
+    }
+
+}
@@ -0,0 +1,215 @@
+package infrastructure.mongoDB;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import domain.LifeRide;
+import domain.SeasonVerticalSink;
+import domain.SeasonVerticals;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.mongodb.client.model.Accumulators.sum;
+import static com.mongodb.client.model.Aggregates.*;
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Indexes.ascending;
+import static com.mongodb.client.model.Projections.*;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Bucketed storage model: one document per skier per resort-day instead of one per ride
+ * {_id: {resortID, seasonID, dayID, skierID}, resortID, seasonID, dayID, skierID, vertical, times: [..], lifts: [..]}
+ * A skier rides at most a few hundred times a day, so a bucket stays far below the 16MB document limit
+ * Within a bucket a ride is identified by its (time, liftID) pair: a ride already in times/lifts is not appended or counted again,
+ * so a retried batch or a redelivered ride leaves the bucket as it was
+ */
+public class SkierDayBucketConnector implements AutoCloseable {
+
+    private static final UpdateOptions UPSERT = new UpdateOptions().upsert(true);
+    private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
+
+    private final MongoClient mongoClient;
+    private final MongoCollection<Document> collection;
+
+    public SkierDayBucketConnector(String connectionString, String databaseName, String collectionName) throws MongoException {
+        mongoClient = MongoDBConnector.createMongoClient(connectionString);
+        collection = mongoClient.getDatabase(databaseName).getCollection(collectionName);
+        // The key fields are duplicated outside _id, so the count and the season query can use secondary indexes
+        // Built asynchronously so a long index build doesn't block servlet initialization
+        CompletableFuture.runAsync(() -> {
+            try {
+                collection.createIndexes(Arrays.asList(
+                        new IndexModel(ascending("resortID", "seasonID", "dayID")),
+                        new IndexModel(ascending("skierID", "resortID", "seasonID"))
+                ));
+            } catch (MongoException e) {
+                System.err.println("Warning: failed to create skier-day bucket indexes: " + e.getMessage());
+            }
+        });
+    }
+
+    public int getTotalVerticalForSkierAtDay(int resortId, int seasonId, int dayId, int skierId) throws MongoException {
+        // Single-document fetch, the running total is kept in the bucket
+        Document doc = collection.find(eq("_id", bucketKey(resortId, seasonId, dayId, skierId)))
+                .projection(include("vertical"))
+                .maxTime(MongoDBConnector.POINT_QUERY_MAX_TIME_MS, TimeUnit.MILLISECONDS)
+                .first();
+        return doc != null ? doc.getInteger("vertical", 0) : 0;
+    }
+
+    public int getNumberOfUniqueSkiersAtResortSeasonDay(int resortId, int seasonId, int dayId) throws MongoException {
+        // One bucket per skier -> counting buckets counts unique skiers, answered from the index alone
+        return (int) collection.countDocuments(and(
+                eq("resortID", resortId),
+                eq("seasonID", seasonId),
+                eq("dayID", dayId)
+        ), new CountOptions().maxTime(MongoDBConnector.AGGREGATE_MAX_TIME_MS, TimeUnit.MILLISECONDS));
+    }
+
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId) throws MongoException {
+        return totalVerticalForSkierAtResort(and(eq("skierID", skierID), eq("resortID", resortId)));
+    }
+
+    public boolean streamTotalVerticalForSkierAtResort(int skierID, int resortId, SeasonVerticalSink sink) throws MongoException, IOException {
+        return MongoDBConnector.streamSeasonVerticals(collection.aggregate(totalVerticalForSkierAtResortPipeline(
+                and(eq("skierID", skierID), eq("resortID", resortId))))
+                .batchSize(MongoDBConnector.STREAM_BATCH_SIZE)
+                .maxTime(MongoDBConnector.AGGREGATE_MAX_TIME_MS, TimeUnit.MILLISECONDS), sink);
+    }
+
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId, int seasonId) throws MongoException {
+        return totalVerticalForSkierAtResort(and(eq("skierID", skierID), eq("resortID", resortId), eq("seasonID", seasonId)));
+    }
+
+    private SeasonVerticals totalVerticalForSkierAtResort(Bson filter) throws MongoException {
+        return MongoDBConnector.toSeasonVerticals(collection.aggregate(totalVerticalForSkierAtResortPipeline(filter))
+                .maxTime(MongoDBConnector.AGGREGATE_MAX_TIME_MS, TimeUnit.MILLISECONDS));
+    }
+
+    private static List<Bson> totalVerticalForSkierAtResortPipeline(Bson filter) {
+        // Sums one bucket per day instead of every ride of the season
+        return Arrays.asList(
+                match(filter),
+                group("$seasonID", sum("totalVert", "$vertical")),
+                project(fields(
+                        excludeId(),
+                        computed("seasonID", "$_id"),
+                        include("totalVert")
+                ))
+        );
+    }
+
+    public int[] getSkierIdsAtResortSeasonDay(int resortId, int seasonId, int dayId) throws MongoException {
+        List<Integer> skierIds = collection.distinct("skierID", and(
+                eq("resortID", resortId),
+                eq("seasonID", seasonId),
+                eq("dayID", dayId)
+        ), Integer.class).maxTime(MongoDBConnector.AGGREGATE_MAX_TIME_MS, TimeUnit.MILLISECONDS).into(new ArrayList<>());
+        return skierIds.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // Equality on an array field matches the buckets whose lifts contain the lift
+    public int[] getSkierIdsAtResortSeasonDayLift(int resortId, int seasonId, int dayId, int liftId) throws MongoException {
+        List<Integer> skierIds = collection.distinct("skierID", and(
+                eq("resortID", resortId),
+                eq("seasonID", seasonId),
+                eq("dayID", dayId),
+                eq("lifts", liftId)
+        ), Integer.class).maxTime(MongoDBConnector.AGGREGATE_MAX_TIME_MS, TimeUnit.MILLISECONDS).into(new ArrayList<>());
+        return skierIds.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @param lifeRides
+     * @Description append the rides to their buckets, rides of the same bucket in one batch become a single upsert
+     * Idempotent: each upsert is a pipeline that drops the rides already in the bucket before appending and counting the rest
+     */
+    public void insertLifeRides(List<LifeRide> lifeRides) throws MongoException {
+        // Duplicates inside the batch (e.g. a redelivery next to the original) are dropped here, the pipeline only checks the bucket
+        Map<Document, Set<List<Integer>>> buckets = new LinkedHashMap<>();
+        for (LifeRide lifeRide : lifeRides) {
+            Document key = bucketKey(lifeRide.getResortID(), lifeRide.getSeasonID(), lifeRide.getDayID(), lifeRide.getSkierID());
+            buckets.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(Arrays.asList(lifeRide.getTime(), lifeRide.getLiftID()));
+        }
+        if (buckets.isEmpty()) {
+            return;
+        }
+        List<WriteModel<Document>> updates = new ArrayList<>(buckets.size());
+        for (Map.Entry<Document, Set<List<Integer>>> bucket : buckets.entrySet()) {
+            updates.add(new UpdateOneModel<>(eq("_id", bucket.getKey()), appendNewRides(bucket.getKey(), bucket.getValue()), UPSERT));
+        }
+        collection.bulkWrite(updates, UNORDERED);
+    }
+
+    /**
+     * @param key
+     * @param rides [time, liftID] pairs
+     * @return List<Bson> update pipeline: new = rides not in zip(times, lifts), then times, lifts and vertical grow by new only
+     */
+    private static List<Bson> appendNewRides(Document key, Set<List<Integer>> rides) {
+        Document stored = new Document("$zip", new Document("inputs", Arrays.asList(
+                new Document("$ifNull", Arrays.asList("$times", new ArrayList<>())),
+                new Document("$ifNull", Arrays.asList("$lifts", new ArrayList<>())))));
+        Document newRides = new Document("$filter", new Document("input", new Document("$literal", new ArrayList<>(rides)))
+                .append("as", "ride")
+                .append("cond", new Document("$not", Arrays.asList(new Document("$in", Arrays.asList("$$ride", stored))))));
+        Document set = new Document();
+        for (String field : key.keySet()) {
+            set.append(field, new Document("$literal", key.get(field)));
+        }
+        set.append("vertical", new Document("$add", Arrays.asList(
+                        new Document("$ifNull", Arrays.asList("$vertical", 0)),
+                        new Document("$reduce", new Document("input", "$_new")
+                                .append("initialValue", 0)
+                                .append("in", new Document("$add", Arrays.asList("$$value",
+                                        new Document("$multiply", Arrays.asList(new Document("$arrayElemAt", Arrays.asList("$$this", 1)), 10)))))))))
+                .append("times", appended("$times", 0))
+                .append("lifts", appended("$lifts", 1));
+        return Arrays.asList(
+                new Document("$set", new Document("_new", newRides)),
+                new Document("$set", set),
+                new Document("$unset", "_new"));
+    }
+
+    // field ++ element index of every new ride
+    private static Document appended(String field, int index) {
+        return new Document("$concatArrays", Arrays.asList(
+                new Document("$ifNull", Arrays.asList(field, new ArrayList<>())),
+                new Document("$map", new Document("input", "$_new")
+                        .append("as", "ride")
+                        .append("in", new Document("$arrayElemAt", Arrays.asList("$$ride", index))))));
+    }
+
+    // The field order of a compound _id is part of its value, always build keys through here
+    private static Document bucketKey(int resortId, int seasonId, int dayId, int skierId) {
+        return new Document("resortID", resortId).append("seasonID", seasonId).append("dayID", dayId).append("skierID", skierId);
+    }
+
+    @Override
+    public void close() {
+        mongoClient.close();
+    }
+
+}
@@ -0,0 +1,282 @@
+package infrastructure.mongoDB;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import domain.LifeRide;
+import domain.SeasonVerticals;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Compares the time-series model against the current layout (liferide + rollups) on the same synthetic rides:
+ * insert throughput, storage and index size, and latency percentiles of the four GET queries
+ * Answers of both layouts are compared on every query, a mismatch is reported and fails the run
+ * Usage: TimeSeriesBenchmark [--uri mongodb://127.0.0.1:27017] [--rides 200000] [--queries 2000]
+ * Data in database BENCHMARK_DATABASE is replaced
+ * The current layout answers from its rollups on a replica set, run with -Dskier.db.rollups=false to compare its raw aggregations
+ */
+public class TimeSeriesBenchmark {
+
+    private static final String BENCHMARK_DATABASE = "skier_benchmark";
+    private static final int SEED_BATCH_SIZE = 5000;
+    private static final String[] QUERIES = {"skierDayVertical", "uniqueSkiers", "seasonVerticals", "skierIds"};
+
+    /**
+     * One storage layout behind the four GETs, so both are measured through the same loop
+     */
+    private interface Layout {
+
+        String name();
+
+        void insert(List<LifeRide> lifeRides);
+
+        // Answer as a comparable string, so results of both layouts can be checked against each other
+        String query(int query, LifeRide key);
+
+        List<MongoCollection<Document>> collections();
+    }
+
+    private static Layout currentLayout(MongoDBConnector connector) {
+        return new Layout() {
+            @Override
+            public String name() {
+                return connector.rollupReads() ? "rides+rollups" : "rides";
+            }
+
+            @Override
+            public void insert(List<LifeRide> lifeRides) {
+                connector.insertLifeRides(lifeRides);
+            }
+
+            @Override
+            public String query(int query, LifeRide key) {
+                switch (query) {
+                    case 0:
+                        return String.valueOf(connector.getTotalVerticalForSkierAtDay(key.getResortID(), key.getSeasonID(), key.getDayID(), key.getSkierID()));
+                    case 1:
+                        return String.valueOf(connector.getNumberOfUniqueSkiersAtResortSeasonDay(key.getResortID(), key.getSeasonID(), key.getDayID()));
+                    case 2:
+                        return answer(connector.getTotalVerticalForSkierAtResort(key.getSkierID(), key.getResortID()));
+                    default:
+                        return answer(connector.getSkierIdsAtResortSeasonDay(key.getResortID(), key.getSeasonID(), key.getDayID()));
+                }
+            }
+
+            @Override
+            public List<MongoCollection<Document>> collections() {
+                return Arrays.asList(connector.getCollection(), connector.getSkierDayCollection(),
+                        connector.getSkierResortCollection(), connector.getResortDayCollection());
+            }
+        };
+    }
+
+    private static Layout timeSeriesLayout(TimeSeriesConnector connector) {
+        return new Layout() {
+            @Override
+            public String name() {
+                return "timeseries";
+            }
+
+            @Override
+            public void insert(List<LifeRide> lifeRides) {
+                connector.insertLifeRides(lifeRides);
+            }
+
+            @Override
+            public String query(int query, LifeRide key) {
+                switch (query) {
+                    case 0:
+                        return String.valueOf(connector.getTotalVerticalForSkierAtDay(key.getResortID(), key.getSeasonID(), key.getDayID(), key.getSkierID()));
+                    case 1:
+                        return String.valueOf(connector.getNumberOfUniqueSkiersAtResortSeasonDay(key.getResortID(), key.getSeasonID(), key.getDayID()));
+                    case 2:
+                        return answer(connector.getTotalVerticalForSkierAtResort(key.getSkierID(), key.getResortID()));
+                    default:
+                        return answer(connector.getSkierIdsAtResortSeasonDay(key.getResortID(), key.getSeasonID(), key.getDayID()));
+                }
+            }
+
+            @Override
+            public List<MongoCollection<Document>> collections() {
+                return Collections.singletonList(connector.getCollection());
+            }
+        };
+    }
+
+    // Seasons sorted, neither layout guarantees an order
+    private static String answer(SeasonVerticals seasonVerticals) {
+        if (seasonVerticals == null) {
+            return "null";
+        }
+        long[] seasons = new long[seasonVerticals.size()];
+        for (int i = 0; i < seasons.length; i++) {
+            seasons[i] = ((long) seasonVerticals.getSeasonID(i) << 32) | (seasonVerticals.getTotalVert(i) & 0xFFFFFFFFL);
+        }
+        Arrays.sort(seasons);
+        return Arrays.toString(seasons);
+    }
+
+    private static String answer(int[] skierIds) {
+        int[] sorted = skierIds.clone();
+        Arrays.sort(sorted);
+        return Arrays.toString(sorted);
+    }
+
+    /**
+     * @param layout
+     * @param lifeRides
+     * @return double rides per second
+     */
+    private static double seed(Layout layout, List<LifeRide> lifeRides) {
+        long start = System.nanoTime();
+        for (int from = 0; from < lifeRides.size(); from += SEED_BATCH_SIZE) {
+            layout.insert(lifeRides.subList(from, Math.min(lifeRides.size(), from + SEED_BATCH_SIZE)));
+        }
+        return lifeRides.size() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static void printStorage(Layout layout, int rides) {
+        long storageSize = 0;
+        long indexSize = 0;
+        for (MongoCollection<Document> collection : layout.collections()) {
+            Document stats = collection.aggregate(Collections.singletonList(
+                    new Document("$collStats", new Document("storageStats", new Document())))).first();
+            if (stats != null) {
+                Document storageStats = stats.get("storageStats", Document.class);
+                storageSize += storageStats.get("storageSize", Number.class).longValue();
+                indexSize += storageStats.get("totalIndexSize", Number.class).longValue();
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "%-15s storage=%,d bytes (%.1f per ride) indexes=%,d bytes",
+                layout.name(), storageSize, (double) storageSize / rides, indexSize));
+    }
+
+    private static double percentileMicros(long[] sortedNanos, double percentile) {
+        int index = (int) Math.min(sortedNanos.length - 1, Math.ceil(percentile * sortedNanos.length) - 1);
+        return sortedNanos[Math.max(0, index)] / 1e3;
+    }
+
+    /**
+     * @param layouts
+     * @param keys rides whose keys are queried, the same for every layout
+     * @return int answers that differ between the layouts
+     */
+    private static int runQueries(List<Layout> layouts, List<LifeRide> keys) {
+        int mismatches = 0;
+        for (int query = 0; query < QUERIES.length; query++) {
+            long[][] latencies = new long[layouts.size()][keys.size()];
+            for (int i = 0; i < keys.size(); i++) {
+                String expected = null;
+                // Alternate the order so neither layout always runs on a cache warmed by the other
+                for (int n = 0; n < layouts.size(); n++) {
+                    int l = (i + n) % layouts.size();
+                    long start = System.nanoTime();
+                    String answer = layouts.get(l).query(query, keys.get(i));
+                    latencies[l][i] = System.nanoTime() - start;
+                    if (expected == null) {
+                        expected = answer;
+                    } else if (!expected.equals(answer)) {
+                        mismatches++;
+                        if (mismatches <= 10) {
+                            System.err.println("MISMATCH " + QUERIES[query] + " at " + describe(keys.get(i)) + ": " + expected + " vs " + answer);
+                        }
+                    }
+                }
+            }
+            for (int l = 0; l < layouts.size(); l++) {
+                long[] sorted = latencies[l];
+                Arrays.sort(sorted);
+                System.out.println(String.format(Locale.ROOT, "%-18s %-15s p50=%8.0fus p95=%8.0fus p99=%8.0fus",
+                        QUERIES[query], layouts.get(l).name(), percentileMicros(sorted, 0.5), percentileMicros(sorted, 0.95),
+                        percentileMicros(sorted, 0.99)));
+            }
+        }
+        return mismatches;
+    }
+
+    private static String describe(LifeRide key) {
+        return "resort " + key.getResortID() + " season " + key.getSeasonID() + " day " + key.getDayID() + " skier " + key.getSkierID();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String uri = "mongodb://127.0.0.1:27017";
+        int rides = 200000;
+        int queries = 2000;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--uri":
+                    uri = args[++i];
+                    break;
+                case "--rides":
+                    rides = Integer.parseInt(args[++i]);
+                    break;
+                case "--queries":
+                    queries = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    System.err.println("Usage: TimeSeriesBenchmark [--uri mongodb://127.0.0.1:27017] [--rides 200000] [--queries 2000]");
+                    System.exit(2);
+            }
+        }
+        int mismatches;
+        try (MongoDBConnector mongoDBConnector = new MongoDBConnector(uri, BENCHMARK_DATABASE, DbRepoImpl.MG_COLLECTION)) {
+            mongoDBConnector.getCollection().drop();
+            mongoDBConnector.getSkierDayCollection().drop();
+            mongoDBConnector.getSkierResortCollection().drop();
+            mongoDBConnector.getResortDayCollection().drop();
+            mongoDBConnector.getRollupStateCollection().drop();
+            mongoDBConnector.startRollupsOnEmptyDatabase();
+            // Dropped before TimeSeriesConnector opens it, which creates it again as a time-series collection
+            try (MongoClient mongoClient = MongoDBConnector.createMongoClient(uri)) {
+                mongoClient.getDatabase(BENCHMARK_DATABASE).getCollection(TimeSeriesDbRepoImpl.MG_COLLECTION).drop();
+            }
+            try (TimeSeriesConnector timeSeriesConnector = new TimeSeriesConnector(uri, BENCHMARK_DATABASE, TimeSeriesDbRepoImpl.MG_COLLECTION)) {
+                // Seeded rides are all version 2, the numeric-only filters are what production runs after the migration
+                mongoDBConnector.onSchemaMigrationComplete();
+                MongoIndexManager mongoIndexManager = new MongoIndexManager(mongoDBConnector);
+                mongoIndexManager.ensureIndexes(mongoIndexManager.queryShapes());
+                mongoIndexManager.close();
+                timeSeriesConnector.ensureIndexes();
+
+                List<Layout> layouts = Arrays.asList(currentLayout(mongoDBConnector), timeSeriesLayout(timeSeriesConnector));
+                List<LifeRide> lifeRides = ExplainPlanHarness.syntheticRides(rides);
+                for (Layout layout : layouts) {
+                    System.out.println(String.format(Locale.ROOT, "%-15s inserted %d rides at %.0f rides/s", layout.name(), rides,
+                            seed(layout, lifeRides)));
+                }
+                for (Layout layout : layouts) {
+                    printStorage(layout, rides);
+                }
+                Random random = new Random(7);
+                List<LifeRide> keys = new ArrayList<>(queries);
+                for (int i = 0; i < queries; i++) {
+                    keys.add(lifeRides.get(random.nextInt(lifeRides.size())));
+                }
+                // Warm-up pass: first touches load indexes and buckets into the cache
+                System.out.println("--- warm-up ---");
+                runQueries(layouts, keys.subList(0, Math.min(keys.size(), Math.max(1, queries / 10))));
+                System.out.println("--- measured ---");
+                mismatches = runQueries(layouts, keys);
+            }
+        } catch (MongoException e) {
+            System.err.println("Error: benchmark failed against " + MongoDBConnector.hosts(uri) + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        System.out.println(mismatches == 0 ? "layouts agree on every answer" : mismatches + " mismatching answer(s)");
+        System.exit(mismatches == 0 ? 0 : 1);
+    }
+
+}
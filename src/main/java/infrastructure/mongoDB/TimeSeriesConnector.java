@@ -0,0 +1,316 @@
+package infrastructure.mongoDB;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.TimeSeriesGranularity;
+import com.mongodb.client.model.TimeSeriesOptions;
+import domain.LifeRide;
+import domain.SeasonVerticalSink;
+import domain.SeasonVerticals;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.mongodb.client.model.Accumulators.sum;
+import static com.mongodb.client.model.Aggregates.*;
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gte;
+import static com.mongodb.client.model.Filters.lt;
+import static com.mongodb.client.model.Indexes.ascending;
+import static com.mongodb.client.model.Projections.*;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Time-series storage model: rides in a Mongo time-series collection (5.0+), no rollups
+ * {ts: <season start + dayID - 1 days + time minutes>, meta: {resortID, seasonID, dayID, skierID}, liftID}
+ * Mongo groups rides with the same meta into compressed buckets, so the key fields are stored once per skier-day bucket
+ * instead of once per ride, and resort-day queries scan buckets instead of rides
+ * Not idempotent: time-series collections have no unique index, so a ride delivered twice (a redelivery, or a consumer batch
+ * retried after insertLifeRides gave up) is stored and counted twice, and identical rides are not merged like in the rides model
+ */
+public class TimeSeriesConnector implements AutoCloseable {
+
+    private static final long MILLIS_PER_DAY = TimeUnit.DAYS.toMillis(1);
+    private static final long MILLIS_PER_MINUTE = TimeUnit.MINUTES.toMillis(1);
+    // Mongo code for "collection already exists"
+    private static final int NAMESPACE_EXISTS = 48;
+    // Rounds of re-inserting only the failed documents before the whole batch goes back to the caller
+    private static final int INSERT_ATTEMPTS = 3;
+
+    // Seasons are years, the last one still needs the start of the next year as its upper bound
+    public static final int MIN_SEASON = 0;
+    public static final int MAX_SEASON = Year.MAX_VALUE - 1;
+
+    private final MongoClient mongoClient;
+    private final MongoDatabase database;
+    private final String collectionName;
+    private final MongoCollection<Document> collection;
+    private volatile boolean collectionCreated;
+    // Own thread instead of the common pool, a slow createCollection or index build must not starve other async work
+    private final ExecutorService setupExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "timeseries-setup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public TimeSeriesConnector(String connectionString, String databaseName, String collectionName) throws MongoException {
+        mongoClient = MongoDBConnector.createMongoClient(connectionString);
+        database = mongoClient.getDatabase(databaseName);
+        this.collectionName = collectionName;
+        collection = database.getCollection(collectionName);
+        // Created in the background so an unreachable server doesn't block servlet initialization,
+        // the first insert waits for it instead
+        setupExecutor.execute(() -> {
+            try {
+                ensureCollection();
+                ensureIndexes();
+            } catch (MongoException e) {
+                System.err.println("Warning: failed to set up the time-series collection: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * @Description idempotent, reads don't need it: a missing collection answers like an empty one
+     */
+    void ensureCollection() throws MongoException {
+        if (collectionCreated) {
+            return;
+        }
+        synchronized (this) {
+            if (!collectionCreated) {
+                createTimeSeriesCollection(database, collectionName);
+                collectionCreated = true;
+            }
+        }
+    }
+
+    /**
+     * @param database
+     * @param collectionName
+     * @Description a plain collection can't be converted later, so the time-series collection has to exist before the first insert
+     * Granularity hours: a bucket spans up to a day, i.e. one bucket per skier-day with a few dozen rides
+     */
+    private static void createTimeSeriesCollection(MongoDatabase database, String collectionName) throws MongoException {
+        try {
+            database.createCollection(collectionName, new CreateCollectionOptions().timeSeriesOptions(
+                    new TimeSeriesOptions("ts").metaField("meta").granularity(TimeSeriesGranularity.HOURS)));
+        } catch (MongoCommandException e) {
+            if (e.getErrorCode() != NAMESPACE_EXISTS) {
+                throw e;
+            }
+        }
+    }
+
+    // Secondary indexes on meta subfields are kept per bucket, not per ride
+    void ensureIndexes() throws MongoException {
+        ensureCollection();
+        collection.createIndexes(Arrays.asList(
+                new IndexModel(ascending("meta.resortID", "meta.seasonID", "meta.dayID", "meta.skierID")),
+                new IndexModel(ascending("meta.skierID", "meta.resortID", "meta.seasonID"))
+        ));
+    }
+
+    public int getTotalVerticalForSkierAtDay(int resortId, int seasonId, int dayId, int skierId) throws MongoException {
+        if (!isSupportedSeason(seasonId)) {
+            return 0;
+        }
+        Document doc = collection.aggregate(Arrays.asList(
+                match(and(resortDayFilter(resortId, seasonId, dayId), eq("meta.skierID", skierId))),
+                group(null, sum("totalVertical", verticalExpression()))
+        )).maxTime(MongoDBConnector.AGGREGATE_MAX_TIME_MS, TimeUnit.MILLISECONDS).first();
+        return doc != null ? doc.getInteger("totalVertical", 0) : 0;
+    }
+
+    public int getNumberOfUniqueSkiersAtResortSeasonDay(int resortId, int seasonId, int dayId) throws MongoException {
+        if (!isSupportedSeason(seasonId)) {
+            return 0;
+        }
+        Document doc = collection.aggregate(Arrays.asList(
+                match(resortDayFilter(resortId, seasonId, dayId)),
+                group("$meta.skierID"),
+                count("uniqueSkiers")
+        )).maxTime(MongoDBConnector.AGGREGATE_MAX_TIME_MS, TimeUnit.MILLISECONDS).first();
+        return doc != null ? doc.getInteger("uniqueSkiers", 0) : 0;
+    }
+
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId) throws MongoException {
+        return MongoDBConnector.toSeasonVerticals(collection.aggregate(totalVerticalForSkierAtResortPipeline(
+                and(eq("meta.skierID", skierID), eq("meta.resortID", resortId))))
+                .maxTime(MongoDBConnector.AGGREGATE_MAX_TIME_MS, TimeUnit.MILLISECONDS));
+    }
+
+    public boolean streamTotalVerticalForSkierAtResort(int skierID, int resortId, SeasonVerticalSink sink) throws MongoException, IOException {
+        return MongoDBConnector.streamSeasonVerticals(collection.aggregate(totalVerticalForSkierAtResortPipeline(
+                and(eq("meta.skierID", skierID), eq("meta.resortID", resortId))))
+                .batchSize(MongoDBConnector.STREAM_BATCH_SIZE)
+                .maxTime(MongoDBConnector.AGGREGATE_MAX_TIME_MS, TimeUnit.MILLISECONDS), sink);
+    }
+
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId, int seasonId) throws MongoException {
+        if (!isSupportedSeason(seasonId)) {
+            return null;
+        }
+        // The ts range lets the server skip buckets of other seasons by their control.min/max before reading them
+        return MongoDBConnector.toSeasonVerticals(collection.aggregate(totalVerticalForSkierAtResortPipeline(and(
+                eq("meta.skierID", skierID),
+                eq("meta.resortID", resortId),
+                eq("meta.seasonID", seasonId),
+                gte("ts", new Date(dayStartMillis(seasonId, 1))),
+                // Day 367 rather than next season's day 1: dayIDs go up to 366 and day 366 of a non-leap year is January 1st
+                lt("ts", new Date(dayStartMillis(seasonId, 367)))
+        ))).maxTime(MongoDBConnector.AGGREGATE_MAX_TIME_MS, TimeUnit.MILLISECONDS));
+    }
+
+    private static List<Bson> totalVerticalForSkierAtResortPipeline(Bson filter) {
+        return Arrays.asList(
+                match(filter),
+                group("$meta.seasonID", sum("totalVert", verticalExpression())),
+                project(fields(
+                        excludeId(),
+                        computed("seasonID", "$_id"),
+                        include("totalVert")
+                ))
+        );
+    }
+
+    public int[] getSkierIdsAtResortSeasonDay(int resortId, int seasonId, int dayId) throws MongoException {
+        if (!isSupportedSeason(seasonId)) {
+            return new int[0];
+        }
+        List<Integer> skierIds = collection.distinct("meta.skierID", resortDayFilter(resortId, seasonId, dayId), Integer.class)
+                .maxTime(MongoDBConnector.AGGREGATE_MAX_TIME_MS, TimeUnit.MILLISECONDS)
+                .into(new ArrayList<>());
+        return skierIds.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public int[] getSkierIdsAtResortSeasonDayLift(int resortId, int seasonId, int dayId, int liftId) throws MongoException {
+        if (!isSupportedSeason(seasonId)) {
+            return new int[0];
+        }
+        List<Integer> skierIds = collection.distinct("meta.skierID", and(resortDayFilter(resortId, seasonId, dayId), eq("liftID", liftId)), Integer.class)
+                .maxTime(MongoDBConnector.AGGREGATE_MAX_TIME_MS, TimeUnit.MILLISECONDS)
+                .into(new ArrayList<>());
+        return skierIds.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // Meta equality selects the buckets, the ts range of the day prunes them on control.min/max as well
+    private static Bson resortDayFilter(int resortId, int seasonId, int dayId) {
+        long dayStart = dayStartMillis(seasonId, dayId);
+        return and(
+                eq("meta.resortID", resortId),
+                eq("meta.seasonID", seasonId),
+                eq("meta.dayID", dayId),
+                gte("ts", new Date(dayStart)),
+                lt("ts", new Date(dayStart + MILLIS_PER_DAY))
+        );
+    }
+
+    private static Document verticalExpression() {
+        return new Document("$multiply", Arrays.asList("$liftID", 10));
+    }
+
+    // LocalDate only covers years up to 999,999,999, seasons beyond can't be mapped to a ts and hold no rides
+    public static boolean isSupportedSeason(int seasonId) {
+        return seasonId >= MIN_SEASON && seasonId <= MAX_SEASON;
+    }
+
+    /**
+     * @param seasonId a year between MIN_SEASON and MAX_SEASON
+     * @param dayId 1-based day of the season
+     * @return long UTC epoch millis of the start of the day, seasons start on January 1st
+     */
+    public static long dayStartMillis(int seasonId, int dayId) {
+        if (!isSupportedSeason(seasonId)) {
+            throw new IllegalArgumentException("seasonID out of range: " + seasonId);
+        }
+        return LocalDate.of(seasonId, 1, 1).plusDays(dayId - 1L).toEpochDay() * MILLIS_PER_DAY;
+    }
+
+    /**
+     * @param lifeRides
+     * @Description plain inserts, the server appends them to the open bucket of their meta value
+     * Rides of a season without a ts are dropped with a warning, redelivering them would fail the same way
+     * Unordered, so a failure leaves the other documents inserted: only the failed ones are inserted again, a resent batch
+     * would store the others twice
+     */
+    public void insertLifeRides(List<LifeRide> lifeRides) throws MongoException {
+        if (lifeRides.isEmpty()) {
+            return;
+        }
+        List<Document> documents = new ArrayList<>(lifeRides.size());
+        for (LifeRide lifeRide : lifeRides) {
+            if (!isSupportedSeason(lifeRide.getSeasonID())) {
+                System.err.println("Warning: dropped ride with unsupported seasonID " + lifeRide.getSeasonID());
+                continue;
+            }
+            documents.add(toDocument(lifeRide));
+        }
+        if (documents.isEmpty()) {
+            return;
+        }
+        ensureCollection();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                collection.insertMany(documents, new InsertManyOptions().ordered(false));
+                return;
+            } catch (MongoBulkWriteException e) {
+                if (attempt == INSERT_ATTEMPTS || e.getWriteErrors().isEmpty()) {
+                    throw e;
+                }
+                List<Document> failed = new ArrayList<>(e.getWriteErrors().size());
+                for (BulkWriteError error : e.getWriteErrors()) {
+                    failed.add(documents.get(error.getIndex()));
+                }
+                System.err.println("Warning: retrying " + failed.size() + " of " + documents.size() + " time-series inserts: "
+                        + e.getWriteErrors().get(0).getMessage());
+                documents = failed;
+            }
+        }
+    }
+
+    // Fixed field order in meta, buckets are keyed by the whole meta value
+    private static Document toDocument(LifeRide lifeRide) {
+        long ts = dayStartMillis(lifeRide.getSeasonID(), lifeRide.getDayID()) + lifeRide.getTime() * MILLIS_PER_MINUTE;
+        return new Document("ts", new Date(ts))
+                .append("meta", new Document("resortID", lifeRide.getResortID())
+                        .append("seasonID", lifeRide.getSeasonID())
+                        .append("dayID", lifeRide.getDayID())
+                        .append("skierID", lifeRide.getSkierID()))
+                .append("liftID", lifeRide.getLiftID());
+    }
+
+    MongoCollection<Document> getCollection() {
+        return collection;
+    }
+
+    @Override
+    public void close() {
+        setupExecutor.shutdownNow();
+        mongoClient.close();
+    }
+
+}
@@ -0,0 +1,77 @@
+package infrastructure.mongoDB;
+
+import com.mongodb.MongoException;
+import domain.DbRepository;
+import domain.LifeRide;
+import domain.SeasonVerticalSink;
+import domain.SeasonVerticals;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * DbRepository on the time-series model, see TimeSeriesConnector
+ * Selected with -Dskier.db.model=timeseries
+ */
+public class TimeSeriesDbRepoImpl implements DbRepository {
+
+    static final String MG_COLLECTION = "liferide_ts";
+
+    private final TimeSeriesConnector timeSeriesConnector;
+
+    public TimeSeriesDbRepoImpl() throws MongoException {
+        System.out.println("init TimeSeriesDbRepoImpl");
+        this.timeSeriesConnector = new TimeSeriesConnector(DbRepoImpl.MG_CONNECTION, DbRepoImpl.MG_DATABASE, MG_COLLECTION);
+    }
+
+    @Override
+    public int getTotalVerticalForSkierAtDay(int resortId, int seasonId, int dayId, int skierId) throws MongoException {
+        return timeSeriesConnector.getTotalVerticalForSkierAtDay(resortId, seasonId, dayId, skierId);
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId) throws MongoException {
+        return timeSeriesConnector.getTotalVerticalForSkierAtResort(skierID, resortId);
+    }
+
+    @Override
+    public boolean streamTotalVerticalForSkierAtResort(int skierID, int resortId, SeasonVerticalSink sink) throws MongoException, IOException {
+        return timeSeriesConnector.streamTotalVerticalForSkierAtResort(skierID, resortId, sink);
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId, int seasonId) throws MongoException {
+        return timeSeriesConnector.getTotalVerticalForSkierAtResort(skierID, resortId, seasonId);
+    }
+
+    @Override
+    public int getNumberOfUniqueSkiersAtResortSeasonDay(int resortId, int seasonId, int dayId) throws MongoException {
+        return timeSeriesConnector.getNumberOfUniqueSkiersAtResortSeasonDay(resortId, seasonId, dayId);
+    }
+
+    @Override
+    public int[] getSkierIdsAtResortSeasonDay(int resortId, int seasonId, int dayId) throws MongoException {
+        return timeSeriesConnector.getSkierIdsAtResortSeasonDay(resortId, seasonId, dayId);
+    }
+
+    @Override
+    public int[] getSkierIdsAtResortSeasonDayLift(int resortId, int seasonId, int dayId, int liftId) throws MongoException {
+        return timeSeriesConnector.getSkierIdsAtResortSeasonDayLift(resortId, seasonId, dayId, liftId);
+    }
+
+    @Override
+    public void saveLifeRides(List<LifeRide> lifeRides) throws MongoException {
+        timeSeriesConnector.insertLifeRides(lifeRides);
+    }
+
+    @Override
+    public void close() {
+        System.out.println("destroy TimeSeriesDbRepoImpl");
+        timeSeriesConnector.close();
+    }
+}
@@ -0,0 +1,84 @@
+package infrastructure.rabbitMq;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Bounded multi-producer single-consumer ring buffer, implemented by CAS without explicit locks
+ * Each slot carries a sequence number: producers claim a slot by CAS on the tail, and publish it by bumping its sequence,
+ * so the consumer never sees a half-written slot (Vyukov's bounded queue)
+ */
+class BoundedMpscQueue<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    // Only the consumer thread moves the head
+    private long head;
+
+    BoundedMpscQueue(int capacity) {
+        // Round up to a power of two so the index is a mask instead of a modulo
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @param element
+     * @return boolean false if the queue is full
+     */
+    boolean offer(E element) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    buffer.lazySet(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+            // Another producer claimed this slot first, retry with the new tail
+        }
+    }
+
+    /**
+     * @return E, or null if the queue is empty. Must only be called by the consumer thread
+     */
+    E poll() {
+        int index = (int) head & mask;
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        E element = buffer.get(index);
+        buffer.lazySet(index, null);
+        // Mark the slot free for the producer one lap ahead
+        sequences.set(index, head + mask + 1);
+        head++;
+        return element;
+    }
+
+    boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+
+    // Approximate when called from a producer thread, only used for metrics
+    int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+}
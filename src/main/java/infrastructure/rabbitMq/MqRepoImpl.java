@@ -7,7 +7,8 @@ import domain.MqRepository;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * @author Rebecca Zhang
@@ -18,11 +19,20 @@ public class MqRepoImpl implements MqRepository {
     // Match the number of channels to the maximum number of concurrent threads (slightly larger to avoid competitiveness)
     private static final int CHANNEL_COUNT = 255;
     // On average, each queue receives 200,000 / 100 = 2000 messages
-    private static final int QUEUE_COUNT = 100;
-    private static final String EXCHANGE_NAME = "A2_directExchange";
-    private static final String HOST = "35.94.116.13"; // Change to rabbitmq's ip
-    private static final String USER = "admin";
-    private static final String PASSWORD = "123456";
+    static final int QUEUE_COUNT = 100;
+    static final String QUEUE_PREFIX = "queue_";
+    static final String EXCHANGE_NAME = "A2_directExchange";
+    // Failed messages wait in a retry queue until its TTL expires, then get dead-lettered back to EXCHANGE_NAME
+    // with their original routing key, i.e. back into the queue they came from. Delays increase per attempt
+    static final String RETRY_EXCHANGE_PREFIX = "A2_retryExchange_";
+    static final String RETRY_QUEUE_PREFIX = "retry_";
+    static final int[] RETRY_DELAYS_MS = {1000, 5000, 30000};
+    // Messages that are malformed or ran out of retries are parked here for inspection instead of being requeued
+    static final String DEAD_LETTER_EXCHANGE_NAME = "A2_deadLetterExchange";
+    static final String DEAD_LETTER_QUEUE_NAME = "dead_letter_queue";
+    static final String HOST = "35.94.116.13"; // Change to rabbitmq's ip
+    static final String USER = "admin";
+    static final String PASSWORD = "123456";
     private final Connection connection;
     private final FixedSizeChannelPool channelPool;
 
@@ -39,25 +49,50 @@ public class MqRepoImpl implements MqRepository {
 
     private void initializeExchangeAndQueues() throws Exception {
         try (Channel channel = connection.createChannel()) {
-            // 1) Declare direct exchange
-            channel.exchangeDeclare(EXCHANGE_NAME, "direct", false);
-            // 2) Declare queues and binds
-            for (int i = 0; i < QUEUE_COUNT; i++) {
-                String queueName = "queue_" + i;
-                channel.queueDeclare(queueName, false, false, false, null);
-                channel.queueBind(queueName, EXCHANGE_NAME, queueName);
-            }
+            declareExchangeAndQueues(channel);
         }
     }
 
+    /**
+     * @param channel
+     * @Description declarations are idempotent, so both the server and the consumer call this on startup
+     */
+    static void declareExchangeAndQueues(Channel channel) throws IOException {
+        // 1) Declare direct exchange
+        channel.exchangeDeclare(EXCHANGE_NAME, "direct", false);
+        // 2) Declare queues and binds
+        for (int i = 0; i < QUEUE_COUNT; i++) {
+            String queueName = QUEUE_PREFIX + i;
+            channel.queueDeclare(queueName, false, false, false, null);
+            channel.queueBind(queueName, EXCHANGE_NAME, queueName);
+        }
+        // 3) Declare one fanout exchange and TTL queue per retry delay
+        // Fanout ignores the routing key but keeps it on the message, so dead-lettering routes it back to its queue
+        for (int delay : RETRY_DELAYS_MS) {
+            String retryExchangeName = RETRY_EXCHANGE_PREFIX + delay;
+            String retryQueueName = RETRY_QUEUE_PREFIX + delay;
+            Map<String, Object> arguments = new HashMap<>();
+            arguments.put("x-message-ttl", delay);
+            arguments.put("x-dead-letter-exchange", EXCHANGE_NAME);
+            channel.exchangeDeclare(retryExchangeName, "fanout", false);
+            channel.queueDeclare(retryQueueName, false, false, false, arguments);
+            channel.queueBind(retryQueueName, retryExchangeName, "");
+        }
+        // 4) Declare dead-letter exchange and queue
+        channel.exchangeDeclare(DEAD_LETTER_EXCHANGE_NAME, "fanout", false);
+        channel.queueDeclare(DEAD_LETTER_QUEUE_NAME, false, false, false, null);
+        channel.queueBind(DEAD_LETTER_QUEUE_NAME, DEAD_LETTER_EXCHANGE_NAME, "");
+    }
+
     @Override
-    public void sendMessageToMQ(String message) throws IOException {
+    public void sendMessageToMQ(String message, int partitionKey) throws IOException {
         Channel channel = null;
         try {
             channel = channelPool.borrowChannel();
-            // Random strategy: ThreadLocalRandom‘s randomness and performance is better than Random, and o need to manually remove the ThreadLocal
-            int queueIndex = ThreadLocalRandom.current().nextInt(QUEUE_COUNT);
-            String routingKey = "queue_" + queueIndex;
+            // Hash strategy: all rides of a skier go to the same queue, so the consumer sees them in publish order
+            // Sequential skierIDs still spread evenly across queues
+            int queueIndex = partitionIndex(partitionKey, QUEUE_COUNT);
+            String routingKey = QUEUE_PREFIX + queueIndex;
             // The default is transient messages
             channel.basicPublish(EXCHANGE_NAME, routingKey, null, message.getBytes(StandardCharsets.UTF_8));
         } finally {
@@ -65,6 +100,12 @@ public class MqRepoImpl implements MqRepository {
         }
     }
 
+    static int partitionIndex(int partitionKey, int partitionCount) {
+        // Spread sequential keys before taking the modulo
+        int hash = partitionKey * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), partitionCount);
+    }
+
     @Override
     public void close() throws Exception {
         System.out.println("destroy MqRepoImpl");
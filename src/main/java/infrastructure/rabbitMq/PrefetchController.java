@@ -0,0 +1,119 @@
+package infrastructure.rabbitMq;
+
+import com.rabbitmq.client.Channel;
+import infrastructure.metrics.Metrics;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Adjusts a channel's prefetch at runtime so that a delivered message waits about targetLatency before it's acked
+ * Too low a prefetch starves the consumer while acks travel to the broker, too high a prefetch only piles up
+ * messages in consumer memory that get redelivered if the consumer dies
+ */
+public class PrefetchController {
+
+    static final int MIN_PREFETCH = 1;
+    static final int MAX_PREFETCH = 1000;
+    private static final double EWMA_WEIGHT = 0.3;
+
+    private final Channel channel;
+    private final String probeQueueName;
+    private final long targetLatencyNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAccumulator maxInFlight = new LongAccumulator(Math::max, 0);
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder inFlightNanos = new LongAdder();
+    private final LongAdder processingNanos = new LongAdder();
+    // Only touched by the scheduler thread in adjust(), volatile for the metrics gauges
+    private volatile int prefetch;
+    private volatile long brokerRttNanos;
+    private volatile long avgInFlightNanos;
+    private volatile long avgProcessingNanos;
+    private long lastAdjustNanos = System.nanoTime();
+
+    public PrefetchController(String name, Channel channel, String probeQueueName, int initialPrefetch, long targetLatencyMs) {
+        this.channel = channel;
+        this.probeQueueName = probeQueueName;
+        this.prefetch = initialPrefetch;
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMs);
+        Metrics.gauge("consumer." + name + ".prefetch", () -> prefetch);
+        Metrics.gauge("consumer." + name + ".inFlight", inFlight::get);
+        Metrics.gauge("consumer." + name + ".inFlightLatencyMicros", () -> TimeUnit.NANOSECONDS.toMicros(avgInFlightNanos));
+        Metrics.gauge("consumer." + name + ".processingMicros", () -> TimeUnit.NANOSECONDS.toMicros(avgProcessingNanos));
+        Metrics.gauge("consumer." + name + ".brokerRttMicros", () -> TimeUnit.NANOSECONDS.toMicros(brokerRttNanos));
+    }
+
+    /**
+     * @Description set the per-consumer cap once before basicConsume, adjust() then moves the channel-wide limit under it
+     * basic.qos with global=false only applies to consumers started afterwards, global=true applies to the channel right away
+     */
+    public void start() throws IOException {
+        channel.basicQos(MAX_PREFETCH, false);
+        channel.basicQos(prefetch, true);
+    }
+
+    public long onDelivery() {
+        maxInFlight.accumulate(inFlight.incrementAndGet());
+        return System.nanoTime();
+    }
+
+    public void onAck(long deliveredAtNanos, long processingTimeNanos) {
+        inFlight.decrementAndGet();
+        completed.increment();
+        inFlightNanos.add(System.nanoTime() - deliveredAtNanos);
+        processingNanos.add(processingTimeNanos);
+    }
+
+    /**
+     * @Description called periodically from a single scheduler thread
+     */
+    public void adjust() throws IOException {
+        long now = System.nanoTime();
+        double windowSeconds = (now - lastAdjustNanos) / 1e9;
+        lastAdjustNanos = now;
+        long count = completed.sumThenReset();
+        long inFlightSum = inFlightNanos.sumThenReset();
+        long processingSum = processingNanos.sumThenReset();
+        boolean saturated = maxInFlight.getThenReset() >= prefetch;
+        // 1) Measure the broker round trip with a cheap synchronous call on the same channel
+        long rttStart = System.nanoTime();
+        channel.queueDeclarePassive(probeQueueName);
+        brokerRttNanos = ewma(brokerRttNanos, System.nanoTime() - rttStart);
+        if (count == 0) {
+            return;
+        }
+        avgInFlightNanos = ewma(avgInFlightNanos, inFlightSum / count);
+        avgProcessingNanos = ewma(avgProcessingNanos, processingSum / count);
+        double throughputPerNano = count / (windowSeconds * 1e9);
+        // 2) Little's law: messages in flight = throughput * time in flight
+        long desired;
+        if (saturated && avgInFlightNanos < targetLatencyNanos / 2) {
+            // Every slot was used and messages still go through fast -> prefetch is what limits throughput
+            desired = (long) prefetch * 2;
+        } else {
+            desired = (long) Math.ceil(throughputPerNano * targetLatencyNanos);
+        }
+        // 3) Never go below what keeps the link busy while a message is processed and its ack travels back
+        long floor = (long) Math.ceil(throughputPerNano * (brokerRttNanos + avgProcessingNanos)) + 1;
+        int newPrefetch = (int) Math.max(MIN_PREFETCH, Math.min(MAX_PREFETCH, Math.max(desired, floor)));
+        // Ignore small changes, every basicQos is a synchronous round trip
+        if (Math.abs(newPrefetch - prefetch) > Math.max(1, prefetch / 10)) {
+            channel.basicQos(newPrefetch, true);
+            prefetch = newPrefetch;
+        }
+    }
+
+    private static long ewma(long average, long sample) {
+        return average == 0 ? sample : (long) (EWMA_WEIGHT * sample + (1 - EWMA_WEIGHT) * average);
+    }
+
+}
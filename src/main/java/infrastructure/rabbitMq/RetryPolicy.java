@@ -0,0 +1,82 @@
+package infrastructure.rabbitMq;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+import infrastructure.metrics.Metrics;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static infrastructure.rabbitMq.MqRepoImpl.DEAD_LETTER_EXCHANGE_NAME;
+import static infrastructure.rabbitMq.MqRepoImpl.RETRY_DELAYS_MS;
+import static infrastructure.rabbitMq.MqRepoImpl.RETRY_EXCHANGE_PREFIX;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+public class RetryPolicy {
+
+    static final String RETRY_COUNT_HEADER = "x-retry-count";
+    static final String FAILURE_CLASS_HEADER = "x-failure-class";
+    // One attempt per retry queue, after the last delay the message goes to the dead-letter exchange
+    static final int MAX_RETRIES = RETRY_DELAYS_MS.length;
+
+    public enum FailureClass {
+        // Retrying a message that can't be parsed will never succeed
+        MALFORMED_MESSAGE(false),
+        DB_ERROR(true),
+        UNEXPECTED(true);
+
+        private final boolean retryable;
+
+        FailureClass(boolean retryable) {
+            this.retryable = retryable;
+        }
+    }
+
+    /**
+     * @param channel
+     * @param envelope
+     * @param properties
+     * @param body
+     * @param failureClass
+     * @Description republish a failed delivery to the next retry queue or to the dead-letter exchange, then ack it
+     * Never nack with requeue=true: that redelivers immediately and forever, which is the requeue storm we avoid here
+     */
+    public void handleFailure(Channel channel, Envelope envelope, AMQP.BasicProperties properties, byte[] body,
+                              FailureClass failureClass) throws IOException {
+        String failureName = failureClass.name().toLowerCase();
+        Metrics.counter("consumer.failed." + failureName).increment();
+        int retryCount = getRetryCount(properties);
+        Map<String, Object> headers = new HashMap<>();
+        if (properties.getHeaders() != null) {
+            headers.putAll(properties.getHeaders());
+        }
+        headers.put(FAILURE_CLASS_HEADER, failureClass.name());
+        if (failureClass.retryable && retryCount < MAX_RETRIES) {
+            headers.put(RETRY_COUNT_HEADER, retryCount + 1);
+            String retryExchangeName = RETRY_EXCHANGE_PREFIX + RETRY_DELAYS_MS[retryCount];
+            // Keep the original routing key, it's what routes the message back to its queue after the TTL
+            channel.basicPublish(retryExchangeName, envelope.getRoutingKey(), properties.builder().headers(headers).build(), body);
+            Metrics.counter("consumer.retried." + failureName).increment();
+        } else {
+            headers.put(RETRY_COUNT_HEADER, retryCount);
+            channel.basicPublish(DEAD_LETTER_EXCHANGE_NAME, envelope.getRoutingKey(), properties.builder().headers(headers).build(), body);
+            Metrics.counter("consumer.deadLettered." + failureName).increment();
+        }
+        channel.basicAck(envelope.getDeliveryTag(), false);
+    }
+
+    private static int getRetryCount(AMQP.BasicProperties properties) {
+        if (properties.getHeaders() == null) {
+            return 0;
+        }
+        Object retryCount = properties.getHeaders().get(RETRY_COUNT_HEADER);
+        // The broker hands integer headers back as Integer or Long depending on how they were encoded
+        return retryCount instanceof Number ? ((Number) retryCount).intValue() : 0;
+    }
+
+}
@@ -0,0 +1,265 @@
+package infrastructure.rabbitMq;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.mongodb.MongoException;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import domain.DbRepository;
+import domain.LifeRide;
+import infrastructure.metrics.Metrics;
+import infrastructure.mongoDB.DbRepositoryFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static infrastructure.rabbitMq.MqRepoImpl.QUEUE_COUNT;
+import static infrastructure.rabbitMq.MqRepoImpl.QUEUE_PREFIX;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Consumes LifeRide messages from the queues declared by MqRepoImpl and writes them to the DB
+ * Run standalone: java -cp A2-Server.jar infrastructure.rabbitMq.RideConsumer
+ */
+public class RideConsumer implements AutoCloseable {
+
+    // Each channel consumes QUEUE_COUNT / CHANNEL_COUNT queues, deliveries on one channel are dispatched sequentially
+    private static final int CHANNEL_COUNT = 20;
+    private static final int INITIAL_PREFETCH_COUNT = 50;
+    private static final int PREFETCH_ADJUST_SECONDS = 2;
+    // How long a delivered message may wait in the consumer before it's acked, the prefetch controllers aim for it
+    private static final long TARGET_IN_FLIGHT_LATENCY_MS = Long.getLong("consumer.targetInFlightLatencyMs", 200);
+    // Rides of one skier are processed in order on one lane thread
+    private static final int LANE_COUNT = 32;
+    private static final int LANE_MAILBOX_CAPACITY = 1024;
+    // Rides that queued up on a lane while it was writing go to the DB together
+    private static final int LANE_MAX_BATCH_SIZE = 100;
+    private static final int METRICS_REPORT_SECONDS = 10;
+    private static final Gson gson = new Gson();
+
+    private final DbRepository dbRepository;
+    private final ExecutorService dispatchExecutor;
+    private final Connection connection;
+    private final RetryPolicy retryPolicy = new RetryPolicy();
+    private final SkierLanes<PendingRide> skierLanes = new SkierLanes<>(LANE_COUNT, LANE_MAILBOX_CAPACITY, LANE_MAX_BATCH_SIZE, this::processBatch);
+    private final List<Channel> channels = new ArrayList<>();
+    private final Map<String, Channel> consumerTags = new LinkedHashMap<>();
+    private final List<PrefetchController> prefetchControllers = new ArrayList<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    public RideConsumer(DbRepository dbRepository) throws Exception {
+        System.out.println("init RideConsumer");
+        this.dbRepository = dbRepository;
+        ConnectionFactory factory = new ConnectionFactory();
+        factory.setHost(MqRepoImpl.HOST);
+        factory.setUsername(MqRepoImpl.USER);
+        factory.setPassword(MqRepoImpl.PASSWORD);
+        // One dispatch thread per channel so channels are processed in parallel
+        this.dispatchExecutor = Executors.newFixedThreadPool(CHANNEL_COUNT);
+        this.connection = factory.newConnection(dispatchExecutor);
+    }
+
+    public void start() throws IOException {
+        try (Channel channel = connection.createChannel()) {
+            MqRepoImpl.declareExchangeAndQueues(channel);
+        } catch (Exception e) {
+            throw new IOException("Error: failed to declare exchange and queues!", e);
+        }
+        for (int i = 0; i < CHANNEL_COUNT; i++) {
+            Channel channel = connection.createChannel();
+            PrefetchController prefetchController = new PrefetchController("channel." + i, channel, QUEUE_PREFIX + i,
+                    INITIAL_PREFETCH_COUNT, TARGET_IN_FLIGHT_LATENCY_MS);
+            prefetchController.start();
+            for (int queueIndex = i; queueIndex < QUEUE_COUNT; queueIndex += CHANNEL_COUNT) {
+                RideDeliveryConsumer consumer = new RideDeliveryConsumer(channel, prefetchController);
+                consumerTags.put(channel.basicConsume(QUEUE_PREFIX + queueIndex, false, consumer), channel);
+            }
+            channels.add(channel);
+            prefetchControllers.add(prefetchController);
+        }
+        scheduler.scheduleAtFixedRate(this::adjustPrefetch, PREFETCH_ADJUST_SECONDS, PREFETCH_ADJUST_SECONDS, TimeUnit.SECONDS);
+        scheduler.scheduleAtFixedRate(() -> System.out.println("metrics " + Metrics.snapshot()),
+                METRICS_REPORT_SECONDS, METRICS_REPORT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void adjustPrefetch() {
+        for (PrefetchController prefetchController : prefetchControllers) {
+            try {
+                prefetchController.adjust();
+            } catch (Exception e) {
+                // Keep the scheduled task alive, an exception would cancel all further runs
+                System.err.println("Error: failed to adjust prefetch: " + e.getMessage());
+            }
+        }
+    }
+
+    private class RideDeliveryConsumer extends DefaultConsumer {
+
+        private final PrefetchController prefetchController;
+
+        RideDeliveryConsumer(Channel channel, PrefetchController prefetchController) {
+            super(channel);
+            this.prefetchController = prefetchController;
+        }
+
+        @Override
+        public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) throws IOException {
+            Channel channel = getChannel();
+            long deliveredAtNanos = prefetchController.onDelivery();
+            // 1. Parse message, a malformed message is dead-lettered straight away
+            LifeRide lifeRide = parseLifeRide(body);
+            if (lifeRide == null) {
+                try {
+                    retryPolicy.handleFailure(channel, envelope, properties, body, RetryPolicy.FailureClass.MALFORMED_MESSAGE);
+                } finally {
+                    prefetchController.onAck(deliveredAtNanos, 0);
+                }
+                return;
+            }
+            // 2. Hand over to the skier's lane, the dispatch thread goes back to the next delivery
+            skierLanes.dispatch(lifeRide.getSkierID(),
+                    new PendingRide(channel, envelope, properties, body, lifeRide, prefetchController, deliveredAtNanos));
+        }
+    }
+
+    /**
+     * A delivery waiting on its skier's lane
+     */
+    private static class PendingRide {
+
+        private final Channel channel;
+        private final Envelope envelope;
+        private final AMQP.BasicProperties properties;
+        private final byte[] body;
+        private final LifeRide lifeRide;
+        private final PrefetchController prefetchController;
+        private final long deliveredAtNanos;
+
+        PendingRide(Channel channel, Envelope envelope, AMQP.BasicProperties properties, byte[] body, LifeRide lifeRide,
+                    PrefetchController prefetchController, long deliveredAtNanos) {
+            this.channel = channel;
+            this.envelope = envelope;
+            this.properties = properties;
+            this.body = body;
+            this.lifeRide = lifeRide;
+            this.prefetchController = prefetchController;
+            this.deliveredAtNanos = deliveredAtNanos;
+        }
+    }
+
+    /**
+     * @param batch
+     * @Description runs on a lane thread, writes the whole batch in one call so rollup updates of a skier are coalesced
+     * Acks and retry publishes come from lane threads, the client serializes frames per channel so this is safe
+     */
+    private void processBatch(List<PendingRide> batch) {
+        long processingStartNanos = System.nanoTime();
+        List<LifeRide> lifeRides = new ArrayList<>(batch.size());
+        for (PendingRide pendingRide : batch) {
+            lifeRides.add(pendingRide.lifeRide);
+        }
+        // 1) Write to DB, on failure every ride of the batch goes through the bounded retry queues
+        // The rides and bucketed models identify rides by their fields, a retry doesn't store or count the rides that made it the first time
+        // The time-series model has no ride identity and re-inserts only its failed documents, a resent batch is stored twice
+        RetryPolicy.FailureClass failureClass = null;
+        try {
+            dbRepository.saveLifeRides(lifeRides);
+        } catch (MongoException e) {
+            failureClass = RetryPolicy.FailureClass.DB_ERROR;
+        } catch (Exception e) {
+            failureClass = RetryPolicy.FailureClass.UNEXPECTED;
+        }
+        long processingTimeNanos = (System.nanoTime() - processingStartNanos) / batch.size();
+        // 2) Ack only after the write succeeded
+        for (PendingRide pendingRide : batch) {
+            try {
+                if (failureClass == null) {
+                    pendingRide.channel.basicAck(pendingRide.envelope.getDeliveryTag(), false);
+                    Metrics.counter("consumer.processed").increment();
+                } else {
+                    retryPolicy.handleFailure(pendingRide.channel, pendingRide.envelope, pendingRide.properties, pendingRide.body, failureClass);
+                }
+            } catch (IOException e) {
+                // The delivery stays unacked and is redelivered by the broker once the channel is recovered
+                System.err.println("Error: failed to ack or retry delivery " + pendingRide.envelope.getDeliveryTag());
+            } finally {
+                pendingRide.prefetchController.onAck(pendingRide.deliveredAtNanos, processingTimeNanos);
+            }
+        }
+    }
+
+    /**
+     * @param body
+     * @return LifeRide, or null if the message is not a complete LifeRide
+     */
+    private static LifeRide parseLifeRide(byte[] body) {
+        LifeRide lifeRide;
+        try {
+            lifeRide = gson.fromJson(new String(body, StandardCharsets.UTF_8), LifeRide.class);
+        } catch (JsonSyntaxException e) {
+            return null;
+        }
+        if (lifeRide == null || lifeRide.getResortID() == null || lifeRide.getSeasonID() == null || lifeRide.getDayID() == null
+                || lifeRide.getSkierID() == null || lifeRide.getTime() == null || lifeRide.getLiftID() == null) {
+            return null;
+        }
+        return lifeRide;
+    }
+
+    @Override
+    public void close() throws Exception {
+        System.out.println("destroy RideConsumer");
+        scheduler.shutdown();
+        // 1) Stop new deliveries, then drain the lanes while the channels are still open so in-flight rides get acked
+        for (Map.Entry<String, Channel> consumerTag : consumerTags.entrySet()) {
+            if (consumerTag.getValue().isOpen()) {
+                consumerTag.getValue().basicCancel(consumerTag.getKey());
+            }
+        }
+        skierLanes.close();
+        // 2) Unacked deliveries are requeued by the broker when their channel closes
+        for (Channel channel : channels) {
+            if (channel.isOpen()) {
+                channel.close();
+            }
+        }
+        if (connection.isOpen()) {
+            connection.close();
+        }
+        dispatchExecutor.shutdown();
+        dbRepository.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (DbRepositoryFactory.isInMemoryModel()) {
+            System.err.println("Error: skier.db.model memory keeps rides in the server's heap, RideConsumer can't store into it");
+            System.exit(1);
+        }
+        RideConsumer rideConsumer = new RideConsumer(DbRepositoryFactory.createDbRepository());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                rideConsumer.close();
+            } catch (Exception e) {
+                System.err.println("Error: failed to close RideConsumer!");
+            }
+        }));
+        rideConsumer.start();
+    }
+
+}
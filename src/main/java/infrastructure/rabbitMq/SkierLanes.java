@@ -0,0 +1,117 @@
+package infrastructure.rabbitMq;
+
+import infrastructure.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Partitions work by skierID onto single-threaded lanes
+ * All items of one skier are handled on the same lane thread in dispatch order, so per-skier state needs no synchronization
+ * A lane drains whatever is waiting in its mailbox (up to maxBatchSize) and hands it to the batch handler in one call
+ */
+public class SkierLanes<T> implements AutoCloseable {
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final List<Lane<T>> lanes;
+
+    public SkierLanes(int laneCount, int mailboxCapacity, int maxBatchSize, Consumer<List<T>> batchHandler) {
+        System.out.println("init SkierLanes");
+        this.lanes = new ArrayList<>(laneCount);
+        for (int i = 0; i < laneCount; i++) {
+            Lane<T> lane = new Lane<>(i, mailboxCapacity, maxBatchSize, batchHandler);
+            lanes.add(lane);
+            lane.thread.start();
+            Metrics.gauge("consumer.lane." + i + ".mailboxSize", () -> lane.mailbox.size());
+        }
+    }
+
+    /**
+     * @param skierId
+     * @param item
+     * @Description blocks the caller while the lane's mailbox is full -> back-pressure onto the MQ dispatch thread
+     */
+    public void dispatch(int skierId, T item) {
+        Lane<T> lane = lanes.get(MqRepoImpl.partitionIndex(skierId, lanes.size()));
+        if (!lane.mailbox.offer(item)) {
+            Metrics.counter("consumer.lane.backpressure").increment();
+            while (!lane.mailbox.offer(item)) {
+                LockSupport.parkNanos(FULL_PARK_NANOS);
+            }
+        }
+        if (lane.parked) {
+            LockSupport.unpark(lane.thread);
+        }
+    }
+
+    private static class Lane<T> implements Runnable {
+
+        private final BoundedMpscQueue<T> mailbox;
+        private final int maxBatchSize;
+        private final Consumer<List<T>> batchHandler;
+        private final Thread thread;
+        private volatile boolean parked;
+        private volatile boolean running = true;
+
+        Lane(int index, int mailboxCapacity, int maxBatchSize, Consumer<List<T>> batchHandler) {
+            this.mailbox = new BoundedMpscQueue<>(mailboxCapacity);
+            this.maxBatchSize = maxBatchSize;
+            this.batchHandler = batchHandler;
+            this.thread = new Thread(this, "skier-lane-" + index);
+        }
+
+        @Override
+        public void run() {
+            List<T> batch = new ArrayList<>(maxBatchSize);
+            while (running || !mailbox.isEmpty()) {
+                T item;
+                while (batch.size() < maxBatchSize && (item = mailbox.poll()) != null) {
+                    batch.add(item);
+                }
+                if (batch.isEmpty()) {
+                    // Publish the parked flag before re-checking the mailbox, so a concurrent dispatch either sees
+                    // the flag and unparks us, or its task is seen by the re-check
+                    parked = true;
+                    if (mailbox.isEmpty() && running) {
+                        LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    }
+                    parked = false;
+                    continue;
+                }
+                try {
+                    batchHandler.accept(batch);
+                } catch (Throwable e) {
+                    // An Error too: a dead lane would leave dispatch parked forever on its full mailbox
+                    System.err.println("Error: batch failed on " + thread.getName() + ": " + e);
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * @Description stop accepting work and wait for the lanes to drain their mailboxes
+     */
+    @Override
+    public void close() throws InterruptedException {
+        System.out.println("destroy SkierLanes");
+        for (Lane<T> lane : lanes) {
+            lane.running = false;
+            LockSupport.unpark(lane.thread);
+        }
+        for (Lane<T> lane : lanes) {
+            lane.thread.join();
+        }
+    }
+
+}
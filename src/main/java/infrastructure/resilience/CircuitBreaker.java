@@ -0,0 +1,134 @@
+package infrastructure.resilience;
+
+import infrastructure.metrics.Metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Count-based circuit breaker
+ * CLOSED: calls pass, the outcomes of the last windowSize calls are kept; opens when at least minCalls were made
+ * and the failure rate reaches failureRateThreshold
+ * OPEN: calls are rejected until openMs has passed
+ * HALF_OPEN: a single probe call passes, its success closes the breaker, its failure opens it again
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final boolean[] window;
+    private final int minCalls;
+    private final double failureRateThreshold;
+    private final long openNanos;
+    private final LongAdder rejected;
+    private final LongAdder opened;
+
+    // Guarded by this, calls are short compared to a DB round trip
+    private State state = State.CLOSED;
+    private int windowIndex;
+    private int windowCount;
+    private int windowFailures;
+    private long openedAtNanos;
+    private boolean probeInFlight;
+
+    public CircuitBreaker(String name, int windowSize, int minCalls, double failureRateThreshold, long openMs) {
+        this.name = name;
+        this.window = new boolean[windowSize];
+        this.minCalls = minCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+        this.rejected = Metrics.counter("circuit." + name + ".rejected");
+        this.opened = Metrics.counter("circuit." + name + ".opened");
+        Metrics.gauge("circuit." + name + ".state", () -> getState().ordinal());
+    }
+
+    /**
+     * @return boolean true if the call may go ahead, it must then be reported with onSuccess or onFailure
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAtNanos < openNanos) {
+                    rejected.increment();
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+                return true;
+            default:
+                if (probeInFlight) {
+                    rejected.increment();
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            System.out.println("circuit " + name + ": probe succeeded, closing");
+            state = State.CLOSED;
+            probeInFlight = false;
+            resetWindow();
+            return;
+        }
+        record(false);
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && windowCount >= minCalls && (double) windowFailures / windowCount >= failureRateThreshold) {
+            open();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failure) {
+        if (windowCount == window.length) {
+            if (window[windowIndex]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    private void open() {
+        System.err.println("Warning: circuit " + name + " opened, rejecting calls for " + TimeUnit.NANOSECONDS.toMillis(openNanos) + "ms");
+        state = State.OPEN;
+        openedAtNanos = System.nanoTime();
+        probeInFlight = false;
+        opened.increment();
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        windowIndex = 0;
+        windowCount = 0;
+        windowFailures = 0;
+    }
+
+}
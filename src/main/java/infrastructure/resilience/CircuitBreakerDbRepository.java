@@ -0,0 +1,113 @@
+package infrastructure.resilience;
+
+import domain.DbRepository;
+import domain.LifeRide;
+import domain.RepositoryUnavailableException;
+import domain.SeasonVerticalSink;
+import domain.SeasonVerticals;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Decorator that puts a CircuitBreaker around the GETs
+ * Timeouts (maxTimeMS, pool wait) and errors count as failures; while open, calls fail fast with RepositoryUnavailableException
+ * Writes are not guarded, the consumer already retries them through the MQ
+ */
+public class CircuitBreakerDbRepository implements DbRepository {
+
+    private final DbRepository dbRepository;
+    private final CircuitBreaker circuitBreaker;
+
+    public CircuitBreakerDbRepository(DbRepository dbRepository, CircuitBreaker circuitBreaker) {
+        System.out.println("init CircuitBreakerDbRepository");
+        this.dbRepository = dbRepository;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    private <T> T call(Callable<T> query) throws Exception {
+        if (!circuitBreaker.tryAcquire()) {
+            throw new RepositoryUnavailableException("circuit open");
+        }
+        boolean success = false;
+        try {
+            T result = query.call();
+            success = true;
+            return result;
+        } catch (IOException e) {
+            // Writing to the client failed, not the DB
+            success = true;
+            throw e;
+        } finally {
+            // Every acquired call is reported, Errors as failures: an unreported HALF_OPEN probe would reject all calls for good
+            if (success) {
+                circuitBreaker.onSuccess();
+            } else {
+                circuitBreaker.onFailure();
+            }
+        }
+    }
+
+    @Override
+    public int getNumberOfUniqueSkiersAtResortSeasonDay(int resortId, int seasonId, int dayId) throws Exception {
+        return call(() -> dbRepository.getNumberOfUniqueSkiersAtResortSeasonDay(resortId, seasonId, dayId));
+    }
+
+    @Override
+    public int getTotalVerticalForSkierAtDay(int resortId, int seasonId, int dayId, int skierId) throws Exception {
+        return call(() -> dbRepository.getTotalVerticalForSkierAtDay(resortId, seasonId, dayId, skierId));
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId) throws Exception {
+        return call(() -> dbRepository.getTotalVerticalForSkierAtResort(skierID, resortId));
+    }
+
+    @Override
+    public boolean streamTotalVerticalForSkierAtResort(int skierID, int resortId, SeasonVerticalSink sink) throws Exception {
+        return call(() -> dbRepository.streamTotalVerticalForSkierAtResort(skierID, resortId, sink));
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId, int seasonId) throws Exception {
+        return call(() -> dbRepository.getTotalVerticalForSkierAtResort(skierID, resortId, seasonId));
+    }
+
+    @Override
+    public int[] getSkierIdsAtResortSeasonDay(int resortId, int seasonId, int dayId) throws Exception {
+        return call(() -> dbRepository.getSkierIdsAtResortSeasonDay(resortId, seasonId, dayId));
+    }
+
+    @Override
+    public int[] getSkierIdsAtResortSeasonDayLift(int resortId, int seasonId, int dayId, int liftId) throws Exception {
+        return call(() -> dbRepository.getSkierIdsAtResortSeasonDayLift(resortId, seasonId, dayId, liftId));
+    }
+
+    @Override
+    public void saveLifeRides(List<LifeRide> lifeRides) throws Exception {
+        dbRepository.saveLifeRides(lifeRides);
+    }
+
+    @Override
+    public boolean isReady() {
+        return dbRepository.isReady();
+    }
+
+    @Override
+    public void onLifeRidePublished(LifeRide lifeRide) {
+        dbRepository.onLifeRidePublished(lifeRide);
+    }
+
+    @Override
+    public void close() throws Exception {
+        System.out.println("destroy CircuitBreakerDbRepository");
+        dbRepository.close();
+    }
+
+}
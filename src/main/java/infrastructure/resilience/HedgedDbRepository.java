@@ -0,0 +1,207 @@
+package infrastructure.resilience;
+
+import domain.DbRepository;
+import domain.LifeRide;
+import domain.SeasonVerticalSink;
+import domain.SeasonVerticals;
+import infrastructure.metrics.Metrics;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Decorator for hedged reads: a GET goes to the primary route first; if it hasn't answered after the primary's
+ * recent p95 latency, the same query goes to the hedge route (e.g. a secondary within bounded staleness)
+ * and whichever answers first wins. The loser is cancelled
+ * Only ~5% of GETs are duplicated, but those are exactly the ones stuck behind a checkpoint on one member
+ * Cancelling interrupts the loser's thread. A query already on the wire keeps running on the server until it
+ * answers or hits its maxTimeMS, so the loser's connection comes back within the query budget
+ * The pool is bounded: when it is saturated the primary runs on the caller's thread and nothing is hedged,
+ * a latency spike must not double the load on the DB
+ * Only the primary's latency feeds the hedge delay, hedged answers would pull the percentile down
+ */
+public class HedgedDbRepository implements DbRepository {
+
+    private final DbRepository primary;
+    private final DbRepository hedge;
+    private final LatencyTracker latencyTracker;
+    private final long minDelayNanos;
+    private final LongAdder fired = Metrics.counter("hedge.fired");
+    private final LongAdder won = Metrics.counter("hedge.won");
+    private final LongAdder skipped = Metrics.counter("hedge.skipped");
+    private final ExecutorService executor;
+
+    /**
+     * @param primary
+     * @param hedge
+     * @param percentile of the primary's latency after which the hedge fires, e.g. 0.95
+     * @param minDelayMs
+     * @param maxThreads threads for primaries and hedges together, no queue: a full pool rejects instead of piling up
+     */
+    public HedgedDbRepository(DbRepository primary, DbRepository hedge, double percentile, long minDelayMs, int maxThreads) {
+        System.out.println("init HedgedDbRepository");
+        this.primary = primary;
+        this.hedge = hedge;
+        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "hedged-read");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        threadPool.allowCoreThreadTimeOut(true);
+        this.executor = threadPool;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMs);
+        this.latencyTracker = new LatencyTracker(1024, percentile, 64, minDelayNanos);
+        Metrics.gauge("hedge.delayMs", () -> TimeUnit.NANOSECONDS.toMillis(hedgeDelayNanos()));
+    }
+
+    private long hedgeDelayNanos() {
+        return Math.max(minDelayNanos, latencyTracker.getPercentileNanos());
+    }
+
+    private <T> T call(Callable<T> primaryCall, Callable<T> hedgeCall) throws Exception {
+        long start = System.nanoTime();
+        AtomicBoolean recorded = new AtomicBoolean();
+        Callable<T> timedPrimaryCall = () -> {
+            try {
+                return primaryCall.call();
+            } finally {
+                recordPrimary(start, recorded);
+            }
+        };
+        CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+        Future<T> primaryFuture;
+        try {
+            primaryFuture = completionService.submit(timedPrimaryCall);
+        } catch (RejectedExecutionException e) {
+            skipped.increment();
+            return timedPrimaryCall.call();
+        }
+        Future<T> first = completionService.poll(hedgeDelayNanos(), TimeUnit.NANOSECONDS);
+        if (first != null) {
+            return result(first);
+        }
+        Future<T> hedgeFuture;
+        try {
+            hedgeFuture = completionService.submit(hedgeCall);
+        } catch (RejectedExecutionException e) {
+            skipped.increment();
+            return result(primaryFuture);
+        }
+        fired.increment();
+        try {
+            Future<T> winner = completionService.take();
+            T result;
+            try {
+                result = result(winner);
+            } catch (Exception e) {
+                // One route failed, the other may still answer
+                winner = completionService.take();
+                result = result(winner);
+            }
+            if (winner == hedgeFuture) {
+                won.increment();
+            }
+            return result;
+        } finally {
+            // A primary that lost is cut off here, its latency is at least the time so far, which is past the hedge delay
+            recordPrimary(start, recorded);
+            primaryFuture.cancel(true);
+            hedgeFuture.cancel(true);
+        }
+    }
+
+    private void recordPrimary(long start, AtomicBoolean recorded) {
+        if (recorded.compareAndSet(false, true)) {
+            latencyTracker.record(System.nanoTime() - start);
+        }
+    }
+
+    private static <T> T result(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    @Override
+    public int getNumberOfUniqueSkiersAtResortSeasonDay(int resortId, int seasonId, int dayId) throws Exception {
+        return call(() -> primary.getNumberOfUniqueSkiersAtResortSeasonDay(resortId, seasonId, dayId),
+                () -> hedge.getNumberOfUniqueSkiersAtResortSeasonDay(resortId, seasonId, dayId));
+    }
+
+    @Override
+    public int getTotalVerticalForSkierAtDay(int resortId, int seasonId, int dayId, int skierId) throws Exception {
+        return call(() -> primary.getTotalVerticalForSkierAtDay(resortId, seasonId, dayId, skierId),
+                () -> hedge.getTotalVerticalForSkierAtDay(resortId, seasonId, dayId, skierId));
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId) throws Exception {
+        return call(() -> primary.getTotalVerticalForSkierAtResort(skierID, resortId),
+                () -> hedge.getTotalVerticalForSkierAtResort(skierID, resortId));
+    }
+
+    // Not hedged: two cursors can't write into one response
+    @Override
+    public boolean streamTotalVerticalForSkierAtResort(int skierID, int resortId, SeasonVerticalSink sink) throws Exception {
+        return primary.streamTotalVerticalForSkierAtResort(skierID, resortId, sink);
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId, int seasonId) throws Exception {
+        return call(() -> primary.getTotalVerticalForSkierAtResort(skierID, resortId, seasonId),
+                () -> hedge.getTotalVerticalForSkierAtResort(skierID, resortId, seasonId));
+    }
+
+    @Override
+    public int[] getSkierIdsAtResortSeasonDay(int resortId, int seasonId, int dayId) throws Exception {
+        return primary.getSkierIdsAtResortSeasonDay(resortId, seasonId, dayId);
+    }
+
+    @Override
+    public int[] getSkierIdsAtResortSeasonDayLift(int resortId, int seasonId, int dayId, int liftId) throws Exception {
+        return primary.getSkierIdsAtResortSeasonDayLift(resortId, seasonId, dayId, liftId);
+    }
+
+    @Override
+    public void saveLifeRides(List<LifeRide> lifeRides) throws Exception {
+        primary.saveLifeRides(lifeRides);
+    }
+
+    @Override
+    public boolean isReady() {
+        return primary.isReady();
+    }
+
+    @Override
+    public void onLifeRidePublished(LifeRide lifeRide) {
+        primary.onLifeRidePublished(lifeRide);
+    }
+
+    @Override
+    public void close() throws Exception {
+        System.out.println("destroy HedgedDbRepository");
+        executor.shutdownNow();
+        hedge.close();
+        primary.close();
+    }
+
+}
@@ -0,0 +1,53 @@
+package infrastructure.resilience;
+
+import java.util.Arrays;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Percentile over the last windowSize latencies
+ * Recomputed every recomputeEvery samples instead of on every read, readers only see a volatile long
+ */
+public class LatencyTracker {
+
+    private final long[] samples;
+    private final double percentile;
+    private final int recomputeEvery;
+    private int index;
+    private int count;
+    private int sinceRecompute;
+    private volatile long percentileNanos;
+
+    public LatencyTracker(int windowSize, double percentile, int recomputeEvery, long initialNanos) {
+        this.samples = new long[windowSize];
+        this.percentile = percentile;
+        this.recomputeEvery = recomputeEvery;
+        this.percentileNanos = initialNanos;
+    }
+
+    public void record(long latencyNanos) {
+        long[] sorted = null;
+        synchronized (this) {
+            samples[index] = latencyNanos;
+            index = (index + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+            if (++sinceRecompute >= recomputeEvery) {
+                sinceRecompute = 0;
+                sorted = Arrays.copyOf(samples, count);
+            }
+        }
+        // Sort outside the lock, a window of a few thousand longs takes microseconds
+        if (sorted != null) {
+            Arrays.sort(sorted);
+            percentileNanos = sorted[Math.min(sorted.length - 1, (int) (sorted.length * percentile))];
+        }
+    }
+
+    public long getPercentileNanos() {
+        return percentileNanos;
+    }
+
+}
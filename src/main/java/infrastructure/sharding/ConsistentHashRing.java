@@ -0,0 +1,81 @@
+package infrastructure.sharding;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Consistent hash ring over named nodes, each placed at VIRTUAL_NODES points
+ * Points are derived from the node names, not their order: adding a node moves ~1/N of the keys, all to the new node
+ */
+public class ConsistentHashRing {
+
+    // Enough points per node that the share of keys per node is within a few percent of 1/N
+    private static final int VIRTUAL_NODES = 160;
+
+    private final int[] points;
+    private final int[] owners;
+
+    /**
+     * @param nodeNames stable names, e.g. shard-0, shard-1, must be distinct
+     */
+    public ConsistentHashRing(List<String> nodeNames) {
+        if (nodeNames.isEmpty()) {
+            throw new IllegalArgumentException("Error: consistent hash ring needs at least one node");
+        }
+        long[] packed = new long[nodeNames.size() * VIRTUAL_NODES];
+        int i = 0;
+        for (int node = 0; node < nodeNames.size(); node++) {
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                int point = hash(nodeNames.get(node) + "#" + v);
+                // Point in the high half, node in the low half: one sort orders points and breaks ties by node
+                packed[i++] = ((long) point << 32) | node;
+            }
+        }
+        Arrays.sort(packed);
+        points = new int[packed.length];
+        owners = new int[packed.length];
+        for (i = 0; i < packed.length; i++) {
+            points[i] = (int) (packed[i] >> 32);
+            owners[i] = (int) packed[i];
+        }
+    }
+
+    /**
+     * @param key e.g. skierID or resortID
+     * @return int index of the node owning the first point at or after the key's hash, wrapping around
+     */
+    public int nodeFor(int key) {
+        int index = Arrays.binarySearch(points, mix(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    // FNV-1a, finished with the murmur3 mixer so that similar names spread over the ring
+    private static int hash(String name) {
+        int h = 0x811C9DC5;
+        for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x01000193;
+        }
+        return mix(h);
+    }
+
+    // 32-bit finalizer of MurmurHash3, sequential IDs land on unrelated points
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+}
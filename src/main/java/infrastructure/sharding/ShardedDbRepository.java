@@ -0,0 +1,238 @@
+package infrastructure.sharding;
+
+import domain.DbRepository;
+import domain.LifeRide;
+import domain.SeasonVerticalSink;
+import domain.SeasonVerticals;
+import infrastructure.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * DbRepository over N independent Mongo instances, each ride lives on the shard its key hashes to
+ * shardKey skier: every skier's rides sit on one shard, so skier GETs hit one shard and resort-day GETs fan out
+ * and add up (a skier is counted on exactly one shard, the sum of distinct counts is the distinct count)
+ * shardKey resort: every GET hits one shard, but one busy resort loads one shard
+ * Shards are placed on the ring by their position in the list, not by their connection strings: rotating credentials
+ * or moving a shard to another host keeps its keys, new shards have to be appended at the end
+ */
+public class ShardedDbRepository implements DbRepository {
+
+    public enum ShardKey { SKIER, RESORT }
+
+    private final List<DbRepository> shards;
+    private final ConsistentHashRing ring;
+    private final ShardKey shardKey;
+    private final LongAdder fanOuts = Metrics.counter("shard.fanOut");
+    private final ExecutorService fanOutExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "shard-fan-out");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param shards in their configured order, shard i is named "shard-i" on the ring
+     * @param shardKey
+     */
+    public ShardedDbRepository(List<DbRepository> shards, ShardKey shardKey) {
+        System.out.println("init ShardedDbRepository over " + shards.size() + " shards by " + shardKey);
+        List<String> shardNames = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            shardNames.add("shard-" + i);
+        }
+        this.shards = shards;
+        this.ring = new ConsistentHashRing(shardNames);
+        this.shardKey = shardKey;
+    }
+
+    private DbRepository shardFor(int resortId, int skierId) {
+        return shards.get(ring.nodeFor(shardKey == ShardKey.SKIER ? skierId : resortId));
+    }
+
+    @Override
+    public int getTotalVerticalForSkierAtDay(int resortId, int seasonId, int dayId, int skierId) throws Exception {
+        return shardFor(resortId, skierId).getTotalVerticalForSkierAtDay(resortId, seasonId, dayId, skierId);
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId) throws Exception {
+        return shardFor(resortId, skierID).getTotalVerticalForSkierAtResort(skierID, resortId);
+    }
+
+    @Override
+    public boolean streamTotalVerticalForSkierAtResort(int skierID, int resortId, SeasonVerticalSink sink) throws Exception {
+        return shardFor(resortId, skierID).streamTotalVerticalForSkierAtResort(skierID, resortId, sink);
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId, int seasonId) throws Exception {
+        return shardFor(resortId, skierID).getTotalVerticalForSkierAtResort(skierID, resortId, seasonId);
+    }
+
+    @Override
+    public int getNumberOfUniqueSkiersAtResortSeasonDay(int resortId, int seasonId, int dayId) throws Exception {
+        if (shardKey == ShardKey.RESORT) {
+            return shards.get(ring.nodeFor(resortId)).getNumberOfUniqueSkiersAtResortSeasonDay(resortId, seasonId, dayId);
+        }
+        int total = 0;
+        for (int count : fanOut(shard -> shard.getNumberOfUniqueSkiersAtResortSeasonDay(resortId, seasonId, dayId))) {
+            total += count;
+        }
+        return total;
+    }
+
+    @Override
+    public int[] getSkierIdsAtResortSeasonDay(int resortId, int seasonId, int dayId) throws Exception {
+        if (shardKey == ShardKey.RESORT) {
+            return shards.get(ring.nodeFor(resortId)).getSkierIdsAtResortSeasonDay(resortId, seasonId, dayId);
+        }
+        return concat(fanOut(shard -> shard.getSkierIdsAtResortSeasonDay(resortId, seasonId, dayId)));
+    }
+
+    @Override
+    public int[] getSkierIdsAtResortSeasonDayLift(int resortId, int seasonId, int dayId, int liftId) throws Exception {
+        if (shardKey == ShardKey.RESORT) {
+            return shards.get(ring.nodeFor(resortId)).getSkierIdsAtResortSeasonDayLift(resortId, seasonId, dayId, liftId);
+        }
+        return concat(fanOut(shard -> shard.getSkierIdsAtResortSeasonDayLift(resortId, seasonId, dayId, liftId)));
+    }
+
+    private static int[] concat(List<int[]> parts) {
+        int length = 0;
+        for (int[] part : parts) {
+            length += part.length;
+        }
+        // Shards hold disjoint skiers, concatenating needs no dedup
+        int[] skierIds = new int[length];
+        int offset = 0;
+        for (int[] part : parts) {
+            System.arraycopy(part, 0, skierIds, offset, part.length);
+            offset += part.length;
+        }
+        return skierIds;
+    }
+
+    @Override
+    public void saveLifeRides(List<LifeRide> lifeRides) throws Exception {
+        List<List<LifeRide>> byShard = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (LifeRide lifeRide : lifeRides) {
+            int key = shardKey == ShardKey.SKIER ? lifeRide.getSkierID() : lifeRide.getResortID();
+            byShard.get(ring.nodeFor(key)).add(lifeRide);
+        }
+        List<Future<?>> futures = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            DbRepository shard = shards.get(i);
+            List<LifeRide> shardRides = byShard.get(i);
+            if (!shardRides.isEmpty()) {
+                futures.add(fanOutExecutor.submit(() -> {
+                    shard.saveLifeRides(shardRides);
+                    return null;
+                }));
+            }
+        }
+        // A failed shard fails the batch and the consumer retries all of it: the shards that committed find their rides
+        // already stored (upserts by ride _id) and count nothing twice. Wait for every shard first, so a retry never
+        // overlaps a write still in flight
+        Exception failure = null;
+        for (Future<?> future : futures) {
+            try {
+                await(future);
+            } catch (Exception e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @param query
+     * @return List of the results of every shard, in shard order, queried in parallel
+     * @throws Exception the first shard failure, the query as a whole has no answer without every shard
+     */
+    private <T> List<T> fanOut(ShardQuery<T> query) throws Exception {
+        fanOuts.increment();
+        List<Future<T>> futures = new ArrayList<>(shards.size());
+        for (DbRepository shard : shards) {
+            futures.add(fanOutExecutor.submit((Callable<T>) () -> query.apply(shard)));
+        }
+        List<T> results = new ArrayList<>(shards.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(await(future));
+            }
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    private interface ShardQuery<T> {
+        T apply(DbRepository shard) throws Exception;
+    }
+
+    @Override
+    public boolean isReady() {
+        for (DbRepository shard : shards) {
+            if (!shard.isReady()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void onLifeRidePublished(LifeRide lifeRide) {
+        shardFor(lifeRide.getResortID(), lifeRide.getSkierID()).onLifeRidePublished(lifeRide);
+    }
+
+    @Override
+    public void close() throws Exception {
+        System.out.println("destroy ShardedDbRepository");
+        fanOutExecutor.shutdownNow();
+        Exception failure = null;
+        for (DbRepository shard : shards) {
+            try {
+                shard.close();
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+package infrastructure.sketch;
+
+import java.util.Arrays;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * HyperLogLog distinct-count sketch of int keys, 2^precision one-byte registers
+ * Relative standard error 1.04 / sqrt(2^precision), e.g. 0.81% at precision 14 (16KB)
+ * Adding a key twice or merging a sketch twice changes nothing, so sketches of different nodes can be merged
+ * without knowing which rides each node saw
+ * Thread-safe
+ */
+public class HyperLogLog {
+
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 16;
+    // First byte of the serialized form, bump when the layout changes
+    private static final byte FORMAT_VERSION = 1;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Error: HyperLogLog precision " + precision + " outside [" + MIN_PRECISION + ", "
+                    + MAX_PRECISION + "]");
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    private HyperLogLog(int precision, byte[] registers) {
+        this.precision = precision;
+        this.registers = registers;
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public void add(int key) {
+        long hash = mix(key);
+        int index = (int) (hash >>> (64 - precision));
+        // Leading zeros of the remaining bits + 1, the sentinel bit caps it at 64 - precision + 1
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1);
+        synchronized (this) {
+            if (registers[index] < rank) {
+                registers[index] = rank;
+            }
+        }
+    }
+
+    /**
+     * @param other sketch of the same precision
+     * @Description union: this sketch afterwards estimates the distinct keys added to either
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Error: can't merge HyperLogLog of precision " + other.precision + " into " + precision);
+        }
+        byte[] otherRegisters = other.snapshot();
+        synchronized (this) {
+            for (int i = 0; i < registers.length; i++) {
+                if (registers[i] < otherRegisters[i]) {
+                    registers[i] = otherRegisters[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * @return long estimated number of distinct keys added
+     */
+    public long estimate() {
+        byte[] snapshot = snapshot();
+        int m = snapshot.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : snapshot) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        // Small range: the raw estimate is biased while many registers are empty, linear counting is exact-ish there
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        // 64-bit hashes, no large range correction needed
+        return Math.round(estimate);
+    }
+
+    /**
+     * @return double relative standard error of estimate()
+     */
+    public double standardError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    public HyperLogLog copy() {
+        return new HyperLogLog(precision, snapshot());
+    }
+
+    /**
+     * @return byte[] [version, precision, registers...], 2 + 2^precision bytes
+     */
+    public byte[] toBytes() {
+        byte[] snapshot = snapshot();
+        byte[] bytes = new byte[2 + snapshot.length];
+        bytes[0] = FORMAT_VERSION;
+        bytes[1] = (byte) precision;
+        System.arraycopy(snapshot, 0, bytes, 2, snapshot.length);
+        return bytes;
+    }
+
+    /**
+     * @param bytes output of toBytes()
+     * @return HyperLogLog
+     * @throws IllegalArgumentException if the bytes are not a sketch of a known format
+     */
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        if (bytes.length < 2 || bytes[0] != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Error: unknown HyperLogLog format");
+        }
+        int precision = bytes[1];
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION || bytes.length != 2 + (1 << precision)) {
+            throw new IllegalArgumentException("Error: corrupt HyperLogLog of precision " + precision + " and " + bytes.length + " bytes");
+        }
+        byte[] registers = Arrays.copyOfRange(bytes, 2, bytes.length);
+        for (byte register : registers) {
+            if (register < 0 || register > 64 - precision + 1) {
+                throw new IllegalArgumentException("Error: corrupt HyperLogLog register " + register);
+            }
+        }
+        return new HyperLogLog(precision, registers);
+    }
+
+    private synchronized byte[] snapshot() {
+        return registers.clone();
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+    // 64-bit finalizer of MurmurHash3, a bijection so distinct skier IDs never collide before the register split
+    private static long mix(int key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
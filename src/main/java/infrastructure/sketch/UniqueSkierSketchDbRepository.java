@@ -0,0 +1,294 @@
+package infrastructure.sketch;
+
+import domain.DbRepository;
+import domain.LifeRide;
+import domain.SeasonVerticalSink;
+import domain.SeasonVerticals;
+import domain.UniqueSkierEstimate;
+import infrastructure.cache.QueryKeys;
+import infrastructure.metrics.Metrics;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * Decorator keeping a HyperLogLog of skier IDs per resort-day, fed with every ride POSTed to this node
+ * An approximate unique-skier count merges the local sketch with the sketches of the peer server nodes, fetched in parallel
+ * over HTTP (GET .../skiers?sketch=true), so the estimate covers rides POSTed to any node without a DB call
+ * Sketches live in memory and miss the rides POSTed before a restart or an eviction: the first read of a resort-day seeds
+ * its sketch once with the skier IDs the DB already has (as far as the consumer has stored them), the POSTs keep it current
+ * Only the maxResortDays most recently used resort-days are kept, like the leaderboards
+ */
+public class UniqueSkierSketchDbRepository implements DbRepository {
+
+    // ~95% of estimates fall within 1.96 standard errors
+    private static final double CONFIDENCE = 0.95;
+    private static final double Z_95 = 1.96;
+    // Sent with every ?sketch=true answer, 404 included: a node that answers without it, or with false, may have missed rides
+    public static final String COMPLETE_HEADER = "X-Sketch-Complete";
+
+    private final DbRepository dbRepository;
+    private final int precision;
+    private final List<String> peers;
+    private final Duration peerTimeout;
+    private final HttpClient httpClient;
+    private final int maxResortDays;
+    // A ride only locks its resort-day's bin, evictions are serialized among themselves
+    private final ConcurrentHashMap<Long, ResortDaySketch> sketches = new ConcurrentHashMap<>();
+    private final Object evictionLock = new Object();
+    private final LongAdder peerFailures = Metrics.counter("hll.peerFailure");
+    private final LongAdder dropped = Metrics.counter("hll.droppedRide");
+    private final LongAdder evictions = Metrics.counter("hll.evicted");
+    private final LongAdder exactFallbacks = Metrics.counter("hll.exactFallback");
+    private final LongAdder seeds = Metrics.counter("hll.seeded");
+
+    private static class ResortDaySketch {
+
+        private final HyperLogLog sketch;
+        // A peer's sketch: whether it answered complete. Local: whether the DB's skiers were added, guarded by this
+        private volatile boolean complete;
+        private volatile long lastUsedMillis = System.currentTimeMillis();
+
+        private ResortDaySketch(HyperLogLog sketch, boolean complete) {
+            this.sketch = sketch;
+            this.complete = complete;
+        }
+    }
+
+    /**
+     * @param dbRepository
+     * @param precision HyperLogLog precision, 2^precision bytes per resort-day
+     * @param maxResortDays the least recently used resort-day is evicted beyond it, bounds memory at maxResortDays * 2^precision bytes
+     * @param peers base URLs of the other server nodes, e.g. http://10.0.0.2:8080/A2-Server
+     * @param peerTimeoutMs
+     */
+    public UniqueSkierSketchDbRepository(DbRepository dbRepository, int precision, int maxResortDays, List<String> peers, long peerTimeoutMs) {
+        System.out.println("init UniqueSkierSketchDbRepository with " + peers.size() + " peers");
+        // Fail at startup rather than on the first ride
+        if (precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION) {
+            throw new IllegalArgumentException("Error: invalid skier.hll.precision " + precision);
+        }
+        this.dbRepository = dbRepository;
+        this.precision = precision;
+        this.peers = peers;
+        this.peerTimeout = Duration.ofMillis(peerTimeoutMs);
+        this.httpClient = HttpClient.newBuilder().connectTimeout(peerTimeout).build();
+        this.maxResortDays = maxResortDays;
+        Metrics.gauge("hll.resortDays", sketches::size);
+    }
+
+    /**
+     * @param resortId
+     * @param seasonId
+     * @param dayId
+     * @return HyperLogLog copy of this node's sketch, seeded from the DB on first use, or null if the key doesn't pack
+     */
+    public HyperLogLog getLocalSketch(int resortId, int seasonId, int dayId) throws Exception {
+        long key = QueryKeys.resortDay(resortId, seasonId, dayId);
+        if (key == QueryKeys.NO_KEY) {
+            return null;
+        }
+        ResortDaySketch resortDaySketch = sketchOf(key);
+        if (!resortDaySketch.complete) {
+            // Per resort-day: rides keep going into the sketch while the DB is read
+            synchronized (resortDaySketch) {
+                if (!resortDaySketch.complete) {
+                    for (int skierId : dbRepository.getSkierIdsAtResortSeasonDay(resortId, seasonId, dayId)) {
+                        resortDaySketch.sketch.add(skierId);
+                    }
+                    resortDaySketch.complete = true;
+                    seeds.increment();
+                }
+            }
+        }
+        return resortDaySketch.sketch.copy();
+    }
+
+    private ResortDaySketch sketchOf(long key) {
+        ResortDaySketch resortDaySketch = sketches.get(key);
+        if (resortDaySketch != null) {
+            resortDaySketch.lastUsedMillis = System.currentTimeMillis();
+            return resortDaySketch;
+        }
+        ResortDaySketch created = new ResortDaySketch(new HyperLogLog(precision), false);
+        resortDaySketch = sketches.putIfAbsent(key, created);
+        if (resortDaySketch != null) {
+            return resortDaySketch;
+        }
+        evictIfFull();
+        return created;
+    }
+
+    // The least recently used resort-day goes first, i.e. past days. Runs only when a resort-day is added
+    private void evictIfFull() {
+        synchronized (evictionLock) {
+            while (sketches.size() > maxResortDays) {
+                Map.Entry<Long, ResortDaySketch> eldest = null;
+                for (Map.Entry<Long, ResortDaySketch> entry : sketches.entrySet()) {
+                    if (eldest == null || entry.getValue().lastUsedMillis < eldest.getValue().lastUsedMillis) {
+                        eldest = entry;
+                    }
+                }
+                if (eldest == null) {
+                    return;
+                }
+                if (sketches.remove(eldest.getKey(), eldest.getValue())) {
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param resortId
+     * @param seasonId
+     * @param dayId
+     * @return UniqueSkierEstimate of the union of the local and the reachable peers' sketches, or the exact count from the DB
+     * with errorBound 0 and confidence 1 if a peer's sketch may be missing rides
+     */
+    public UniqueSkierEstimate estimateUniqueSkiers(int resortId, int seasonId, int dayId) throws Exception {
+        List<CompletableFuture<ResortDaySketch>> peerSketches = new ArrayList<>(peers.size());
+        for (String peer : peers) {
+            peerSketches.add(fetchSketch(peer, resortId, seasonId, dayId));
+        }
+        boolean complete = true;
+        HyperLogLog union = getLocalSketch(resortId, seasonId, dayId);
+        if (union == null) {
+            union = new HyperLogLog(precision);
+        }
+        int nodes = 1;
+        for (CompletableFuture<ResortDaySketch> peerSketch : peerSketches) {
+            // Bounded by the request timeout, a failed peer completes with null
+            ResortDaySketch resortDaySketch = peerSketch.join();
+            if (resortDaySketch != null) {
+                union.merge(resortDaySketch.sketch);
+                complete &= resortDaySketch.complete;
+                nodes++;
+            }
+        }
+        if (!complete) {
+            // A node that missed rides undercounts by every skier it missed, beyond any error bound the sketch could claim
+            exactFallbacks.increment();
+            int exact = dbRepository.getNumberOfUniqueSkiersAtResortSeasonDay(resortId, seasonId, dayId);
+            return new UniqueSkierEstimate(exact, 0, 1.0, peers.size() + 1, peers.size() + 1);
+        }
+        long estimate = union.estimate();
+        long errorBound = (long) Math.ceil(estimate * Z_95 * union.standardError());
+        return new UniqueSkierEstimate(estimate, errorBound, CONFIDENCE, nodes, peers.size() + 1);
+    }
+
+    /**
+     * @return CompletableFuture<ResortDaySketch> the peer's sketch, an empty sketch on 404 (no rides there), null on failure
+     * A peer that doesn't send COMPLETE_HEADER is taken as incomplete
+     */
+    private CompletableFuture<ResortDaySketch> fetchSketch(String peer, int resortId, int seasonId, int dayId) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(peer + "/resorts/" + resortId + "/seasons/" + seasonId + "/day/" + dayId
+                        + "/skiers?sketch=true"))
+                .timeout(peerTimeout)
+                .GET()
+                .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    boolean complete = response.headers().firstValue(COMPLETE_HEADER).map("true"::equals).orElse(false);
+                    if (response.statusCode() == 404) {
+                        return new ResortDaySketch(new HyperLogLog(precision), complete);
+                    }
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException("status " + response.statusCode());
+                    }
+                    HyperLogLog sketch = HyperLogLog.fromBytes(response.body());
+                    if (sketch.getPrecision() != precision) {
+                        throw new IllegalStateException("precision " + sketch.getPrecision() + " instead of " + precision);
+                    }
+                    return new ResortDaySketch(sketch, complete);
+                })
+                .exceptionally(e -> {
+                    peerFailures.increment();
+                    System.err.println("Warning: no HyperLogLog sketch from " + peer + ": " + e.getMessage());
+                    return null;
+                });
+    }
+
+    private void addRide(LifeRide lifeRide) {
+        long key = QueryKeys.resortDay(lifeRide.getResortID(), lifeRide.getSeasonID(), lifeRide.getDayID());
+        if (key == QueryKeys.NO_KEY) {
+            dropped.increment();
+            return;
+        }
+        // A ride racing an eviction may go into the evicted sketch, the next one is seeded from the DB anyway
+        sketchOf(key).sketch.add(lifeRide.getSkierID());
+    }
+
+    @Override
+    public int getNumberOfUniqueSkiersAtResortSeasonDay(int resortId, int seasonId, int dayId) throws Exception {
+        return dbRepository.getNumberOfUniqueSkiersAtResortSeasonDay(resortId, seasonId, dayId);
+    }
+
+    @Override
+    public int getTotalVerticalForSkierAtDay(int resortId, int seasonId, int dayId, int skierId) throws Exception {
+        return dbRepository.getTotalVerticalForSkierAtDay(resortId, seasonId, dayId, skierId);
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId) throws Exception {
+        return dbRepository.getTotalVerticalForSkierAtResort(skierID, resortId);
+    }
+
+    @Override
+    public boolean streamTotalVerticalForSkierAtResort(int skierID, int resortId, SeasonVerticalSink sink) throws Exception {
+        return dbRepository.streamTotalVerticalForSkierAtResort(skierID, resortId, sink);
+    }
+
+    @Override
+    public SeasonVerticals getTotalVerticalForSkierAtResort(int skierID, int resortId, int seasonId) throws Exception {
+        return dbRepository.getTotalVerticalForSkierAtResort(skierID, resortId, seasonId);
+    }
+
+    @Override
+    public int[] getSkierIdsAtResortSeasonDay(int resortId, int seasonId, int dayId) throws Exception {
+        return dbRepository.getSkierIdsAtResortSeasonDay(resortId, seasonId, dayId);
+    }
+
+    @Override
+    public int[] getSkierIdsAtResortSeasonDayLift(int resortId, int seasonId, int dayId, int liftId) throws Exception {
+        return dbRepository.getSkierIdsAtResortSeasonDayLift(resortId, seasonId, dayId, liftId);
+    }
+
+    // Consumed rides are not sketched: the servers' sketches together already cover every POSTed ride
+    @Override
+    public void saveLifeRides(List<LifeRide> lifeRides) throws Exception {
+        dbRepository.saveLifeRides(lifeRides);
+    }
+
+    @Override
+    public boolean isReady() {
+        return dbRepository.isReady();
+    }
+
+    @Override
+    public void onLifeRidePublished(LifeRide lifeRide) {
+        addRide(lifeRide);
+        dbRepository.onLifeRidePublished(lifeRide);
+    }
+
+    @Override
+    public void close() throws Exception {
+        System.out.println("destroy UniqueSkierSketchDbRepository");
+        dbRepository.close();
+    }
+
+}
@@ -0,0 +1,228 @@
+package infrastructure.bitmap;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Rebecca Zhang
+ * Created on 2026-10-19
+ */
+
+/**
+ * RoaringBitmap checked against java.util.BitSet, across the array/bitmap container switch at ARRAY_MAX_SIZE
+ */
+class RoaringBitmapTest {
+
+    // 16 containers
+    private static final int RANGE = 1 << 20;
+    private static final int CONTAINER = 1 << 16;
+
+    /**
+     * One bitmap and the BitSet holding the same values
+     */
+    private static final class Pair {
+
+        final RoaringBitmap bitmap = new RoaringBitmap();
+        final BitSet bitSet = new BitSet();
+
+        // true if the value was new
+        boolean add(int value) {
+            boolean added = bitmap.add(value);
+            assertEquals(!bitSet.get(value), added);
+            bitSet.set(value);
+            return added;
+        }
+    }
+
+    // Per container either empty, sparse (array), just below, at or above ARRAY_MAX_SIZE, or dense (bitmap)
+    private static Pair randomPair(Random random) {
+        Pair pair = new Pair();
+        for (int high = 0; high < RANGE / CONTAINER; high++) {
+            int count;
+            switch (random.nextInt(6)) {
+                case 0:
+                    count = 0;
+                    break;
+                case 1:
+                    count = random.nextInt(100);
+                    break;
+                case 2:
+                    count = RoaringBitmap.ARRAY_MAX_SIZE - 1;
+                    break;
+                case 3:
+                    count = RoaringBitmap.ARRAY_MAX_SIZE;
+                    break;
+                case 4:
+                    count = RoaringBitmap.ARRAY_MAX_SIZE + 1;
+                    break;
+                default:
+                    count = CONTAINER / 2;
+            }
+            int base = high * CONTAINER;
+            for (int added = 0; added < count; ) {
+                if (pair.add(base + random.nextInt(CONTAINER))) {
+                    added++;
+                }
+            }
+        }
+        return pair;
+    }
+
+    private static void assertSame(BitSet expected, RoaringBitmap actual) {
+        assertEquals(expected.cardinality(), actual.getCardinality());
+        assertArrayEquals(expected.stream().toArray(), actual.toArray());
+    }
+
+    private static RoaringBitmap roundTrip(RoaringBitmap bitmap) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bitmap.serialize(new DataOutputStream(bytes));
+        return RoaringBitmap.deserialize(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test
+    void addAndContainsMatchBitSet() {
+        Random random = new Random(1);
+        for (int run = 0; run < 5; run++) {
+            Pair pair = randomPair(random);
+            assertSame(pair.bitSet, pair.bitmap);
+            for (int i = 0; i < 10000; i++) {
+                int value = random.nextInt(RANGE);
+                assertEquals(pair.bitSet.get(value), pair.bitmap.contains(value));
+            }
+            assertFalse(pair.bitmap.contains(-1));
+        }
+    }
+
+    @Test
+    void setOperationsMatchBitSet() {
+        Random random = new Random(2);
+        for (int run = 0; run < 20; run++) {
+            Pair a = randomPair(random);
+            Pair b = randomPair(random);
+
+            BitSet and = (BitSet) a.bitSet.clone();
+            and.and(b.bitSet);
+            assertSame(and, RoaringBitmap.and(a.bitmap, b.bitmap));
+
+            BitSet or = (BitSet) a.bitSet.clone();
+            or.or(b.bitSet);
+            assertSame(or, RoaringBitmap.or(a.bitmap, b.bitmap));
+
+            BitSet andNot = (BitSet) a.bitSet.clone();
+            andNot.andNot(b.bitSet);
+            assertSame(andNot, RoaringBitmap.andNot(a.bitmap, b.bitmap));
+
+            // The operands are left untouched
+            assertSame(a.bitSet, a.bitmap);
+            assertSame(b.bitSet, b.bitmap);
+        }
+    }
+
+    @Test
+    void containerSwitchesToBitmapAboveArrayMaxSize() throws IOException {
+        Pair pair = new Pair();
+        for (int i = 0; i < RoaringBitmap.ARRAY_MAX_SIZE; i++) {
+            pair.add(i * 3);
+        }
+        assertSame(pair.bitSet, pair.bitmap);
+        assertSame(pair.bitSet, roundTrip(pair.bitmap));
+
+        pair.add(RoaringBitmap.ARRAY_MAX_SIZE * 3);
+        assertSame(pair.bitSet, pair.bitmap);
+        assertSame(pair.bitSet, roundTrip(pair.bitmap));
+        assertFalse(pair.bitmap.add(0));
+    }
+
+    @Test
+    void setOperationsSwitchBackToArrays() throws IOException {
+        // Two bitmap containers whose intersection and difference hold exactly ARRAY_MAX_SIZE values
+        Pair a = new Pair();
+        Pair b = new Pair();
+        for (int i = 0; i < 2 * RoaringBitmap.ARRAY_MAX_SIZE; i++) {
+            a.add(i);
+        }
+        for (int i = RoaringBitmap.ARRAY_MAX_SIZE; i < 3 * RoaringBitmap.ARRAY_MAX_SIZE; i++) {
+            b.add(i);
+        }
+        BitSet and = (BitSet) a.bitSet.clone();
+        and.and(b.bitSet);
+        RoaringBitmap intersection = RoaringBitmap.and(a.bitmap, b.bitmap);
+        assertSame(and, intersection);
+        assertSame(and, roundTrip(intersection));
+        assertTrue(intersection.add(0));
+
+        BitSet andNot = (BitSet) a.bitSet.clone();
+        andNot.andNot(b.bitSet);
+        RoaringBitmap difference = RoaringBitmap.andNot(a.bitmap, b.bitmap);
+        assertSame(andNot, difference);
+        assertSame(andNot, roundTrip(difference));
+
+        // Two arrays whose union doesn't fit an array
+        Pair c = new Pair();
+        Pair d = new Pair();
+        for (int i = 0; i < RoaringBitmap.ARRAY_MAX_SIZE; i++) {
+            c.add(2 * i);
+            d.add(2 * i + 1);
+        }
+        BitSet or = (BitSet) c.bitSet.clone();
+        or.or(d.bitSet);
+        RoaringBitmap union = RoaringBitmap.or(c.bitmap, d.bitmap);
+        assertSame(or, union);
+        assertSame(or, roundTrip(union));
+    }
+
+    @Test
+    void toArrayPagesLikeBitSet() {
+        Random random = new Random(3);
+        Pair pair = randomPair(random);
+        int[] all = pair.bitSet.stream().toArray();
+        int[] offsets = {0, 1, RoaringBitmap.ARRAY_MAX_SIZE - 1, RoaringBitmap.ARRAY_MAX_SIZE, CONTAINER - 1, CONTAINER,
+                all.length / 2, all.length - 1, all.length, all.length + 10};
+        int[] limits = {1, 7, 1000, RoaringBitmap.ARRAY_MAX_SIZE + 1, Integer.MAX_VALUE};
+        for (int offset : offsets) {
+            for (int limit : limits) {
+                int from = Math.max(0, Math.min(offset, all.length));
+                int to = (int) Math.min(all.length, (long) from + limit);
+                int[] expected = new int[to - from];
+                System.arraycopy(all, from, expected, 0, expected.length);
+                assertArrayEquals(expected, pair.bitmap.toArray(offset, limit), "offset " + offset + " limit " + limit);
+            }
+        }
+    }
+
+    @Test
+    void serializeRoundTrips() throws IOException {
+        Random random = new Random(4);
+        for (int run = 0; run < 5; run++) {
+            Pair pair = randomPair(random);
+            assertSame(pair.bitSet, roundTrip(pair.bitmap));
+        }
+        assertSame(new BitSet(), roundTrip(new RoaringBitmap()));
+
+        // The top container
+        RoaringBitmap edge = new RoaringBitmap();
+        edge.add(Integer.MAX_VALUE);
+        edge.add(0);
+        assertArrayEquals(new int[]{0, Integer.MAX_VALUE}, roundTrip(edge).toArray());
+    }
+
+    @Test
+    void deserializeRejectsOtherData() {
+        byte[] garbage = {1, 2, 3, 4, 5, 6, 7, 8};
+        assertThrows(IOException.class, () -> RoaringBitmap.deserialize(new DataInputStream(new ByteArrayInputStream(garbage))));
+    }
+
+}